@@ -0,0 +1,80 @@
+package io.github.bensku.recorder.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.bensku.recorder.Recorder;
+import io.github.bensku.recorder.query.ColumnBatch;
+import io.github.bensku.recorder.sql.JavaType;
+
+/**
+ * Sums a column of a large table by reading records and by reading
+ * column batches. Run with GC profiler to compare allocations.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AggregationBenchmark {
+
+	private static final int ROWS = 100_000;
+
+	private JdbcConnectionPool pool;
+	private Recorder recorder;
+
+	@Setup
+	public void setup() throws SQLException {
+		pool = JdbcConnectionPool.create("jdbc:h2:mem:aggregation;DB_CLOSE_DELAY=-1", "", "");
+		H2Adapter adapter = new H2Adapter();
+		RecordTableSource tableSource = new RecordTableSource();
+		recorder = Recorder.builder(pool, adapter).tableSource(tableSource).build();
+
+		try (Connection conn = pool.getConnection()) {
+			conn.createStatement().execute("DROP TABLE IF EXISTS item");
+			conn.createStatement().execute(adapter.createTable(tableSource.get(JavaType.of(Item.class))));
+		}
+		List<Item> items = new ArrayList<>();
+		for (int i = 0; i < ROWS; i++) {
+			items.add(new Item(i, "item" + (i % 100), i % 10, i * 100L, i / 10.0, i % 2 == 0));
+		}
+		recorder.insert(Item.class).insertAll(items);
+	}
+
+	@TearDown
+	public void close() {
+		pool.dispose();
+	}
+
+	@Benchmark
+	public long records() throws SQLException {
+		long sum = 0;
+		for (Item item : recorder.select(Item.class).fetchSize(1000).all()) {
+			sum += item.price();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long columns() throws SQLException {
+		ColumnBatch<Item> batch = recorder.select(Item.class).fetchSize(1000).columns();
+		long[] prices = batch.longs(Item::price);
+		long sum = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			sum += prices[i];
+		}
+		return sum;
+	}
+}
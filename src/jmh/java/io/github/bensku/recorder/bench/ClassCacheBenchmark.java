@@ -0,0 +1,61 @@
+package io.github.bensku.recorder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import io.github.bensku.recorder.cache.Cache;
+import io.github.bensku.recorder.cache.ClassValueCache;
+import io.github.bensku.recorder.cache.GlobalCache;
+
+/**
+ * Compares cache hits by record classes, which happen for every query
+ * when tables and mappers are looked up.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class ClassCacheBenchmark {
+
+	@State(Scope.Thread)
+	public static class View {
+		
+		private Cache<Class<? extends Record>, Object> cache;
+		
+		@Setup
+		public void setup(ClassCacheBenchmark benchmark) {
+			cache = benchmark.global.threadLocalView();
+		}
+	}
+	
+	private GlobalCache<Class<? extends Record>, Object> global;
+	
+	private ClassValueCache<Record, Object> classValue;
+	
+	@Setup
+	public void setup() {
+		global = new GlobalCache<>(Class::getName);
+		classValue = new ClassValueCache<>(Class::getName);
+		global.get(Item.class);
+		classValue.get(Item.class);
+	}
+	
+	@Benchmark
+	public Object threadLocalView(View view) {
+		return view.cache.get(Item.class);
+	}
+	
+	@Benchmark
+	public Object classValue() {
+		return classValue.get(Item.class);
+	}
+}
@@ -0,0 +1,31 @@
+package io.github.bensku.recorder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import io.github.bensku.recorder.ComponentLambda;
+import io.github.bensku.recorder.ComponentReference;
+
+/**
+ * Measures resolving record components from method references, which
+ * happens for every condition on query cache misses.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ComponentLookupBenchmark {
+
+	private final ComponentLambda<Item, Integer> lambda = Item::category;
+
+	@Benchmark
+	public ComponentReference<Integer> lookupComponent() {
+		return lambda.lookupComponent();
+	}
+}
@@ -0,0 +1,74 @@
+package io.github.bensku.recorder.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.bensku.recorder.Recorder;
+import io.github.bensku.recorder.sql.JavaType;
+
+/**
+ * Runs queries against an in-memory H2 database, from building them to
+ * mapping their results.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EndToEndBenchmark {
+
+	private static final int ROWS = 1000;
+	private static final int CATEGORIES = 10;
+
+	private JdbcConnectionPool pool;
+	private Recorder recorder;
+	private int id;
+
+	@Setup
+	public void setup() throws SQLException {
+		pool = JdbcConnectionPool.create("jdbc:h2:mem:e2e;DB_CLOSE_DELAY=-1", "", "");
+		H2Adapter adapter = new H2Adapter();
+		RecordTableSource tableSource = new RecordTableSource();
+		recorder = Recorder.builder(pool, adapter).tableSource(tableSource).build();
+
+		try (Connection conn = pool.getConnection()) {
+			conn.createStatement().execute("DROP TABLE IF EXISTS item");
+			conn.createStatement().execute(adapter.createTable(tableSource.get(JavaType.of(Item.class))));
+		}
+		List<Item> items = new ArrayList<>();
+		for (int i = 0; i < ROWS; i++) {
+			items.add(new Item(i, "item" + i, i % CATEGORIES, i * 100L, i / 10.0, i % 2 == 0));
+		}
+		recorder.insert(Item.class).insertAll(items);
+	}
+
+	@TearDown
+	public void close() {
+		pool.dispose();
+	}
+
+	@Benchmark
+	public Optional<Item> first() throws SQLException {
+		id = (id + 1) % ROWS;
+		return recorder.select(Item.class).where(Item::id).eq(id).first();
+	}
+
+	@Benchmark
+	public List<Item> all() throws SQLException {
+		// Returns ROWS / CATEGORIES items
+		return recorder.select(Item.class).where(Item::category).eq(3).all();
+	}
+}
@@ -0,0 +1,43 @@
+package io.github.bensku.recorder.bench;
+
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.ForeignConstraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+/**
+ * SQL adapter for H2, used by benchmarks that need a real database.
+ *
+ */
+public class H2Adapter implements SqlAdapter {
+
+	@Override
+	public String sqlType(JavaType javaType) {
+		return switch (javaType.name()) {
+		case "boolean" -> "BOOLEAN";
+		case "byte" -> "TINYINT";
+		case "short" -> "SMALLINT";
+		case "int" -> "INT";
+		case "long" -> "BIGINT";
+		case "float" -> "REAL";
+		case "double" -> "DOUBLE";
+		case "java.lang.String" -> "VARCHAR";
+		default -> throw new IllegalArgumentException("unsupported type " + javaType);
+		};
+	}
+
+	@Override
+	public String constraint(Constraint constraint) {
+		if (constraint instanceof ForeignConstraint foreign) {
+			return "REFERENCES " + foreign.foreignTable().name();
+		}
+		return switch ((SimpleConstraint) constraint) {
+		case NOT_NULL -> "NOT NULL";
+		case UNIQUE -> "UNIQUE";
+		case PRIMARY_KEY -> "PRIMARY KEY";
+		case GENERATED -> "AUTO_INCREMENT";
+		};
+	}
+
+}
@@ -0,0 +1,16 @@
+package io.github.bensku.recorder.bench;
+
+import io.github.bensku.recorder.record.PrimaryKey;
+
+/**
+ * Record type used by benchmarks.
+ *
+ */
+public record Item(
+		@PrimaryKey(generated = false) int id,
+		String name,
+		int category,
+		long price,
+		double weight,
+		boolean available
+) {}
@@ -0,0 +1,90 @@
+package io.github.bensku.recorder.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.JavaType;
+
+/**
+ * Compares generated record mappers against a reflective mapper.
+ * Reading uses an in-memory result set and writing sets parameters
+ * of a statement that is never executed, so no actual I/O is done.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapperBenchmark {
+
+	@Param({"generated", "reflective"})
+	public String mapperType;
+
+	private RecordMapper<Item> mapper;
+	private SimpleResultSet results;
+	private Connection conn;
+	private PreparedStatement statement;
+	private Item item;
+
+	@Setup
+	public void setup() throws SQLException {
+		if (mapperType.equals("generated")) {
+			@SuppressWarnings("unchecked")
+			RecordMapper<Item> generated = (RecordMapper<Item>) new MapperGenerator(new RecordTableSource())
+					.create(JavaType.of(Item.class));
+			mapper = generated;
+		} else {
+			mapper = new ReflectiveMapper<>(Item.class);
+		}
+
+		// A result set with single row
+		results = new SimpleResultSet();
+		results.addColumn("id", Types.INTEGER, 10, 0);
+		results.addColumn("name", Types.VARCHAR, 255, 0);
+		results.addColumn("category", Types.INTEGER, 10, 0);
+		results.addColumn("price", Types.BIGINT, 19, 0);
+		results.addColumn("weight", Types.DOUBLE, 17, 0);
+		results.addColumn("available", Types.BOOLEAN, 1, 0);
+		results.addRow(1, "foo", 2, 1999L, 0.5, true);
+		results.next();
+
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL("jdbc:h2:mem:");
+		conn = dataSource.getConnection();
+		conn.createStatement().execute("CREATE TABLE item (id INT, name VARCHAR, category INT, price BIGINT, weight DOUBLE, available BOOLEAN)");
+		statement = conn.prepareStatement("INSERT INTO item VALUES (?,?,?,?,?,?)");
+		item = new Item(1, "foo", 2, 1999L, 0.5, true);
+	}
+
+	@TearDown
+	public void close() throws SQLException {
+		conn.close();
+	}
+
+	@Benchmark
+	public Item read() {
+		return mapper.read(results);
+	}
+
+	@Benchmark
+	public PreparedStatement write() {
+		mapper.write(statement, item);
+		return statement;
+	}
+}
@@ -0,0 +1,87 @@
+package io.github.bensku.recorder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.QueryCache;
+import io.github.bensku.recorder.cache.SharedQueryCache;
+
+/**
+ * Measures query cache hits (from old generation), misses and promotion
+ * from new to old generation.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryCacheBenchmark {
+
+	private static final int NEW_GEN_SIZE = 30;
+	private static final int PROMOTE_THRESHOLD = 10;
+
+	@Param({"local", "shared"})
+	public String cacheType;
+
+	private QueryCache<Object> cache;
+	private Object hotKey;
+	private Object absentKey;
+	private CachedQuery query;
+
+	private QueryCache<Object> newCache() {
+		return switch (cacheType) {
+		case "local" -> new LocalQueryCache<>(NEW_GEN_SIZE, PROMOTE_THRESHOLD);
+		case "shared" -> new SharedQueryCache<>(NEW_GEN_SIZE, PROMOTE_THRESHOLD);
+		default -> throw new IllegalArgumentException(cacheType);
+		};
+	}
+
+	@Setup
+	public void setup() {
+		cache = newCache();
+		query = new CachedQuery("SELECT id FROM item WHERE category=?", new int[] {0});
+		hotKey = new Object();
+		absentKey = new Object();
+		cache.put(hotKey, query);
+		for (int i = 0; i < PROMOTE_THRESHOLD; i++) {
+			cache.get(hotKey); // Promote to old gen
+		}
+	}
+
+	@Benchmark
+	public CachedQuery hit() {
+		return cache.get(hotKey);
+	}
+
+	@Benchmark
+	public CachedQuery miss() {
+		return cache.get(absentKey);
+	}
+
+	/**
+	 * Puts a key to a fresh cache and looks it up until it is promoted.
+	 * A fresh cache is used so that admission to old generation does not
+	 * depend on earlier iterations. This includes cost of creating the cache.
+	 * @return Last lookup result.
+	 */
+	@Benchmark
+	public CachedQuery promotion() {
+		QueryCache<Object> cache = newCache();
+		Object key = new Object();
+		cache.put(key, query);
+		CachedQuery result = null;
+		for (int i = 0; i < PROMOTE_THRESHOLD; i++) {
+			result = cache.get(key);
+		}
+		return result;
+	}
+}
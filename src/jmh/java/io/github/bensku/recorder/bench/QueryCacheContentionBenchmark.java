@@ -0,0 +1,136 @@
+package io.github.bensku.recorder.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.QueryCache;
+import io.github.bensku.recorder.cache.SharedQueryCache;
+
+/**
+ * Compares thread-local and shared query caches when every request runs on
+ * its own short-lived (preferably virtual) thread. Besides throughput in
+ * batches of requests, reports cache hits and misses.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QueryCacheContentionBenchmark {
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Lookups {
+		public long hits;
+		public long misses;
+	}
+
+	/**
+	 * Query cache design: one cache per thread, like Recorder does by
+	 * default, or one cache for all threads.
+	 */
+	@Param({"thread-local", "shared"})
+	public String design;
+
+	/**
+	 * Requests (threads) per benchmark invocation.
+	 */
+	@Param({"1024"})
+	public int requests;
+
+	/**
+	 * Queries that each request makes.
+	 */
+	@Param({"8"})
+	public int queriesPerRequest;
+
+	/**
+	 * Number of distinct queries.
+	 */
+	@Param({"64"})
+	public int shapes;
+
+	/**
+	 * New generation size of each cache. Both designs use the same sizes,
+	 * so that only sharing differs.
+	 */
+	@Param({"256"})
+	public int newGenSize;
+
+	private Object[] keys;
+	private Supplier<QueryCache<Object>> caches;
+	private Executor executor;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		keys = new Object[shapes];
+		for (int i = 0; i < shapes; i++) {
+			keys[i] = new Object(); // Identity-hashed, like query builders
+		}
+		if (design.equals("shared")) {
+			QueryCache<Object> shared = new SharedQueryCache<>(newGenSize, 10);
+			caches = () -> shared;
+		} else {
+			caches = ThreadLocal.<QueryCache<Object>>withInitial(() -> new LocalQueryCache<>(newGenSize, 10))::get;
+		}
+		executor = ThreadPerTask.newExecutor();
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		if (executor instanceof ExecutorService service) {
+			service.shutdown();
+		}
+	}
+
+	private static CachedQuery generate(Object key) {
+		// Stand-in for SQL generation, which is what a miss costs
+		return new CachedQuery("SELECT a,b,c FROM t" + key.hashCode() + " WHERE a=?", new int[] {0});
+	}
+
+	@Benchmark
+	public void requests(Lookups lookups) throws InterruptedException {
+		LongAdder hits = new LongAdder();
+		LongAdder misses = new LongAdder();
+		CountDownLatch done = new CountDownLatch(requests);
+		for (int i = 0; i < requests; i++) {
+			executor.execute(() -> {
+				QueryCache<Object> cache = caches.get();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int j = 0; j < queriesPerRequest; j++) {
+					// Skewed towards first keys, some queries are more popular
+					double r = random.nextDouble();
+					Object key = keys[(int) (r * r * shapes)];
+					if (cache.get(key) == null) {
+						misses.increment();
+						cache.put(key, generate(key));
+					} else {
+						hits.increment();
+					}
+				}
+				done.countDown();
+			});
+		}
+		done.await();
+		lookups.hits += hits.sum();
+		lookups.misses += misses.sum();
+	}
+}
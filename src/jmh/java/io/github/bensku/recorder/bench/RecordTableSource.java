@@ -0,0 +1,66 @@
+package io.github.bensku.recorder.bench;
+
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.bensku.recorder.query.mapper.TableSource;
+import io.github.bensku.recorder.record.Nullable;
+import io.github.bensku.recorder.record.PrimaryKey;
+import io.github.bensku.recorder.record.TableName;
+import io.github.bensku.recorder.record.Unique;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+/**
+ * Minimal reflection-based table source for benchmarks. Foreign keys are
+ * not supported.
+ *
+ */
+public class RecordTableSource implements TableSource {
+
+	@Override
+	public Table get(JavaType type) {
+		Class<?> record;
+		try {
+			record = Class.forName(type.name());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("no record " + type, e);
+		}
+		TableName tableName = record.getAnnotation(TableName.class);
+		String name = tableName != null ? tableName.value() : record.getSimpleName().toLowerCase(Locale.ROOT);
+
+		RecordComponent[] components = record.getRecordComponents();
+		Column[] columns = new Column[components.length];
+		Column primaryKey = null;
+		for (int i = 0; i < components.length; i++) {
+			RecordComponent component = components[i];
+			List<Constraint> constraints = new ArrayList<>();
+			if (!component.isAnnotationPresent(Nullable.class)) {
+				constraints.add(SimpleConstraint.NOT_NULL);
+			}
+			if (component.isAnnotationPresent(Unique.class)) {
+				constraints.add(SimpleConstraint.UNIQUE);
+			}
+			PrimaryKey pk = component.getAnnotation(PrimaryKey.class);
+			if (pk != null) {
+				constraints.add(SimpleConstraint.PRIMARY_KEY);
+				Class<?> keyType = component.getType();
+				if (pk.generated() && (keyType == int.class || keyType == long.class)) {
+					constraints.add(SimpleConstraint.GENERATED);
+				}
+			}
+			columns[i] = new Column(component.getName(), JavaType.of(component.getType()),
+					constraints.toArray(Constraint[]::new));
+			if (pk != null) {
+				primaryKey = columns[i];
+			}
+		}
+		return new Table(type, name, columns, primaryKey);
+	}
+
+}
@@ -0,0 +1,78 @@
+package io.github.bensku.recorder.bench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+
+/**
+ * Record mapper that uses reflection instead of generated code. This is
+ * what generated mappers are compared against.
+ *
+ * @param <R> Record type.
+ */
+public class ReflectiveMapper<R extends Record> implements RecordMapper<R> {
+
+	private final Class<?>[] types;
+	private final Method[] accessors;
+	private final Constructor<R> constructor;
+
+	public ReflectiveMapper(Class<R> record) {
+		RecordComponent[] components = record.getRecordComponents();
+		this.types = new Class<?>[components.length];
+		this.accessors = new Method[components.length];
+		for (int i = 0; i < components.length; i++) {
+			types[i] = components[i].getType();
+			accessors[i] = components[i].getAccessor();
+		}
+		try {
+			this.constructor = record.getDeclaredConstructor(types);
+		} catch (NoSuchMethodException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Override
+	public R read(ResultSet results) {
+		try {
+			Object[] values = new Object[types.length];
+			for (int i = 0; i < types.length; i++) {
+				Class<?> type = types[i];
+				int index = i + 1;
+				if (type == boolean.class) {
+					values[i] = results.getBoolean(index);
+				} else if (type == int.class) {
+					values[i] = results.getInt(index);
+				} else if (type == long.class) {
+					values[i] = results.getLong(index);
+				} else if (type == double.class) {
+					values[i] = results.getDouble(index);
+				} else if (type == String.class) {
+					values[i] = results.getString(index);
+				} else {
+					values[i] = results.getObject(index, type);
+				}
+			}
+			return constructor.newInstance(values);
+		} catch (SQLException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Override
+	public void write(PreparedStatement statement, R record, int offset) {
+		try {
+			for (int i = 0; i < accessors.length; i++) {
+				statement.setObject(offset + i + 1, accessors[i].invoke(record));
+			}
+		} catch (SQLException | IllegalAccessException | InvocationTargetException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package io.github.bensku.recorder.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.github.bensku.recorder.query.SelectBuilder;
+
+/**
+ * Measures query builder construction, and computing its hash code and
+ * equality, which is what every query cache lookup does.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SelectBuilderBenchmark {
+
+	private SelectBuilder<Item> prototype;
+	private int category;
+
+	@Setup
+	public void setup() {
+		prototype = build();
+		category = 42;
+	}
+
+	private SelectBuilder<Item> build() {
+		// Builders only need helper for execution, so we can leave it out
+		return new SelectBuilder<>(null, Item.class)
+				.where(Item::category).eq(category)
+				.where(Item::available).eq(true)
+				.limit(10);
+	}
+
+	@Benchmark
+	public SelectBuilder<Item> construct() {
+		return build();
+	}
+
+	@Benchmark
+	public int constructAndHash() {
+		return build().hashCode();
+	}
+
+	@Benchmark
+	public boolean constructAndEquals() {
+		return build().equals(prototype);
+	}
+}
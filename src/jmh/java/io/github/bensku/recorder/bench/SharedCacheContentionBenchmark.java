@@ -0,0 +1,81 @@
+package io.github.bensku.recorder.bench;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.SharedQueryCache;
+
+/**
+ * Measures old generation hits of a shared query cache when many threads
+ * look up the same hot queries. Bounding old generation means that every
+ * lookup is recorded to its admission policy; this compares that against
+ * a plain concurrent map, which is what old generation was before it was
+ * bounded.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class SharedCacheContentionBenchmark {
+
+	private static final int PROMOTE_THRESHOLD = 10;
+
+	/**
+	 * Position of a thread in {@link SharedCacheContentionBenchmark#keys}.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		int index;
+	}
+
+	/**
+	 * Old generation: "unbounded" map without admission policy, or
+	 * "bounded" shared query cache.
+	 */
+	@Param({"unbounded", "bounded"})
+	public String oldGen;
+
+	/**
+	 * Number of hot queries. Must be a power of two.
+	 */
+	@Param({"64"})
+	public int shapes;
+
+	private Object[] keys;
+	private ConcurrentHashMap<Object, CachedQuery> map;
+	private SharedQueryCache<Object> cache;
+
+	@Setup
+	public void setup() {
+		keys = new Object[shapes];
+		map = new ConcurrentHashMap<>();
+		cache = new SharedQueryCache<>(shapes * 2, PROMOTE_THRESHOLD);
+		for (int i = 0; i < shapes; i++) {
+			keys[i] = new Object(); // Identity-hashed, like query builders
+			CachedQuery query = new CachedQuery("SELECT a FROM t" + i + " WHERE a=?", new int[] {0});
+			map.put(keys[i], query);
+			cache.put(keys[i], query);
+			for (int j = 0; j < PROMOTE_THRESHOLD; j++) {
+				cache.get(keys[i]); // Promote to old gen
+			}
+		}
+	}
+
+	@Benchmark
+	public CachedQuery hit(Cursor cursor) {
+		Object key = keys[cursor.index++ & (shapes - 1)];
+		return oldGen.equals("bounded") ? cache.get(key) : map.get(key);
+	}
+}
@@ -0,0 +1,32 @@
+package io.github.bensku.recorder.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors that run each task on a new thread, like servers that
+ * use a thread per request.
+ *
+ */
+class ThreadPerTask {
+
+	/**
+	 * Creates an executor that starts a virtual thread for each task. If the
+	 * JVM does not support virtual threads, platform threads are used.
+	 * @return A new executor.
+	 */
+	public static Executor newExecutor() {
+		try {
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			return task -> {
+				Thread thread = new Thread(task);
+				thread.setDaemon(true);
+				thread.start();
+			};
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
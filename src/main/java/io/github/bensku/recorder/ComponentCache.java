@@ -0,0 +1,68 @@
+package io.github.bensku.recorder;
+
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Caches record components that {@link ComponentLambda component lambdas}
+ * refer to. The JVM spins one class per method reference, so looking up the
+ * component once per lambda class is enough.
+ *
+ */
+final class ComponentCache {
+	
+	/**
+	 * Holder for a lazily resolved component. Lambda instance is needed to
+	 * resolve it, so {@link ClassValue#computeValue(Class)} cannot do that.
+	 */
+	private static class Entry {
+		
+		/**
+		 * The component, or null if not yet resolved. Component references
+		 * are immutable, so this can be published without synchronization.
+		 */
+		ComponentReference<?> component;
+	}
+	
+	private static final ClassValue<Entry> CACHE = new ClassValue<>() {
+		@Override
+		protected Entry computeValue(Class<?> type) {
+			return new Entry();
+		}
+	};
+	
+	private ComponentCache() {}
+	
+	/**
+	 * Gets the record component that given lambda refers to.
+	 * @param lambda Component lambda.
+	 * @return Record component.
+	 */
+	public static ComponentReference<?> get(ComponentLambda<?, ?> lambda) {
+		Entry entry = CACHE.get(lambda.getClass());
+		ComponentReference<?> component = entry.component;
+		if (component == null) {
+			// If multiple threads get here, they all compute same value
+			component = resolve(lambda);
+			entry.component = component;
+		}
+		return component;
+	}
+	
+	private static ComponentReference<?> resolve(ComponentLambda<?, ?> lambda) {
+		try {
+			Method writeReplaceMethod = lambda.getClass().getDeclaredMethod("writeReplace");
+			writeReplaceMethod.setAccessible(true);
+			SerializedLambda serialized = (SerializedLambda) writeReplaceMethod.invoke(lambda);
+			
+			Class<?> record = Class.forName(serialized.getImplClass().replace('/', '.'), false,
+					lambda.getClass().getClassLoader());
+			String name = serialized.getImplMethodName();
+			Class<?> type = record.getMethod(name).getReturnType();
+			return new ComponentReference<>(record, name, type);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | ClassNotFoundException e) {
+			throw new AssertionError("record component lookup failed", e);
+		}
+	}
+}
@@ -1,18 +1,39 @@
 package io.github.bensku.recorder;
 
+import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 
 import javax.sql.DataSource;
 
-import io.github.bensku.recorder.cache.Cache;
+import io.github.bensku.recorder.cache.CacheStats;
+import io.github.bensku.recorder.cache.ClassValueCache;
+import io.github.bensku.recorder.cache.EntityCache;
 import io.github.bensku.recorder.cache.GlobalCache;
 import io.github.bensku.recorder.cache.QueryCache;
 import io.github.bensku.recorder.cache.QueryCaches;
+import io.github.bensku.recorder.cache.ResultCache;
+import io.github.bensku.recorder.cache.StatementCache;
+import io.github.bensku.recorder.cache.StatementCaches;
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+import io.github.bensku.recorder.query.ForeignQuery;
+import io.github.bensku.recorder.query.InsertBuilder;
+import io.github.bensku.recorder.query.QueryContext;
 import io.github.bensku.recorder.query.QueryHelper;
 import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.FetchPlan;
 import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.MapperSource;
 import io.github.bensku.recorder.query.mapper.RecordMapper;
 import io.github.bensku.recorder.query.mapper.TableSource;
 import io.github.bensku.recorder.sql.JavaType;
@@ -21,6 +42,186 @@ import io.github.bensku.recorder.sql.adapter.SqlAdapter;
 
 public class Recorder {
 	
+	/**
+	 * Builds Recorder instances with non-default settings.
+	 *
+	 */
+	public static class Builder {
+		
+		private final DataSource dataSource;
+		private final SqlAdapter sqlAdapter;
+		private TableSource tableSource;
+		private boolean sharedQueryCache;
+		private int queryCacheSize;
+		private int promoteThreshold;
+		private int oldGenSize;
+		private int statementCacheSize;
+		private int entityCacheSize;
+		private Duration entityTtl;
+		private int resultCacheSize;
+		private Executor executor;
+		private RecorderMetrics metrics;
+		
+		private Builder(DataSource dataSource, SqlAdapter sqlAdapter) {
+			this.dataSource = dataSource;
+			this.sqlAdapter = sqlAdapter;
+			this.tableSource = null; // TODO implementations :)
+			this.queryCacheSize = 30;
+			this.promoteThreshold = 10;
+			this.oldGenSize = QueryCache.DEFAULT_OLD_GEN_SIZE;
+			this.statementCacheSize = 64;
+			this.resultCacheSize = 256;
+			this.metrics = RecorderMetrics.NONE;
+		}
+		
+		/**
+		 * Sets where table definitions for records come from.
+		 * @param tableSource Table source.
+		 * @return This builder.
+		 */
+		public Builder tableSource(TableSource tableSource) {
+			this.tableSource = tableSource;
+			return this;
+		}
+		
+		/**
+		 * Sets whether all threads should share query caches. By default,
+		 * each thread has its own caches, which is fastest when there are
+		 * a few long-lived threads. When threads are created per request
+		 * (e.g. virtual threads), thread-local caches are always cold and
+		 * a shared cache should be used instead.
+		 * @param shared Whether to use a shared query cache.
+		 * @return This builder.
+		 */
+		public Builder sharedQueryCache(boolean shared) {
+			this.sharedQueryCache = shared;
+			return this;
+		}
+		
+		/**
+		 * Sets sizes of query caches.
+		 * @param newGenSize Size of new generation cache.
+		 * @param promoteThreshold How many times a query must be used before
+		 * it is promoted to old generation cache.
+		 * @return This builder.
+		 */
+		public Builder queryCacheSize(int newGenSize, int promoteThreshold) {
+			this.queryCacheSize = newGenSize;
+			this.promoteThreshold = promoteThreshold;
+			return this;
+		}
+		
+		/**
+		 * Sets sizes of query caches.
+		 * @param newGenSize Size of new generation cache.
+		 * @param promoteThreshold How many times a query must be used before
+		 * it is promoted to old generation cache.
+		 * @param oldGenSize Maximum size of old generation cache. When it is
+		 * full, queries that are used most often are kept.
+		 * @return This builder.
+		 */
+		public Builder queryCacheSize(int newGenSize, int promoteThreshold, int oldGenSize) {
+			queryCacheSize(newGenSize, promoteThreshold);
+			this.oldGenSize = oldGenSize;
+			return this;
+		}
+		
+		/**
+		 * Sets maximum number of prepared statements cached per connection.
+		 * If the pool closes statements when connections are returned to it,
+		 * they are only reused within a session; see {@link StatementCaches}.
+		 * @param size Statement cache size, or 0 to disable caching.
+		 * @return This builder.
+		 */
+		public Builder statementCacheSize(int size) {
+			this.statementCacheSize = size;
+			return this;
+		}
+		
+		/**
+		 * Enables caching records by their primary keys. Cached records are
+		 * returned by {@link SelectBuilder#first()} when the only condition
+		 * of query is equality of primary key. Recorder has no updates or
+		 * deletes, and inserts never replace cached rows, so nothing removes
+		 * records from the cache before they expire: changed rows are only
+		 * seen after that. Use a TTL unless rows never change.
+		 * @param maxSize Maximum number of cached records, or 0 to disable.
+		 * @param ttl How long records are cached, or null to keep them
+		 * until they are evicted.
+		 * @return This builder.
+		 */
+		public Builder entityCache(int maxSize, Duration ttl) {
+			this.entityCacheSize = maxSize;
+			this.entityTtl = ttl;
+			return this;
+		}
+		
+		/**
+		 * Sets maximum number of query results cached for queries that
+		 * {@link SelectBuilder#cached(Duration) request caching}.
+		 * @param size Result cache size, or 0 to disable caching.
+		 * @return This builder.
+		 */
+		public Builder resultCacheSize(int size) {
+			this.resultCacheSize = size;
+			return this;
+		}
+		
+		/**
+		 * Sets executor that asynchronous queries run on. By default,
+		 * each query runs on a new virtual thread if the JVM supports them,
+		 * or on a pool of platform threads if it does not.
+		 * @param executor Executor for asynchronous queries.
+		 * @return This builder.
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+		
+		/**
+		 * Sets where metrics about caches and query latencies are reported.
+		 * By default, they are not collected.
+		 * @param metrics Metrics listener, e.g.
+		 * {@link io.github.bensku.recorder.metrics.CollectingMetrics}.
+		 * @return This builder.
+		 */
+		public Builder metrics(RecorderMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+		
+		public Recorder build() {
+			return new Recorder(this);
+		}
+	}
+	
+	/**
+	 * Work that is done inside a session.
+	 *
+	 * @param <T> Type of result.
+	 */
+	@FunctionalInterface
+	public interface Work<T> {
+		
+		/**
+		 * Does the work.
+		 * @return Result of work.
+		 * @throws SQLException When a query fails.
+		 */
+		T run() throws SQLException;
+	}
+	
+	/**
+	 * Creates a builder for Recorder instances.
+	 * @param dataSource Data source (connection provider) for database.
+	 * @param sqlAdapter SQL adapter for the database.
+	 * @return A new builder.
+	 */
+	public static Builder builder(DataSource dataSource, SqlAdapter sqlAdapter) {
+		return new Builder(dataSource, sqlAdapter);
+	}
+	
 	/**
 	 * Data source (connection provider) for current database.
 	 */
@@ -39,12 +240,17 @@ public class Recorder {
 	/**
 	 * {@link QueryCache Query caches} for different types of query builders.
 	 */
-	private final ThreadLocal<QueryCaches> queryCaches;
+	private final Supplier<QueryCaches> queryCaches;
 	
 	/**
-	 * Cache of tables resolved with {@link #tableSource}.
+	 * Tables of record classes, resolved with {@link #tableSource}.
 	 */
-	private final GlobalCache<JavaType, Table> tableCache;
+	private final ClassValueCache<Record, Table> recordTables;
+	
+	/**
+	 * Provides tables from caches to queries.
+	 */
+	private final TableSource tables;
 	
 	/**
 	 * Record mapper code generator.
@@ -54,35 +260,439 @@ public class Recorder {
 	/**
 	 * Cached record mappers.
 	 */
-	private final GlobalCache<JavaType, RecordMapper<?>> mapperCache;
+	private final ClassValueCache<Record, RecordMapper<?>> mapperCache;
+	
+	/**
+	 * Cached record mappers that join fetch foreign keys, by record types.
+	 * Caches are stored in records, so they must not refer to this Recorder;
+	 * mappers are loaded by {@link #fetchMapper(FetchPlan)}.
+	 */
+	private final ClassValueCache<Record, GlobalCache<FetchPlan, RecordMapper<?>>> fetchMapperCache;
+	
+	/**
+	 * Provides mappers from caches to queries.
+	 */
+	private final MapperSource mappers;
+	
+	/**
+	 * Cache of records by primary keys, or null if disabled.
+	 */
+	private final EntityCache entityCache;
+	
+	/**
+	 * Cache of query results, or null if disabled.
+	 */
+	private final ResultCache resultCache;
+	
+	/**
+	 * Executor for asynchronous queries.
+	 */
+	private final Executor executor;
+	
+	/**
+	 * Context of all queries, without connection.
+	 */
+	private final QueryContext context;
+	
+	/**
+	 * Prepared statement caches of connections.
+	 */
+	private final StatementCaches statementCaches;
+	
+	/**
+	 * Connection of session that current thread is in, if any.
+	 */
+	private final ThreadLocal<Connection> session;
+	
+	/**
+	 * Names of tables written in transaction that current thread is in,
+	 * if any. Their cached results are invalidated again after commit.
+	 */
+	private final ThreadLocal<Set<String>> writtenTables;
+	
+	/**
+	 * Metrics listener.
+	 */
+	private final RecorderMetrics metrics;
 	
 	public Recorder(DataSource dataSource, SqlAdapter sqlAdapter) {
-		this.dataSource = dataSource;
-		this.sqlAdapter = sqlAdapter;
-		this.tableSource = null; // TODO implementations :)
-		this.queryCaches = new ThreadLocal<>() {
-			protected QueryCaches initialValue() {
-				return new QueryCaches(30, 10);
+		this(builder(dataSource, sqlAdapter));
+	}
+	
+	private Recorder(Builder builder) {
+		this.dataSource = builder.dataSource;
+		this.sqlAdapter = builder.sqlAdapter;
+		this.tableSource = builder.tableSource;
+		this.metrics = builder.metrics;
+		int newGenSize = builder.queryCacheSize;
+		int promoteThreshold = builder.promoteThreshold;
+		int oldGenSize = builder.oldGenSize;
+		if (builder.sharedQueryCache) {
+			QueryCaches shared = QueryCaches.shared(newGenSize, promoteThreshold, oldGenSize, metrics);
+			this.queryCaches = () -> shared;
+		} else {
+			this.queryCaches = ThreadLocal.withInitial(() -> new QueryCaches(newGenSize, promoteThreshold,
+					oldGenSize, metrics))::get;
+		}
+		this.recordTables = new ClassValueCache<>(builder.tableSource::get);
+		this.tables = new TableSource() {
+			
+			@Override
+			public Table get(JavaType type) {
+				// Resolve the record class, like MapperGenerator does, so that table is cached
+				ClassLoader loader = Thread.currentThread().getContextClassLoader();
+				if (loader == null) {
+					loader = Recorder.class.getClassLoader();
+				}
+				try {
+					return recordTables.get(Class.forName(type.name(), false, loader).asSubclass(Record.class));
+				} catch (ClassNotFoundException e) {
+					return tableSource.get(type); // Not visible to us, can't cache it
+				}
+			}
+			
+			@Override
+			public Table get(Class<? extends Record> record) {
+				return recordTables.get(record);
 			}
 		};
-		this.tableCache = new GlobalCache<>(tableSource::get);
 		
 		// Creating table definitions is expensive, so we're using cache as
 		// source, even though we have direct access to source
-		this.mapperGenerator = new MapperGenerator(tableCache::get);
+		this.mapperGenerator = new MapperGenerator(tables);
 		// And because generating and loading bytecode is not cheap either...
-		this.mapperCache = new GlobalCache<>(mapperGenerator::create);
+		// Mappers are stored in their records, so they can be unloaded together
+		this.mapperCache = new ClassValueCache<>(record -> {
+			long start = System.nanoTime();
+			RecordMapper<?> mapper = mapperGenerator.create(record.asSubclass(Record.class));
+			metrics.mapperGenerated(record, System.nanoTime() - start);
+			return mapper;
+		});
+		this.fetchMapperCache = new ClassValueCache<>(record -> new GlobalCache<>());
+		this.mappers = new MapperSource() {
+			
+			@Override
+			public RecordMapper<?> get(Class<? extends Record> record) {
+				return mapperCache.get(record);
+			}
+			
+			@Override
+			public RecordMapper<?> get(FetchPlan plan) {
+				if (plan.components().isEmpty()) {
+					return mapperCache.get(plan.record());
+				}
+				return fetchMapper(plan);
+			}
+		};
+		this.statementCaches = new StatementCaches(builder.statementCacheSize);
+		this.session = new ThreadLocal<>();
+		this.writtenTables = new ThreadLocal<>();
+		this.executor = builder.executor != null ? builder.executor : defaultExecutor();
+		this.resultCache = builder.resultCacheSize > 0 ? new ResultCache(builder.resultCacheSize) : null;
+		this.entityCache = builder.entityCacheSize > 0 ? new EntityCache(builder.entityCacheSize, builder.entityTtl) : null;
+		this.context = QueryContext.builder(sqlAdapter, tables)
+				.mappers(mappers)
+				.foreignLoader(this::loadForeign)
+				.entityCache(entityCache)
+				.resultCache(resultCache)
+				.executor(executor)
+				.metrics(metrics)
+				.dataSource(dataSource)
+				.build();
+		
+		metrics.registerGauge("tables", recordTables::size);
+		metrics.registerGauge("mappers", this::mapperCount);
+		if (entityCache != null) {
+			metrics.registerGauge("entityCache.size", entityCache::size);
+		}
+		if (resultCache != null) {
+			metrics.registerGauge("resultCache.size", resultCache::size);
+		}
+	}
+	
+	/**
+	 * Creates an executor that starts a virtual thread for each task. If
+	 * the JVM does not support virtual threads, a pool of daemon threads
+	 * is used instead.
+	 * @return A new executor.
+	 */
+	private static Executor defaultExecutor() {
+		try {
+			// Reflection, because we're compiled for JDK 14
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "Recorder async query");
+				thread.setDaemon(true); // Don't prevent JVM from exiting
+				return thread;
+			});
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	/**
+	 * Gets a mapper that join fetches foreign keys from
+	 * {@link #fetchMapperCache}, creating it if needed. Each mapper is
+	 * generated once, even if threads need it at the same time.
+	 * @param plan Fetch plan.
+	 * @return Record mapper.
+	 */
+	private RecordMapper<?> fetchMapper(FetchPlan plan) {
+		return fetchMapperCache.get(plan.record()).get(plan, key -> {
+			long start = System.nanoTime();
+			RecordMapper<?> mapper = mapperGenerator.create(key);
+			metrics.mapperGenerated(key.record(), System.nanoTime() - start);
+			return mapper;
+		});
+	}
+	
+	/**
+	 * Counts mappers in {@link #mapperCache} and {@link #fetchMapperCache}.
+	 * @return Number of mappers.
+	 */
+	private long mapperCount() {
+		long[] count = {mapperCache.size()};
+		fetchMapperCache.forEach(cache -> count[0] += cache.size());
+		return count[0];
 	}
 	
 	@SuppressWarnings("unchecked") // Generic magic
 	private <T, R extends Record> QueryHelper<T, R> newHelper(QueryCache<?> queryCache, Class<R> record) throws SQLException {
-		Cache<JavaType, Table> tables = tableCache.threadLocalView();
-		RecordMapper<R> mapper = (RecordMapper<R>) mapperCache.get(JavaType.of(record));
-		return new QueryHelper<T, R>(sqlAdapter, dataSource.getConnection(), (QueryCache<T>) queryCache, tables::get, mapper);
+		Connection pinned = session.get();
+		if (pinned != null) {
+			return newHelper(queryCache, record, pinned);
+		}
+		Connection conn = dataSource.getConnection();
+		RecordMapper<R> mapper = (RecordMapper<R>) mapperCache.get(record);
+		return new QueryHelper<T, R>(context.withConnection(conn, statementCaches.get(conn)), (QueryCache<T>) queryCache,
+				mapper, record);
+	}
+	
+	/**
+	 * Creates a query helper that runs on a connection that it does not
+	 * close, e.g. connection of a session.
+	 * @param <T> Type of query builder.
+	 * @param <R> Record type.
+	 * @param queryCache Query cache.
+	 * @param record Record type.
+	 * @param pinned Connection.
+	 * @return A new query helper.
+	 * @throws SQLException When checking state of connection fails.
+	 */
+	@SuppressWarnings("unchecked") // Generic magic
+	private <T, R extends Record> QueryHelper<T, R> newHelper(QueryCache<?> queryCache, Class<R> record,
+			Connection pinned) throws SQLException {
+		RecordMapper<R> mapper = (RecordMapper<R>) mapperCache.get(record);
+		StatementCache statements = statementCaches.get(pinned);
+		// Results of open transactions must not leak to shared caches
+		QueryContext context;
+		if (pinned.getAutoCommit()) {
+			context = this.context.inSession(pinned, statements);
+		} else {
+			Set<String> written = writtenTables.get(); // Null if user disabled auto-commit
+			context = this.context.inTransaction(pinned, statements,
+					written != null ? written : ConcurrentHashMap.newKeySet());
+		}
+		return new QueryHelper<T, R>(context, (QueryCache<T>) queryCache, mapper, record);
+	}
+	
+	/**
+	 * Resolves tables and generates mappers for given records in parallel,
+	 * so that first queries that use them do not have to. Default SELECT
+	 * and INSERT statements are rendered, too.
+	 * @param records Record types.
+	 * @see #preload(Collection, boolean)
+	 */
+	@SafeVarargs
+	public final void preload(Class<? extends Record>... records) {
+		List<Class<? extends Record>> list = new ArrayList<>(records.length);
+		for (Class<? extends Record> record : records) { // Don't let array escape
+			list.add(record);
+		}
+		preload(list, true);
+	}
+	
+	/**
+	 * Resolves tables and generates mappers for given records in parallel
+	 * on {@link java.util.concurrent.ForkJoinPool#commonPool() common pool},
+	 * so that first queries that use them do not have to. This blocks until
+	 * everything has been loaded.
+	 * 
+	 * <p>SQL is rendered on the calling thread, after tables have been
+	 * loaded. Unless query caches are
+	 * {@link Builder#sharedQueryCache(boolean) shared}, each thread has its
+	 * own caches, and only caches of the calling thread are warmed.
+	 * @param records Record types.
+	 * @param renderSql Whether default SELECT (all rows) and INSERT
+	 * (one row) statements should be rendered to query caches.
+	 */
+	public void preload(Collection<Class<? extends Record>> records, boolean renderSql) {
+		records.parallelStream().forEach(record -> {
+			tables.get(record);
+			mapperCache.get(record);
+		});
+		if (renderSql) { // Cheap now that tables are loaded
+			records.forEach(this::render);
+		}
+	}
+	
+	/**
+	 * Renders default queries of a record to query caches.
+	 * @param <R> Record type.
+	 * @param record Record type.
+	 */
+	private <R extends Record> void render(Class<R> record) {
+		QueryCaches caches = queryCaches.get();
+		new SelectBuilder<>(renderHelper(caches.select(), record), record).sql();
+		new InsertBuilder<>(renderHelper(caches.insert(), record), record).sql();
+	}
+	
+	/**
+	 * Creates a query helper that can generate queries, but not execute
+	 * them.
+	 * @param <T> Type of query builder.
+	 * @param <R> Record type.
+	 * @param queryCache Query cache.
+	 * @param record Record type.
+	 * @return A new query helper without connection.
+	 */
+	@SuppressWarnings("unchecked") // Generic magic
+	private <T, R extends Record> QueryHelper<T, R> renderHelper(QueryCache<?> queryCache, Class<R> record) {
+		RecordMapper<R> mapper = (RecordMapper<R>) mapperCache.get(record);
+		return new QueryHelper<T, R>(context, (QueryCache<T>) queryCache, mapper, record); // Context has no connection
+	}
+	
+	/**
+	 * Runs work in a session. All queries that are created inside it on
+	 * this thread share one connection (and its prepared statements),
+	 * which is closed when the work is done. If this thread is already in a
+	 * session, its connection is used.
+	 * 
+	 * <p>Queries should not be used after the session has ended. This
+	 * includes asynchronous queries, which should be waited for inside
+	 * the session.
+	 * @param <T> Type of result.
+	 * @param work Work to do.
+	 * @return Result of work.
+	 * @throws SQLException When work or getting connection fails.
+	 */
+	public <T> T session(Work<T> work) throws SQLException {
+		if (session.get() != null) {
+			return work.run(); // Nested session, owner closes the connection
+		}
+		try (Connection conn = dataSource.getConnection()) {
+			session.set(conn);
+			try {
+				return work.run();
+			} finally {
+				session.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Runs work in a transaction. The transaction is committed if work
+	 * completes normally, and rolled back if it throws. Transactions are
+	 * sessions, so all queries inside one use the same connection.
+	 * If this thread is already in a transaction, work joins it.
+	 * 
+	 * <p>Queries inside a transaction bypass entity and result caches,
+	 * because they might see changes that are never committed. Cached
+	 * results of tables that it writes are invalidated again after commit,
+	 * because others might have cached them while it was open.
+	 * @param <T> Type of result.
+	 * @param work Work to do.
+	 * @return Result of work.
+	 * @throws SQLException When work, commit or rollback fails.
+	 */
+	public <T> T inTransaction(Work<T> work) throws SQLException {
+		return session(() -> {
+			Connection conn = session.get();
+			if (!conn.getAutoCommit()) {
+				return work.run(); // Outer transaction commits or rolls back
+			}
+			conn.setAutoCommit(false);
+			Set<String> written = ConcurrentHashMap.newKeySet(); // Async queries might write, too
+			writtenTables.set(written);
+			T result;
+			try {
+				result = work.run();
+				conn.commit();
+			} catch (Throwable e) {
+				try {
+					conn.rollback();
+				} catch (SQLException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				try {
+					conn.setAutoCommit(true);
+				} catch (SQLException suppressed) {
+					e.addSuppressed(suppressed); // Don't hide why transaction failed
+				}
+				throw e;
+			} finally {
+				writtenTables.remove();
+			}
+			if (resultCache != null) {
+				// Others might have cached what they read before we committed
+				written.forEach(resultCache::invalidate);
+			}
+			conn.setAutoCommit(true); // Connection might return to a pool
+			return result;
+		});
+	}
+	
+	/**
+	 * Loads records that foreign references refer to.
+	 * @param <R> Record type.
+	 * @param record Record type.
+	 * @param keys Primary keys.
+	 * @param conn Connection of query that the references came from, or
+	 * null to use a connection of our own.
+	 * @return Records by their primary keys.
+	 * @throws SQLException When loading fails.
+	 */
+	private <R extends Record> Map<Object, R> loadForeign(Class<R> record, Collection<Object> keys, Connection conn)
+			throws SQLException {
+		QueryCache<ForeignQuery.Shape> cache = queryCaches.get().foreign();
+		QueryHelper<ForeignQuery.Shape, R> helper = conn != null ? newHelper(cache, record, conn) : newHelper(cache, record);
+		return new ForeignQuery<>(helper, record).load(keys);
 	}
 	
 	public <R extends Record> SelectBuilder<R> select(Class<R> record) throws SQLException {
 		QueryHelper<SelectBuilder<R>, R> helper = newHelper(queryCaches.get().select(), record);
 		return new SelectBuilder<>(helper, record);
 	}
+	
+	public <R extends Record> InsertBuilder<R> insert(Class<R> record) throws SQLException {
+		QueryHelper<InsertBuilder.Shape, R> helper = newHelper(queryCaches.get().insert(), record);
+		return new InsertBuilder<>(helper, record);
+	}
+	
+	/**
+	 * Gets how many times prepared statements have been reused from caches,
+	 * and how many times they had to be prepared, over all connections.
+	 * Statements closed by the pool count as misses.
+	 * @return Statement cache stats.
+	 */
+	public CacheStats statementCacheStats() {
+		return statementCaches.stats();
+	}
+	
+	/**
+	 * Gets how many primary key lookups have been served from entity cache.
+	 * @return Entity cache stats, or zeros if it is disabled.
+	 */
+	public CacheStats entityCacheStats() {
+		return entityCache != null ? entityCache.stats() : new CacheStats(0, 0);
+	}
+	
+	/**
+	 * Gets how many cached queries have been served from result cache.
+	 * @return Result cache stats, or zeros if it is disabled.
+	 */
+	public CacheStats resultCacheStats() {
+		return resultCache != null ? resultCache.stats() : new CacheStats(0, 0);
+	}
 }
@@ -0,0 +1,102 @@
+package io.github.bensku.recorder.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Decides which keys old generations of query caches keep. Keys that are
+ * used again soon after admission move from probation to protected
+ * segment (segmented LRU). When cache is full, a candidate is only admitted
+ * if it has been used more often recently than the key that would be
+ * evicted for it (TinyLFU). This keeps one-off queries from pushing out
+ * hot ones. Not thread-safe.
+ * @param <K> Type of keys.
+ */
+final class AdmissionPolicy<K> {
+	
+	/**
+	 * Maximum number of keys.
+	 */
+	private final int maximumSize;
+	
+	/**
+	 * Maximum number of keys in {@link #protectedKeys}.
+	 */
+	private final int maximumProtected;
+	
+	/**
+	 * Recent use counts of all keys, including ones not in this policy.
+	 */
+	private final FrequencySketch sketch;
+	
+	/**
+	 * Keys that have not been used since admission, least recently used first.
+	 */
+	private final LinkedHashSet<K> probation;
+	
+	/**
+	 * Keys that have been used since admission, least recently used first.
+	 */
+	private final LinkedHashSet<K> protectedKeys;
+	
+	AdmissionPolicy(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximum size must be positive, got " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.maximumProtected = maximumSize * 4 / 5;
+		this.sketch = new FrequencySketch(maximumSize);
+		this.probation = new LinkedHashSet<>();
+		this.protectedKeys = new LinkedHashSet<>();
+	}
+	
+	/**
+	 * Records that a key was looked up, whether it is in cache or not.
+	 * @param key Key.
+	 */
+	void recordAccess(K key) {
+		sketch.increment(key);
+		if (probation.remove(key)) { // Used again, protect it
+			protectedKeys.add(key);
+			if (protectedKeys.size() > maximumProtected) { // Demote least recently used
+				Iterator<K> it = protectedKeys.iterator();
+				K demoted = it.next();
+				it.remove();
+				probation.add(demoted);
+			}
+		} else if (protectedKeys.remove(key)) {
+			protectedKeys.add(key); // Move to most recently used
+		}
+	}
+	
+	/**
+	 * Attempts to admit a key.
+	 * @param candidate Key that is not in this policy.
+	 * @return Key that was evicted to make room for candidate, candidate
+	 * itself if it was not admitted, or null if it was admitted without
+	 * evicting anything.
+	 */
+	K admit(K candidate) {
+		if (probation.size() + protectedKeys.size() < maximumSize) {
+			probation.add(candidate);
+			return null;
+		}
+		LinkedHashSet<K> segment = probation.isEmpty() ? protectedKeys : probation;
+		Iterator<K> it = segment.iterator();
+		K victim = it.next();
+		if (sketch.frequency(candidate) <= sketch.frequency(victim)) {
+			return candidate; // Not popular enough to replace anything
+		}
+		it.remove();
+		probation.add(candidate);
+		return victim;
+	}
+	
+	/**
+	 * Gets number of keys admitted to this policy.
+	 * @return Number of keys.
+	 */
+	int size() {
+		return probation.size() + protectedKeys.size();
+	}
+}
@@ -0,0 +1,36 @@
+package io.github.bensku.recorder.cache;
+
+/**
+ * Hit and miss counts of a cache.
+ *
+ */
+public record CacheStats(
+
+		/**
+		 * How many lookups found a value from cache.
+		 */
+		long hits,
+
+		/**
+		 * How many lookups did not find a value from cache.
+		 */
+		long misses
+) {
+
+	/**
+	 * Gets ratio of hits to all lookups.
+	 * @return Hit rate between 0 and 1, or NaN if there have been no lookups.
+	 */
+	public double hitRate() {
+		return (double) hits / (hits + misses);
+	}
+
+	/**
+	 * Combines these stats with other stats.
+	 * @param other Other stats.
+	 * @return Sum of hits and misses.
+	 */
+	public CacheStats plus(CacheStats other) {
+		return new CacheStats(hits + other.hits, misses + other.misses);
+	}
+}
@@ -0,0 +1,82 @@
+package io.github.bensku.recorder.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Thread-safe cache keyed by classes. Values are stored in the classes
+ * with {@link ClassValue}, so lookups are lock-free and as fast as a
+ * field read, and values can be garbage collected with class loaders of
+ * their classes. Unlike {@link GlobalCache}, this does not need
+ * thread-local views to avoid contention.
+ *
+ * <p>If threads race to load the same class, loader may be called more
+ * than once, but only one value is ever returned.
+ *
+ * <p>Values must not refer to this cache or to whatever owns it. A class
+ * strongly reaches its values, so such a value would keep its owner alive
+ * for as long as the class is loaded.
+ *
+ * @param <C> Upper bound of classes.
+ * @param <V> Value.
+ */
+public class ClassValueCache<C, V> implements Cache<Class<? extends C>, V> {
+	
+	/**
+	 * Values of classes.
+	 */
+	private final ClassValue<V> values;
+	
+	/**
+	 * Classes that have values. Weak, so that this does not prevent
+	 * classes from being unloaded. Guarded by itself.
+	 */
+	private final Map<Class<?>, Boolean> classes;
+	
+	public ClassValueCache(Function<Class<? extends C>, V> loader) {
+		this.classes = Collections.synchronizedMap(new WeakHashMap<>());
+		this.values = new ClassValue<>() {
+			
+			@SuppressWarnings("unchecked") // Only classes of C are used as keys
+			@Override
+			protected V computeValue(Class<?> type) {
+				V value = loader.apply((Class<? extends C>) type);
+				classes.put(type, true); // Same key if threads race
+				return value;
+			}
+		};
+	}
+
+	@Override
+	public V get(Class<? extends C> key) {
+		return values.get(key);
+	}
+	
+	/**
+	 * Gets number of classes that have values in this cache. Classes that
+	 * have been unloaded are not counted.
+	 * @return Number of values.
+	 */
+	public int size() {
+		return classes.size();
+	}
+	
+	/**
+	 * Performs an action for value of each class in this cache.
+	 * @param action Action to perform.
+	 */
+	public void forEach(Consumer<? super V> action) {
+		List<Class<?>> types;
+		synchronized (classes) {
+			types = new ArrayList<>(classes.keySet());
+		}
+		for (Class<?> type : types) {
+			action.accept(values.get(type));
+		}
+	}
+}
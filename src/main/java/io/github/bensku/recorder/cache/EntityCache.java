@@ -0,0 +1,227 @@
+package io.github.bensku.recorder.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import io.github.bensku.recorder.sql.JavaType;
+
+/**
+ * A thread-safe cache of records by their primary keys. Records are
+ * immutable, so same instances can be returned to all threads.
+ * 
+ * <p>The cache is split to stripes by hash code of keys. Each stripe is
+ * guarded by its own lock, and evicts its least recently used entries
+ * when it gets full. Entries can also expire after a fixed time since
+ * they were added.
+ * 
+ * <p>Recorder can only insert rows, and an insert never replaces a row
+ * that could be cached. Rows that are updated or deleted, by Recorder's
+ * users or anyone else, stay cached until they expire or are
+ * {@link #invalidate(JavaType, Object) invalidated} manually. Time to live
+ * is therefore the only bound on how stale cached records can be.
+ */
+public class EntityCache {
+	
+	/**
+	 * Key of a cached record.
+	 */
+	private record Key(
+			
+			/**
+			 * Record type.
+			 */
+			JavaType type,
+			
+			/**
+			 * Primary key of the record.
+			 */
+			Object id
+	) {}
+	
+	/**
+	 * A cached record.
+	 */
+	private record CachedEntity(
+			
+			/**
+			 * The record.
+			 */
+			Record record,
+			
+			/**
+			 * When this expires, in time of {@link EntityCache#clock}.
+			 */
+			long expiresAt
+	) {}
+	
+	/**
+	 * Part of the cache. When it gets full, least recently used entries
+	 * are removed.
+	 */
+	private static class Stripe extends LinkedHashMap<Key, CachedEntity> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final int maxSize;
+		
+		public long hits, misses;
+		
+		public Stripe(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CachedEntity> eldest) {
+			return size() > maxSize;
+		}
+	}
+	
+	/**
+	 * Stripes of this cache. Length of this is a power of two.
+	 */
+	private final Stripe[] stripes;
+	
+	/**
+	 * How long entries live in nanoseconds, or 0 if they don't expire.
+	 */
+	private final long ttl;
+	
+	/**
+	 * Source of current time in nanoseconds.
+	 */
+	private final LongSupplier clock;
+	
+	/**
+	 * Creates a new entity cache.
+	 * @param maxSize Maximum number of records in the cache.
+	 * @param ttl How long records stay in the cache, or null if they only
+	 * leave when evicted or invalidated.
+	 */
+	public EntityCache(int maxSize, Duration ttl) {
+		this(maxSize, ttl, System::nanoTime);
+	}
+	
+	/**
+	 * Creates a new entity cache with a custom clock.
+	 * @param maxSize Maximum number of records in the cache.
+	 * @param ttl How long records stay in the cache, or null if they only
+	 * leave when evicted or invalidated.
+	 * @param clock Source of current time in nanoseconds.
+	 */
+	public EntityCache(int maxSize, Duration ttl, LongSupplier clock) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("cache size must be positive, got " + maxSize);
+		}
+		int count = Integer.highestOneBit(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), maxSize / 16)));
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe(Math.max(1, maxSize / count));
+		}
+		this.ttl = ttl != null ? ttl.toNanos() : 0;
+		this.clock = clock;
+	}
+	
+	private Stripe stripe(Key key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return stripes[hash & (stripes.length - 1)];
+	}
+	
+	/**
+	 * Gets a cached record.
+	 * @param type Record type.
+	 * @param id Primary key.
+	 * @return The record, or null if it is not cached.
+	 */
+	public Record get(JavaType type, Object id) {
+		Key key = new Key(type, id);
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			CachedEntity entry = stripe.get(key);
+			if (entry != null && ttl != 0 && clock.getAsLong() - entry.expiresAt() >= 0) {
+				stripe.remove(key); // Expired
+				entry = null;
+			}
+			if (entry == null) {
+				stripe.misses++;
+				return null;
+			}
+			stripe.hits++;
+			return entry.record();
+		}
+	}
+	
+	/**
+	 * Adds a record to this cache.
+	 * @param type Record type.
+	 * @param id Primary key.
+	 * @param record The record.
+	 */
+	public void put(JavaType type, Object id, Record record) {
+		Key key = new Key(type, id);
+		CachedEntity entry = new CachedEntity(record, ttl != 0 ? clock.getAsLong() + ttl : 0);
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			stripe.put(key, entry);
+		}
+	}
+	
+	/**
+	 * Removes a record from this cache. This should be called whenever
+	 * its row changes.
+	 * @param type Record type.
+	 * @param id Primary key.
+	 */
+	public void invalidate(JavaType type, Object id) {
+		Key key = new Key(type, id);
+		Stripe stripe = stripe(key);
+		synchronized (stripe) {
+			stripe.remove(key);
+		}
+	}
+	
+	/**
+	 * Removes all records of given type from this cache.
+	 * @param type Record type.
+	 */
+	public void invalidateAll(JavaType type) {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.keySet().removeIf(key -> key.type().equals(type));
+			}
+		}
+	}
+	
+	/**
+	 * Gets how many lookups have hit or missed this cache.
+	 * @return Cache stats.
+	 */
+	public CacheStats stats() {
+		long hits = 0, misses = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				hits += stripe.hits;
+				misses += stripe.misses;
+			}
+		}
+		return new CacheStats(hits, misses);
+	}
+	
+	/**
+	 * Gets number of records in this cache, including expired ones that
+	 * have not yet been removed.
+	 * @return Number of cached records.
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+}
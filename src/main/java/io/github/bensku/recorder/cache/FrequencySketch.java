@@ -0,0 +1,105 @@
+package io.github.bensku.recorder.cache;
+
+/**
+ * Approximate counts of how often keys have been used recently, in a
+ * count-min sketch of 4-bit counters. When enough uses have been recorded,
+ * all counters are halved, so that keys that were popular long ago do not
+ * stay popular forever. Not thread-safe.
+ */
+final class FrequencySketch {
+	
+	/**
+	 * Seeds of hash functions, one for each counter of a key.
+	 */
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+	};
+	
+	/**
+	 * Maximum value of a counter.
+	 */
+	private static final int MAX_COUNT = 15;
+	
+	/**
+	 * Counters. Length of this is a power of two.
+	 */
+	private final byte[] counters;
+	
+	/**
+	 * After how many increments counters are halved.
+	 */
+	private final int sampleSize;
+	
+	/**
+	 * Increments since counters were last halved.
+	 */
+	private int additions;
+	
+	/**
+	 * Creates a new sketch.
+	 * @param maximumSize Maximum number of entries in the cache that uses
+	 * this sketch.
+	 */
+	FrequencySketch(int maximumSize) {
+		int size = Math.max(64, Integer.highestOneBit(Math.max(1, maximumSize) * 4 - 1) << 1);
+		this.counters = new byte[size];
+		this.sampleSize = Math.max(1, maximumSize) * 10;
+	}
+	
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & (counters.length - 1);
+	}
+	
+	private static int spread(Object key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16; // Identity hashes are not well distributed in low bits
+		return hash * 0x9e3779b9;
+	}
+	
+	/**
+	 * Estimates how often a key has been used recently.
+	 * @param key Key.
+	 * @return Estimated frequency, at most 15.
+	 */
+	int frequency(Object key) {
+		int hash = spread(key);
+		int min = MAX_COUNT;
+		for (int i = 0; i < SEEDS.length; i++) {
+			min = Math.min(min, counters[indexOf(hash, i)]);
+		}
+		return min;
+	}
+	
+	/**
+	 * Records a use of key.
+	 * @param key Key.
+	 */
+	void increment(Object key) {
+		int hash = spread(key);
+		int min = frequency(key);
+		if (min == MAX_COUNT) {
+			return; // Counters are saturated
+		}
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(hash, i);
+			if (counters[index] == min) { // Conservative update, leave counters shared with hotter keys alone
+				counters[index]++;
+			}
+		}
+		if (++additions == sampleSize) {
+			reset();
+		}
+	}
+	
+	/**
+	 * Halves all counters.
+	 */
+	private void reset() {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] >>>= 1;
+		}
+		additions /= 2;
+	}
+}
@@ -1,33 +1,83 @@
 package io.github.bensku.recorder.cache;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 
 /**
  * Thread-safe cache that can create thread-local views to it.
  * Note that values are never evicted from this cache, making it
  * unsuitable for e.g. queries (use {@link QueryCache} instead.
+ * When keys are classes, {@link ClassValueCache} is usually better.
+ * 
+ * <p>Each key is loaded at most once at a time. Other threads that need
+ * the key wait for the first load, but no locks are held while the loader
+ * runs, so slow loads do not block unrelated keys and loaders may get
+ * other keys from this cache. If loaders depend on each other in a cycle,
+ * even across threads, the load that would close the cycle fails with
+ * {@link IllegalStateException} instead of deadlocking.
  */
 public class GlobalCache<K, V> implements Cache<K, V> {
 	
 	/**
-	 * Loads values that are not in this cache.
+	 * A value that is being loaded or has been loaded.
+	 */
+	private static class Loading<V> extends CompletableFuture<V> {
+		
+		/**
+		 * Thread that is running the loader, or null.
+		 */
+		volatile Thread owner;
+	}
+	
+	/**
+	 * Values that threads are waiting for, in any global cache. Used to
+	 * detect cycles of loaders that wait for each other.
+	 */
+	private static final ConcurrentMap<Thread, Loading<?>> waiting = new ConcurrentHashMap<>();
+	
+	/**
+	 * Loads values that are not in this cache, or null if they are loaded
+	 * with {@link #get(Object, Function)}.
 	 */
 	private final Function<K, V> loader;
+	
+	/**
+	 * Runs loaders for {@link #getAsync(Object)}.
+	 */
+	private final Executor executor;
 
 	/**
 	 * Underlying concurrent map of this cache.
 	 */
-	private final ConcurrentMap<K, V> map;
+	private final ConcurrentMap<K, Loading<V>> map;
 	
 	/**
 	 * Thread local caches.
 	 */
 	private final ThreadLocal<LocalCache<K, V>> localCache;
 	
+	/**
+	 * Creates a cache without a default loader. Values must be loaded with
+	 * {@link #get(Object, Function)}, so the cache does not need to refer to
+	 * whatever loads them.
+	 */
+	public GlobalCache() {
+		this(null, ForkJoinPool.commonPool());
+	}
+	
 	public GlobalCache(Function<K, V> loader) {
+		this(loader, ForkJoinPool.commonPool());
+	}
+	
+	public GlobalCache(Function<K, V> loader, Executor executor) {
 		this.loader = loader;
+		this.executor = executor;
 		this.map = new ConcurrentHashMap<>();
 		GlobalCache<K, V> self = this;
 		this.localCache = new ThreadLocal<>() {
@@ -40,8 +90,147 @@ public class GlobalCache<K, V> implements Cache<K, V> {
 
 	@Override
 	public V get(K key) {
-		// Get from cache or create new value
-		return map.computeIfAbsent(key, loader::apply);
+		return get(key, defaultLoader());
+	}
+	
+	/**
+	 * Gets a value from this cache, loading it with given loader if it is
+	 * not present and is not being loaded by another thread.
+	 * @param key Key for lookup.
+	 * @param loader Loader for the value.
+	 * @return Value.
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Loading<V> future = map.get(key);
+		if (future == null) {
+			Loading<V> created = new Loading<>();
+			future = map.putIfAbsent(key, created);
+			if (future == null) { // We're responsible for loading it
+				return load(key, created, loader);
+			}
+		}
+		if (future.isDone()) {
+			return await(future);
+		}
+		Thread self = Thread.currentThread();
+		// Announce before checking, so that of two threads that are about
+		// to wait for each other, at least one sees the cycle
+		waiting.put(self, future);
+		try {
+			if (waitsFor(future, self)) {
+				// Waiting for ourself would never finish
+				throw new IllegalStateException("recursive load of " + key);
+			}
+			return await(future);
+		} finally {
+			waiting.remove(self);
+		}
+	}
+	
+	/**
+	 * Checks if a value is being loaded by given thread, or by a thread
+	 * that is waiting for it, directly or through other threads.
+	 * @param future Future of value.
+	 * @param thread Thread.
+	 * @return Whether completing the future depends on the thread.
+	 */
+	private static boolean waitsFor(Loading<?> future, Thread thread) {
+		// Bounded, in case other threads are in a cycle that they'll break
+		for (int i = 0; i <= waiting.size() && future != null; i++) {
+			Thread owner = future.owner;
+			if (owner == thread) {
+				return true;
+			} else if (owner == null) {
+				return false; // Done or not started yet
+			}
+			future = waiting.get(owner);
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets a value from this cache without blocking. If the value is not
+	 * present and is not being loaded by another thread, it is loaded in
+	 * the executor of this cache.
+	 * @param key Key for lookup.
+	 * @return Future that completes with the value.
+	 */
+	public CompletableFuture<V> getAsync(K key) {
+		Function<K, V> loader = defaultLoader();
+		Loading<V> future = map.get(key);
+		if (future == null) {
+			Loading<V> created = new Loading<>();
+			future = map.putIfAbsent(key, created);
+			if (future == null) {
+				future = created;
+				try {
+					executor.execute(() -> {
+						try {
+							load(key, created, loader);
+						} catch (RuntimeException | Error e) {
+							// Already completed exceptionally
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// Nobody will load it, so let the next request try again
+					map.remove(key, created);
+					created.completeExceptionally(e);
+				}
+			}
+		}
+		// Don't let callers complete our future
+		return future.isDone() ? future : future.thenApply(Function.identity());
+	}
+	
+	private Function<K, V> defaultLoader() {
+		if (loader == null) {
+			throw new IllegalStateException("cache has no default loader");
+		}
+		return loader;
+	}
+	
+	/**
+	 * Runs a loader and completes a future that has been put to map.
+	 * @param key Key to load.
+	 * @param future Future for the key.
+	 * @param loader Loader for the value.
+	 * @return Loaded value.
+	 */
+	private V load(K key, Loading<V> future, Function<? super K, ? extends V> loader) {
+		future.owner = Thread.currentThread();
+		V value;
+		try {
+			value = loader.apply(key);
+		} catch (RuntimeException | Error e) {
+			// Let the next request try again
+			map.remove(key, future);
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			future.owner = null;
+		}
+		future.complete(value);
+		return value;
+	}
+	
+	/**
+	 * Waits for a value that another thread is loading.
+	 * @param future Future for value.
+	 * @return Loaded value.
+	 */
+	private static <V> V await(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			// Throw what the loader threw, like if we had loaded it ourself
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException runtime) {
+				throw runtime;
+			} else if (cause instanceof Error error) {
+				throw error;
+			}
+			throw e;
+		}
 	}
 	
 	/**
@@ -53,4 +242,13 @@ public class GlobalCache<K, V> implements Cache<K, V> {
 		return localCache.get();
 	}
 	
+	/**
+	 * Gets number of values in this cache, including values that are
+	 * still being loaded.
+	 * @return Number of values.
+	 */
+	public int size() {
+		return map.size();
+	}
+	
 }
@@ -26,7 +26,13 @@ public class LocalCache<K, V> implements Cache<K, V> {
 	@Override
 	public V get(K key) {
 		// Get from here or from parent
-		return map.computeIfAbsent(key, parent::get);
+		V value = map.get(key);
+		if (value == null) {
+			// Not computeIfAbsent, parent might call us while loading
+			value = parent.get(key);
+			map.put(key, value);
+		}
+		return value;
 	}
 
 }
@@ -0,0 +1,124 @@
+package io.github.bensku.recorder.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+
+/**
+ * A single-threaded, two-stage (new/old generation) cache for
+ * SQL strings of statements. Recorder keeps one of these per thread
+ * unless it is configured to use {@link SharedQueryCache}.
+ *
+ * <p>Queries that are used often enough in new generation are promoted
+ * to old generation. When old generation is full, they only get there if
+ * they have been used more often than the entry they would replace.
+ * @param <T> Type of keys used for lookups.
+ */
+public class LocalQueryCache<T> implements QueryCache<T> {
+	
+	private class NewGenEntry {
+		public final CachedQuery query;
+		public int usedCount;
+		
+		public NewGenEntry(CachedQuery query) {
+			this.query = query;
+			this.usedCount = 0;
+		}
+	}
+
+	/**
+	 * The new generation cache receives entries that cannot be found from the
+	 * caches. Entries are promoted to the old generation cache once they reach
+	 * sufficient {@link NewGenEntry#usedCount}. When this cache gets full,
+	 * oldest entries that have not been promoted are removed.
+	 */
+	private final LinkedHashMap<T, NewGenEntry> newGen;
+	
+	/**
+	 * New generation cache promotion threshold.
+	 */
+	private final int promoteTreshold;
+	
+	/**
+	 * The old generation cache contains statements that have been promoted
+	 * from the new generation cache. Its size is limited by {@link #policy}.
+	 */
+	private final Map<T, CachedQuery> oldGen;
+	
+	/**
+	 * Decides what is kept in old generation.
+	 */
+	private final AdmissionPolicy<T> policy;
+	
+	/**
+	 * Metrics that promotions are reported to.
+	 */
+	private final RecorderMetrics metrics;
+	
+	public LocalQueryCache(int newGenSize, int promoteThreshold) {
+		this(newGenSize, promoteThreshold, RecorderMetrics.NONE);
+	}
+	
+	public LocalQueryCache(int newGenSize, int promoteThreshold, RecorderMetrics metrics) {
+		this(newGenSize, promoteThreshold, DEFAULT_OLD_GEN_SIZE, metrics);
+	}
+	
+	public LocalQueryCache(int newGenSize, int promoteThreshold, int oldGenSize, RecorderMetrics metrics) {
+		this.newGen = new LinkedHashMap<>(newGenSize) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<T, NewGenEntry> eldest) {
+				return size() == newGenSize;
+			}
+		};
+		this.promoteTreshold = promoteThreshold;
+		this.oldGen = new HashMap<>();
+		this.policy = new AdmissionPolicy<>(oldGenSize);
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public CachedQuery get(T key) {
+		policy.recordAccess(key);
+		CachedQuery query = oldGen.get(key);
+		if (query != null) { // Found from old gen
+			return query;
+		}
+		NewGenEntry entry = newGen.get(key);
+		if (entry != null) { // Found from new gen
+			entry.usedCount++;
+			if (entry.usedCount == promoteTreshold) { // Promote to old gen if it has been used enough
+				T evicted = policy.admit(key);
+				if (evicted != key) {
+					newGen.remove(key);
+					oldGen.put(key, entry.query);
+					if (evicted != null) {
+						oldGen.remove(evicted);
+					}
+					metrics.queryCachePromotion(entry.query);
+				} else { // Old gen has more popular entries, try again later
+					entry.usedCount = 0;
+				}
+			}
+			return entry.query;
+		}
+		
+		return null; // Not found at all
+	}
+	
+	@Override
+	public void put(T key, CachedQuery query) {
+		newGen.put(key, new NewGenEntry(query)); // Put to new gen
+	}
+	
+	/**
+	 * Gets number of queries in this cache.
+	 * @return Number of queries in both generations.
+	 */
+	public int size() {
+		return newGen.size() + oldGen.size();
+	}
+}
@@ -1,16 +1,88 @@
 package io.github.bensku.recorder.cache;
 
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+import io.github.bensku.recorder.query.ForeignQuery;
+import io.github.bensku.recorder.query.InsertBuilder;
 import io.github.bensku.recorder.query.SelectBuilder;
 
 /**
- * A thread-local collection of caches.
+ * A collection of caches for different types of queries.
  *
  */
 public record QueryCaches(
-		QueryCache<SelectBuilder<?>> select
+		QueryCache<SelectBuilder<?>> select,
+		QueryCache<InsertBuilder.Shape> insert,
+		QueryCache<ForeignQuery.Shape> foreign
 ) {
 	
+	/**
+	 * Creates single-threaded query caches. These are usually stored in
+	 * thread locals.
+	 * @param newGenSize Size of new generation caches.
+	 * @param promoteThreshold New generation promotion threshold.
+	 */
 	public QueryCaches(int newGenSize, int promoteThreshold) {
-		this(new QueryCache<>(newGenSize, promoteThreshold));
+		this(newGenSize, promoteThreshold, RecorderMetrics.NONE);
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Creates single-threaded query caches. These are usually stored in
+	 * thread locals.
+	 * @param newGenSize Size of new generation caches.
+	 * @param promoteThreshold New generation promotion threshold.
+	 * @param metrics Metrics that promotions are reported to.
+	 */
+	public QueryCaches(int newGenSize, int promoteThreshold, RecorderMetrics metrics) {
+		this(newGenSize, promoteThreshold, QueryCache.DEFAULT_OLD_GEN_SIZE, metrics);
+	}
+	
+	/**
+	 * Creates single-threaded query caches. These are usually stored in
+	 * thread locals.
+	 * @param newGenSize Size of new generation caches.
+	 * @param promoteThreshold New generation promotion threshold.
+	 * @param oldGenSize Maximum size of old generation caches.
+	 * @param metrics Metrics that promotions are reported to.
+	 */
+	public QueryCaches(int newGenSize, int promoteThreshold, int oldGenSize, RecorderMetrics metrics) {
+		this(new LocalQueryCache<>(newGenSize, promoteThreshold, oldGenSize, metrics),
+				new LocalQueryCache<>(newGenSize, promoteThreshold, oldGenSize, metrics),
+				new LocalQueryCache<>(newGenSize, promoteThreshold, oldGenSize, metrics));
+	}
+	
+	/**
+	 * Creates thread-safe query caches that can be shared by all threads.
+	 * @param newGenSize Size of new generation caches.
+	 * @param promoteThreshold New generation promotion threshold.
+	 * @return Shared query caches.
+	 */
+	public static QueryCaches shared(int newGenSize, int promoteThreshold) {
+		return shared(newGenSize, promoteThreshold, RecorderMetrics.NONE);
+	}
+	
+	/**
+	 * Creates thread-safe query caches that can be shared by all threads.
+	 * @param newGenSize Size of new generation caches.
+	 * @param promoteThreshold New generation promotion threshold.
+	 * @param metrics Metrics that promotions are reported to.
+	 * @return Shared query caches.
+	 */
+	public static QueryCaches shared(int newGenSize, int promoteThreshold, RecorderMetrics metrics) {
+		return shared(newGenSize, promoteThreshold, QueryCache.DEFAULT_OLD_GEN_SIZE, metrics);
+	}
+	
+	/**
+	 * Creates thread-safe query caches that can be shared by all threads.
+	 * @param newGenSize Size of new generation caches.
+	 * @param promoteThreshold New generation promotion threshold.
+	 * @param oldGenSize Maximum size of old generation caches.
+	 * @param metrics Metrics that promotions are reported to.
+	 * @return Shared query caches.
+	 */
+	public static QueryCaches shared(int newGenSize, int promoteThreshold, int oldGenSize, RecorderMetrics metrics) {
+		int stripes = SharedQueryCache.defaultStripes(newGenSize);
+		return new QueryCaches(new SharedQueryCache<>(newGenSize, promoteThreshold, stripes, oldGenSize, metrics),
+				new SharedQueryCache<>(newGenSize, promoteThreshold, stripes, oldGenSize, metrics),
+				new SharedQueryCache<>(newGenSize, promoteThreshold, stripes, oldGenSize, metrics));
+	}
+}
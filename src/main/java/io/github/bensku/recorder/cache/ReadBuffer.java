@@ -0,0 +1,84 @@
+package io.github.bensku.recorder.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A lossy, bounded buffer of lookups that have not yet been recorded to an
+ * {@link AdmissionPolicy}. Threads add keys without locking, and whoever
+ * holds the policy lock drains them. When the buffer is full or a thread
+ * loses a race for a slot, the key is dropped; popularity of keys is an
+ * estimate anyway.
+ *
+ * @param <K> Type of keys.
+ */
+class ReadBuffer<K> {
+
+	/**
+	 * Number of slots. Must be a power of two.
+	 */
+	static final int SIZE = 16;
+
+	private static final int MASK = SIZE - 1;
+
+	/**
+	 * Buffered keys. Null slots have been drained or not yet written.
+	 */
+	private final AtomicReferenceArray<K> slots;
+
+	/**
+	 * Number of keys that have been added.
+	 */
+	private final AtomicLong writes;
+
+	/**
+	 * Number of keys that have been drained. Only written by the thread that
+	 * holds the policy lock.
+	 */
+	private volatile long reads;
+
+	ReadBuffer() {
+		this.slots = new AtomicReferenceArray<>(SIZE);
+		this.writes = new AtomicLong();
+	}
+
+	/**
+	 * Adds a key, unless the buffer is full or another thread is adding a
+	 * key at the same time.
+	 * @param key Key.
+	 * @return Whether this buffer should be drained.
+	 */
+	boolean offer(K key) {
+		long head = reads;
+		long tail = writes.get();
+		if (tail - head >= SIZE) {
+			return true; // Full, drop the key
+		}
+		if (writes.compareAndSet(tail, tail + 1)) {
+			slots.lazySet((int) (tail & MASK), key);
+			return tail + 1 - head >= SIZE;
+		}
+		return false; // Contended, drop the key
+	}
+
+	/**
+	 * Removes all keys that have been added. Caller must hold the policy
+	 * lock.
+	 * @param action Called for each key.
+	 */
+	void drain(Consumer<K> action) {
+		long head = reads;
+		long tail = writes.get();
+		for (; head < tail; head++) {
+			int index = (int) (head & MASK);
+			K key = slots.get(index);
+			if (key == null) {
+				break; // Slot was claimed, but key has not been written yet
+			}
+			slots.lazySet(index, null);
+			action.accept(key);
+		}
+		reads = head;
+	}
+}
@@ -0,0 +1,190 @@
+package io.github.bensku.recorder.cache;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * A thread-safe cache of query results. Results are keyed by SQL and
+ * parameter values of queries, and are removed when they expire or when
+ * any table that they were read from is written to through Recorder.
+ *
+ */
+public class ResultCache {
+	
+	/**
+	 * Key of cached results.
+	 */
+	private record Key(
+			
+			/**
+			 * SQL of the query.
+			 */
+			String sql,
+			
+			/**
+			 * Values of query parameters.
+			 */
+			List<Object> params
+	) {}
+	
+	/**
+	 * Cached results of a query.
+	 */
+	private record CachedResult(
+			
+			/**
+			 * Results of the query.
+			 */
+			List<?> results,
+			
+			/**
+			 * When the results expire, in nanoseconds of the cache clock.
+			 */
+			long expiresAt,
+			
+			/**
+			 * Normalized names of tables that the results were read from.
+			 */
+			Set<String> tables
+	) {}
+	
+	/**
+	 * Cached results in access order. Guarded by itself.
+	 */
+	private final LinkedHashMap<Key, CachedResult> entries;
+	
+	/**
+	 * How many times tables have been invalidated. Results of queries that
+	 * were started before latest invalidation are not cached, because they
+	 * might already be stale. Guarded by {@link #entries}.
+	 */
+	private long invalidations;
+	
+	/**
+	 * Source of current time in nanoseconds.
+	 */
+	private final LongSupplier clock;
+	
+	private long hits, misses;
+	
+	public ResultCache(int maxSize) {
+		this(maxSize, System::nanoTime);
+	}
+	
+	/**
+	 * Creates a new result cache with a custom clock.
+	 * @param maxSize Maximum number of cached results.
+	 * @param clock Source of current time in nanoseconds.
+	 */
+	public ResultCache(int maxSize, LongSupplier clock) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+				return size() > maxSize;
+			}
+		};
+		this.clock = clock;
+	}
+	
+	private static String normalize(String table) {
+		return table.toLowerCase(Locale.ROOT);
+	}
+	
+	/**
+	 * Gets how many times tables have been invalidated. This should be
+	 * called before a query is executed, and passed to
+	 * {@link #put(String, Object[], List, Set, long, long)} afterwards.
+	 * @return Invalidation count.
+	 */
+	public long invalidations() {
+		synchronized (entries) {
+			return invalidations;
+		}
+	}
+	
+	/**
+	 * Gets cached results of a query.
+	 * @param sql SQL of the query.
+	 * @param params Parameter values.
+	 * @return Results, or null if they are not cached.
+	 */
+	public List<?> get(String sql, Object[] params) {
+		Key key = new Key(sql, Arrays.asList(params));
+		synchronized (entries) {
+			CachedResult entry = entries.get(key);
+			if (entry != null && clock.getAsLong() - entry.expiresAt() >= 0) {
+				entries.remove(key); // Expired
+				entry = null;
+			}
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			return entry.results();
+		}
+	}
+	
+	/**
+	 * Caches results of a query.
+	 * @param sql SQL of the query.
+	 * @param params Parameter values.
+	 * @param results Results. They must not be modified after this.
+	 * @param tables Names of tables that the results were read from.
+	 * @param ttl How long results are cached, in nanoseconds.
+	 * @param invalidations {@link #invalidations()} before the query
+	 * was executed.
+	 */
+	public void put(String sql, Object[] params, List<?> results, Set<String> tables, long ttl, long invalidations) {
+		Key key = new Key(sql, Arrays.asList(params.clone()));
+		Set<String> names = tables.stream().map(ResultCache::normalize).collect(Collectors.toUnmodifiableSet());
+		CachedResult entry = new CachedResult(results, clock.getAsLong() + ttl, names);
+		synchronized (entries) {
+			if (this.invalidations == invalidations) { // Don't cache possibly stale results
+				entries.put(key, entry);
+			}
+		}
+	}
+	
+	/**
+	 * Removes all results that were read from given table.
+	 * @param table Table name.
+	 */
+	public void invalidate(String table) {
+		String name = normalize(table);
+		synchronized (entries) {
+			invalidations++;
+			entries.values().removeIf(entry -> entry.tables().contains(name));
+		}
+	}
+	
+	/**
+	 * Gets how many lookups have hit or missed this cache.
+	 * @return Cache stats.
+	 */
+	public CacheStats stats() {
+		synchronized (entries) {
+			return new CacheStats(hits, misses);
+		}
+	}
+	
+	/**
+	 * Gets number of query results in this cache, including expired ones
+	 * that have not yet been removed.
+	 * @return Number of cached results.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package io.github.bensku.recorder.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+
+/**
+ * A thread-safe, two-stage (new/old generation) cache for SQL strings of
+ * statements. Unlike {@link LocalQueryCache}, one instance of this can be
+ * shared by all threads, so short-lived threads (e.g. one per request) do
+ * not start with cold caches.
+ *
+ * <p>Old generation lookups are lock-free. The new generation is split to
+ * stripes by hash code of keys, and each stripe is guarded by its own lock.
+ * Size of old generation is limited like in {@link LocalQueryCache}. Its
+ * policy is guarded by one lock, so lookups are not recorded to it
+ * directly. Instead, they are added to small per-thread read buffers,
+ * which are drained to the policy in batches by whoever gets the lock.
+ * Lookups that do not fit in buffers are dropped, so hot entries may look
+ * a little less popular than they are.
+ * @param <T> Type of keys used for lookups.
+ */
+public class SharedQueryCache<T> implements QueryCache<T> {
+
+	private static class NewGenEntry {
+		public final CachedQuery query;
+		public int usedCount;
+
+		public NewGenEntry(CachedQuery query) {
+			this.query = query;
+			this.usedCount = 0;
+		}
+	}
+
+	/**
+	 * Part of new generation cache. When it gets full, oldest entries that
+	 * have not been promoted are removed.
+	 */
+	private static class Stripe<T> extends LinkedHashMap<T, NewGenEntry> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		public Stripe(int maxSize) {
+			super(maxSize);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<T, NewGenEntry> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	/**
+	 * Stripes of new generation cache. Length of this is a power of two.
+	 * Each stripe is guarded by its own monitor.
+	 */
+	private final Stripe<T>[] newGen;
+
+	/**
+	 * New generation cache promotion threshold.
+	 */
+	private final int promoteThreshold;
+
+	/**
+	 * The old generation cache contains statements that have been promoted
+	 * from the new generation cache. Its size is limited by {@link #policy}.
+	 */
+	private final ConcurrentHashMap<T, CachedQuery> oldGen;
+	
+	/**
+	 * Decides what is kept in old generation. Guarded by {@link #policyLock}.
+	 */
+	private final AdmissionPolicy<T> policy;
+	
+	/**
+	 * Lock for {@link #policy}.
+	 */
+	private final ReentrantLock policyLock;
+	
+	/**
+	 * Lookups that have not been recorded to {@link #policy} yet. Length
+	 * of this is a power of two, and threads pick a buffer by their id.
+	 */
+	private final ReadBuffer<T>[] readBuffers;
+	
+	/**
+	 * Records a drained lookup to {@link #policy}.
+	 */
+	private final Consumer<T> recordAccess;
+
+	/**
+	 * Metrics that promotions are reported to.
+	 */
+	private final RecorderMetrics metrics;
+
+	public SharedQueryCache(int newGenSize, int promoteThreshold) {
+		this(newGenSize, promoteThreshold, RecorderMetrics.NONE);
+	}
+
+	public SharedQueryCache(int newGenSize, int promoteThreshold, RecorderMetrics metrics) {
+		this(newGenSize, promoteThreshold, defaultStripes(newGenSize), metrics);
+	}
+
+	public SharedQueryCache(int newGenSize, int promoteThreshold, int stripes) {
+		this(newGenSize, promoteThreshold, stripes, RecorderMetrics.NONE);
+	}
+
+	public SharedQueryCache(int newGenSize, int promoteThreshold, int stripes, RecorderMetrics metrics) {
+		this(newGenSize, promoteThreshold, stripes, DEFAULT_OLD_GEN_SIZE, metrics);
+	}
+
+	@SuppressWarnings("unchecked") // Generic array creation
+	public SharedQueryCache(int newGenSize, int promoteThreshold, int stripes, int oldGenSize, RecorderMetrics metrics) {
+		if (Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException("stripe count must be a power of two, got " + stripes);
+		}
+		this.newGen = (Stripe<T>[]) new Stripe<?>[stripes];
+		int stripeSize = Math.max(1, newGenSize / stripes);
+		for (int i = 0; i < stripes; i++) {
+			newGen[i] = new Stripe<>(stripeSize);
+		}
+		this.promoteThreshold = promoteThreshold;
+		this.oldGen = new ConcurrentHashMap<>();
+		this.policy = new AdmissionPolicy<>(oldGenSize);
+		this.policyLock = new ReentrantLock();
+		this.readBuffers = (ReadBuffer<T>[]) new ReadBuffer<?>[stripes];
+		for (int i = 0; i < stripes; i++) {
+			readBuffers[i] = new ReadBuffer<>();
+		}
+		this.recordAccess = policy::recordAccess;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Picks a stripe count so that there is roughly one stripe per thread
+	 * that can run at once, but no less than 8 entries per stripe.
+	 * @param newGenSize Size of new generation cache.
+	 * @return Number of stripes.
+	 */
+	public static int defaultStripes(int newGenSize) {
+		int wanted = Math.min(Runtime.getRuntime().availableProcessors(), newGenSize / 8);
+		return Integer.highestOneBit(Math.max(1, wanted));
+	}
+
+	private Stripe<T> stripe(T key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16; // Identity hashes are not well distributed in low bits
+		return newGen[hash & (newGen.length - 1)];
+	}
+
+	@Override
+	public CachedQuery get(T key) {
+		long thread = Thread.currentThread().getId();
+		ReadBuffer<T> buffer = readBuffers[(int) (thread ^ (thread >>> 16)) & (readBuffers.length - 1)];
+		if (buffer.offer(key) && policyLock.tryLock()) { // If someone else is draining, they'll get this too
+			try {
+				drainReadBuffers();
+			} finally {
+				policyLock.unlock();
+			}
+		}
+		CachedQuery query = oldGen.get(key);
+		if (query != null) { // Found from old gen
+			return query;
+		}
+		Stripe<T> stripe = stripe(key);
+		synchronized (stripe) {
+			NewGenEntry entry = stripe.get(key);
+			if (entry != null) { // Found from new gen
+				entry.usedCount++;
+				if (entry.usedCount == promoteThreshold) { // Promote to old gen if it has been used enough
+					if (promote(key, entry.query)) {
+						stripe.remove(key);
+						metrics.queryCachePromotion(entry.query);
+					} else { // Old gen has more popular entries, try again later
+						entry.usedCount = 0;
+					}
+				}
+				return entry.query;
+			}
+		}
+
+		return null; // Not found at all
+	}
+
+	/**
+	 * Attempts to move a query to old generation.
+	 * @param key Key of query.
+	 * @param query Query.
+	 * @return Whether it was admitted.
+	 */
+	private boolean promote(T key, CachedQuery query) {
+		policyLock.lock();
+		try {
+			drainReadBuffers(); // Compare against up-to-date popularity
+			T evicted = policy.admit(key);
+			if (evicted == key) {
+				return false;
+			}
+			oldGen.put(key, query);
+			if (evicted != null) {
+				oldGen.remove(evicted);
+			}
+			return true;
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * Records buffered lookups to {@link #policy}. Caller must hold
+	 * {@link #policyLock}.
+	 */
+	private void drainReadBuffers() {
+		for (ReadBuffer<T> buffer : readBuffers) {
+			buffer.drain(recordAccess);
+		}
+	}
+
+	@Override
+	public void put(T key, CachedQuery query) {
+		Stripe<T> stripe = stripe(key);
+		synchronized (stripe) {
+			stripe.put(key, new NewGenEntry(query)); // Put to new gen
+		}
+	}
+
+	/**
+	 * Gets number of queries in this cache.
+	 * @return Number of queries in both generations.
+	 */
+	public int size() {
+		int size = oldGen.size();
+		for (Stripe<T> stripe : newGen) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,132 @@
+package io.github.bensku.recorder.cache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded LRU cache of prepared statements of a single connection.
+ * Statements are keyed by their SQL, which usually comes from
+ * {@link QueryCache}.
+ *
+ * <p>Statements are removed from this cache while they're in use and
+ * {@link #release(String, PreparedStatement) released} back after that.
+ * This way, two queries with same SQL never share a statement, even if
+ * one of them is e.g. a stream that has not been fully consumed yet.
+ */
+public class StatementCache {
+
+	/**
+	 * Idle statements by their SQL, in access order.
+	 */
+	private final LinkedHashMap<String, PreparedStatement> statements;
+
+	/**
+	 * Maximum number of idle statements.
+	 */
+	private final int maxSize;
+
+	/**
+	 * Number of lookups that found a statement.
+	 */
+	private long hits;
+
+	/**
+	 * Number of lookups that had to prepare a new statement.
+	 */
+	private long misses;
+
+	public StatementCache(int maxSize) {
+		this.statements = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Takes a statement with given SQL from this cache, or prepares a new one
+	 * if there is no such statement. Parameters and batches of cached
+	 * statements are cleared before they're returned, in case a previous
+	 * user failed before executing them.
+	 * @param conn Connection that this cache belongs to.
+	 * @param sql SQL of statement.
+	 * @return Prepared statement.
+	 * @throws SQLException When preparing a new statement fails.
+	 */
+	public PreparedStatement take(Connection conn, String sql) throws SQLException {
+		PreparedStatement stmt = takeIdle(sql);
+		if (stmt != null) {
+			stmt.clearParameters();
+			stmt.clearBatch();
+			return stmt;
+		}
+		return conn.prepareStatement(sql);
+	}
+	
+	private synchronized PreparedStatement takeIdle(String sql) throws SQLException {
+		PreparedStatement stmt = statements.remove(sql);
+		// Connection pool might have closed the statement behind our back
+		if (stmt != null && !stmt.isClosed()) {
+			hits++;
+			return stmt;
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Puts a statement that is no longer in use back to this cache. If the
+	 * cache becomes full, least recently used statement is closed.
+	 * @param sql SQL of statement.
+	 * @param stmt Statement.
+	 * @throws SQLException When closing a statement fails.
+	 */
+	public void release(String sql, PreparedStatement stmt) throws SQLException {
+		PreparedStatement evicted = null;
+		synchronized (this) {
+			// If there is already an idle statement with same SQL, keep it
+			if (maxSize == 0 || statements.putIfAbsent(sql, stmt) != null) {
+				evicted = stmt;
+			} else if (statements.size() > maxSize) {
+				Iterator<PreparedStatement> it = statements.values().iterator();
+				evicted = it.next(); // Least recently used
+				it.remove();
+			}
+		}
+		if (evicted != null) {
+			evicted.close();
+		}
+	}
+
+	/**
+	 * Closes all idle statements in this cache.
+	 * @throws SQLException When closing a statement fails.
+	 */
+	public void clear() throws SQLException {
+		PreparedStatement[] idle;
+		synchronized (this) {
+			idle = statements.values().toArray(PreparedStatement[]::new);
+			statements.clear();
+		}
+		for (PreparedStatement stmt : idle) {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Gets how many statements have been found from this cache, and how many
+	 * had to be prepared.
+	 * @return Cache stats.
+	 */
+	public synchronized CacheStats stats() {
+		return new CacheStats(hits, misses);
+	}
+
+	/**
+	 * Gets number of idle statements in this cache.
+	 * @return Number of statements.
+	 */
+	public synchronized int size() {
+		return statements.size();
+	}
+}
@@ -0,0 +1,86 @@
+package io.github.bensku.recorder.cache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@link StatementCache Statement caches} of all connections that Recorder
+ * has used. Pooled connections are usually proxies, so caches are associated
+ * with the underlying physical connections instead.
+ *
+ * <p>Statements are still prepared on the proxies. Many pools, e.g. HikariCP,
+ * close statements of a proxy when it is returned to pool, in which case
+ * cached statements are only reused within one
+ * {@link io.github.bensku.recorder.Recorder#session session} or
+ * transaction; after that, they are found closed and prepared again. Use the
+ * statement cache of the pool or driver for reuse across checkouts.
+ *
+ */
+public class StatementCaches {
+
+	/**
+	 * Maximum size of each statement cache.
+	 */
+	private final int cacheSize;
+
+	/**
+	 * Caches by physical connections. Guarded by itself.
+	 */
+	private final Map<Connection, StatementCache> caches;
+
+	public StatementCaches(int cacheSize) {
+		this.cacheSize = cacheSize;
+		this.caches = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Gets statement cache for given connection, creating it if needed.
+	 * @param conn Connection or a pool proxy of it.
+	 * @return Statement cache.
+	 * @throws SQLException When unwrapping the connection fails.
+	 */
+	public StatementCache get(Connection conn) throws SQLException {
+		Connection physical = conn.isWrapperFor(Connection.class) ? conn.unwrap(Connection.class) : conn;
+		synchronized (caches) {
+			StatementCache cache = caches.get(physical);
+			if (cache == null) {
+				// New physical connection, maybe because old ones were closed
+				purgeClosed();
+				cache = new StatementCache(cacheSize);
+				caches.put(physical, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Removes caches of connections that have been closed.
+	 * Closing a connection also closes its statements.
+	 * @throws SQLException When checking whether a connection is closed fails.
+	 */
+	private void purgeClosed() throws SQLException {
+		Iterator<Connection> it = caches.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().isClosed()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets combined statistics of all statement caches.
+	 * @return Cache stats.
+	 */
+	public CacheStats stats() {
+		CacheStats stats = new CacheStats(0, 0);
+		synchronized (caches) {
+			for (StatementCache cache : caches.values()) {
+				stats = stats.plus(cache.stats());
+			}
+		}
+		return stats;
+	}
+}
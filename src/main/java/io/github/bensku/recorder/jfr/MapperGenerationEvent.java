@@ -0,0 +1,37 @@
+package io.github.bensku.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Generating and loading a record mapper.
+ */
+@Name("io.github.bensku.recorder.MapperGeneration")
+@Label("Mapper Generation")
+@Description("Record mapper generated and loaded")
+@Category("Recorder")
+@Enabled(false)
+@StackTrace(false)
+public class MapperGenerationEvent extends Event {
+
+	@Label("Record Type")
+	Class<?> recordType;
+
+	/**
+	 * Ends this event and commits it if it is enabled and exceeds its
+	 * duration threshold.
+	 * @param recordType Record type of mapper.
+	 */
+	public void commit(Class<?> recordType) {
+		end();
+		if (shouldCommit()) {
+			this.recordType = recordType;
+			commit();
+		}
+	}
+}
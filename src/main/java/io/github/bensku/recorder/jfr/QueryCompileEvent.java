@@ -0,0 +1,13 @@
+package io.github.bensku.recorder.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Generating SQL for a query that was not in query cache.
+ */
+@Name("io.github.bensku.recorder.QueryCompile")
+@Label("Query Compile")
+@Description("SQL generated on query cache miss")
+public class QueryCompileEvent extends QueryEvent {}
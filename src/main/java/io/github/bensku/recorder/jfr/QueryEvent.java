@@ -0,0 +1,42 @@
+package io.github.bensku.recorder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class of JFR events for phases of a query. Events are disabled by
+ * default; enable them in a JFR configuration, e.g. with
+ * {@code jfr configure +io.github.bensku.recorder.StatementExecute#enabled=true}.
+ *
+ * <p>Fields are only set when the event is going to be committed, so a
+ * disabled event costs no more than its (usually eliminated) allocation.
+ */
+@Category("Recorder")
+@Enabled(false)
+@StackTrace(false)
+public abstract class QueryEvent extends Event {
+
+	@Label("SQL")
+	String sql;
+
+	@Label("Record Type")
+	Class<?> recordType;
+
+	/**
+	 * Ends this event and commits it if it is enabled and exceeds its
+	 * duration threshold.
+	 * @param sql SQL of query.
+	 * @param recordType Record type that the query reads or writes.
+	 */
+	public void commit(String sql, Class<?> recordType) {
+		end();
+		if (shouldCommit()) {
+			this.sql = sql;
+			this.recordType = recordType;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package io.github.bensku.recorder.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading rows of results and mapping them to records.
+ */
+@Name("io.github.bensku.recorder.RowMapping")
+@Label("Row Mapping")
+@Description("Rows of results read and mapped to records")
+public class RowMappingEvent extends QueryEvent {
+
+	@Label("Rows")
+	int rows;
+
+	/**
+	 * Ends this event and commits it if it is enabled and exceeds its
+	 * duration threshold.
+	 * @param sql SQL of query.
+	 * @param recordType Record type that rows were mapped to.
+	 * @param rows Number of rows.
+	 */
+	public void commit(String sql, Class<?> recordType, int rows) {
+		end();
+		if (shouldCommit()) {
+			this.sql = sql;
+			this.recordType = recordType;
+			this.rows = rows;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package io.github.bensku.recorder.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Executing a statement.
+ */
+@Name("io.github.bensku.recorder.StatementExecute")
+@Label("Statement Execute")
+@Description("Statement executed by JDBC driver")
+public class StatementExecuteEvent extends QueryEvent {}
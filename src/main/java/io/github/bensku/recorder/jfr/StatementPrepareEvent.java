@@ -0,0 +1,13 @@
+package io.github.bensku.recorder.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Preparing a statement, or taking it from statement cache.
+ */
+@Name("io.github.bensku.recorder.StatementPrepare")
+@Label("Statement Prepare")
+@Description("Statement prepared or taken from statement cache")
+public class StatementPrepareEvent extends QueryEvent {}
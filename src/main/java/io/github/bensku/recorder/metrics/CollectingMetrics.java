@@ -0,0 +1,150 @@
+package io.github.bensku.recorder.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+
+/**
+ * Collects metrics in memory, with counters and latency histograms that
+ * can be updated concurrently without locking. Use {@link #snapshot()}
+ * to read them, e.g. when a monitoring system scrapes them.
+ *
+ */
+public class CollectingMetrics implements RecorderMetrics {
+
+	/**
+	 * Latencies of one query, by phase.
+	 */
+	private static class QueryMetrics {
+		final LatencyHistogram generate = new LatencyHistogram();
+		final LatencyHistogram prepare = new LatencyHistogram();
+		final LatencyHistogram execute = new LatencyHistogram();
+		final LatencyHistogram map = new LatencyHistogram();
+		final LongAdder rows = new LongAdder();
+
+		MetricsSnapshot.QueryStats snapshot() {
+			return new MetricsSnapshot.QueryStats(generate.snapshot(), prepare.snapshot(), execute.snapshot(),
+					map.snapshot(), rows.sum());
+		}
+	}
+
+	/**
+	 * Key in {@link #queries} for queries that did not fit there.
+	 */
+	public static final String OTHER_QUERIES = "";
+
+	private final LongAdder queryCacheHits;
+	private final LongAdder queryCacheMisses;
+	private final LongAdder queryCachePromotions;
+	private final LatencyHistogram mapperGeneration;
+
+	/**
+	 * Metrics by SQL.
+	 */
+	private final ConcurrentHashMap<String, QueryMetrics> queries;
+
+	/**
+	 * Maximum size of {@link #queries}. Applications that generate SQL
+	 * dynamically could otherwise fill memory with metrics.
+	 */
+	private final int maxQueries;
+
+	/**
+	 * Registered gauges.
+	 */
+	private final Map<String, LongSupplier> gauges;
+
+	/**
+	 * Creates metrics that track up to 1000 distinct SQL queries.
+	 */
+	public CollectingMetrics() {
+		this(1000);
+	}
+
+	/**
+	 * Creates metrics.
+	 * @param maxQueries Number of distinct SQL queries that are tracked
+	 * separately. Queries beyond that are all tracked under
+	 * {@link #OTHER_QUERIES}.
+	 */
+	public CollectingMetrics(int maxQueries) {
+		this.queryCacheHits = new LongAdder();
+		this.queryCacheMisses = new LongAdder();
+		this.queryCachePromotions = new LongAdder();
+		this.mapperGeneration = new LatencyHistogram();
+		this.queries = new ConcurrentHashMap<>();
+		this.maxQueries = maxQueries;
+		this.gauges = new ConcurrentHashMap<>();
+	}
+
+	private QueryMetrics query(CachedQuery query) {
+		QueryMetrics metrics = queries.get(query.sql()); // Fast path without locking
+		if (metrics == null) {
+			String key = queries.size() < maxQueries ? query.sql() : OTHER_QUERIES;
+			metrics = queries.computeIfAbsent(key, k -> new QueryMetrics());
+		}
+		return metrics;
+	}
+
+	@Override
+	public void queryCacheHit(CachedQuery query) {
+		queryCacheHits.increment();
+	}
+
+	@Override
+	public void queryCacheMiss(CachedQuery query, long nanos) {
+		queryCacheMisses.increment();
+		query(query).generate.record(nanos);
+	}
+
+	@Override
+	public void queryCachePromotion(CachedQuery query) {
+		queryCachePromotions.increment();
+	}
+
+	@Override
+	public void statementPrepared(CachedQuery query, long nanos) {
+		query(query).prepare.record(nanos);
+	}
+
+	@Override
+	public void statementExecuted(CachedQuery query, long nanos) {
+		query(query).execute.record(nanos);
+	}
+
+	@Override
+	public void rowsMapped(CachedQuery query, int rows, long nanos) {
+		QueryMetrics metrics = query(query);
+		metrics.map.record(nanos);
+		metrics.rows.add(rows);
+	}
+
+	@Override
+	public void mapperGenerated(Class<? extends Record> record, long nanos) {
+		mapperGeneration.record(nanos);
+	}
+
+	@Override
+	public void registerGauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	/**
+	 * Takes a snapshot of current metrics. Counters are read one by one
+	 * while they may be updated, so they might not be perfectly consistent
+	 * with each other.
+	 * @return A new snapshot.
+	 */
+	public MetricsSnapshot snapshot() {
+		Map<String, Long> gaugeValues = new HashMap<>();
+		gauges.forEach((name, value) -> gaugeValues.put(name, value.getAsLong()));
+		Map<String, MetricsSnapshot.QueryStats> queryStats = new HashMap<>();
+		queries.forEach((sql, metrics) -> queryStats.put(sql, metrics.snapshot()));
+		return new MetricsSnapshot(queryCacheHits.sum(), queryCacheMisses.sum(), queryCachePromotions.sum(),
+				mapperGeneration.snapshot(), Map.copyOf(gaugeValues), Map.copyOf(queryStats));
+	}
+}
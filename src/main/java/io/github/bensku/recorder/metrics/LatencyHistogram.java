@@ -0,0 +1,119 @@
+package io.github.bensku.recorder.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of durations. Durations are counted in buckets
+ * whose bounds are powers of two, so recording is cheap and percentiles
+ * are accurate within a factor of two.
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Point-in-time copy of a histogram.
+	 */
+	public record Snapshot(
+
+			/**
+			 * Number of recorded durations. This is the sum of buckets.
+			 */
+			long count,
+
+			/**
+			 * Sum of recorded durations in nanoseconds.
+			 */
+			long totalNanos,
+
+			/**
+			 * Longest recorded duration in nanoseconds.
+			 */
+			long maxNanos,
+
+			/**
+			 * Counts of durations by bucket. Bucket {@code i} contains
+			 * durations that are less than {@code 2^i} nanoseconds, but not
+			 * less than {@code 2^(i-1)}.
+			 */
+			long[] buckets
+	) {
+
+		/**
+		 * Gets mean of recorded durations.
+		 * @return Mean in nanoseconds, or 0 if nothing has been recorded.
+		 */
+		public long meanNanos() {
+			return count == 0 ? 0 : totalNanos / count;
+		}
+
+		/**
+		 * Estimates a percentile of recorded durations.
+		 * @param percentile Percentile between 0 and 100.
+		 * @return Upper bound of bucket that contains the percentile (or
+		 * maximum, if it is smaller) in nanoseconds, or 0 if nothing has
+		 * been recorded.
+		 */
+		public long percentileNanos(double percentile) {
+			long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100));
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= wanted) {
+					return Math.min((1L << i) - 1, maxNanos); // For last bucket, this is Long.MAX_VALUE
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Counts by bucket.
+	 */
+	private final LongAdder[] buckets;
+
+	/**
+	 * Sum of all durations.
+	 */
+	private final LongAdder total;
+
+	/**
+	 * Longest duration.
+	 */
+	private final LongAccumulator max;
+
+	public LatencyHistogram() {
+		this.buckets = new LongAdder[64];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+		this.total = new LongAdder();
+		this.max = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * Records a duration.
+	 * @param nanos Duration in nanoseconds. Negative values are recorded
+	 * as zeroes.
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets[64 - Long.numberOfLeadingZeros(nanos)].increment(); // Highest bit tells the bucket
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Takes a snapshot of this histogram.
+	 * @return A new snapshot.
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[buckets.length];
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		return new Snapshot(count, total.sum(), max.get(), counts);
+	}
+}
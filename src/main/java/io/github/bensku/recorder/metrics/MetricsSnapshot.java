@@ -0,0 +1,73 @@
+package io.github.bensku.recorder.metrics;
+
+import java.util.Map;
+
+/**
+ * Point-in-time copy of {@link CollectingMetrics}.
+ *
+ */
+public record MetricsSnapshot(
+
+		/**
+		 * How many queries were found from query caches.
+		 */
+		long queryCacheHits,
+
+		/**
+		 * How many queries had to be generated.
+		 */
+		long queryCacheMisses,
+
+		/**
+		 * How many queries were promoted to old generation of query caches.
+		 */
+		long queryCachePromotions,
+
+		/**
+		 * Time spent generating record mappers.
+		 */
+		LatencyHistogram.Snapshot mapperGeneration,
+
+		/**
+		 * Values of gauges (e.g. cache sizes) by their names.
+		 */
+		Map<String, Long> gauges,
+
+		/**
+		 * Query latencies by SQL.
+		 */
+		Map<String, QueryStats> queries
+) {
+
+	/**
+	 * Latencies of one query, split by phase.
+	 */
+	public record QueryStats(
+
+			/**
+			 * Time spent generating SQL, on query cache misses.
+			 */
+			LatencyHistogram.Snapshot generate,
+
+			/**
+			 * Time spent preparing statements (or taking them from
+			 * statement caches).
+			 */
+			LatencyHistogram.Snapshot prepare,
+
+			/**
+			 * Time spent executing statements.
+			 */
+			LatencyHistogram.Snapshot execute,
+
+			/**
+			 * Time spent reading rows and mapping them to records.
+			 */
+			LatencyHistogram.Snapshot map,
+
+			/**
+			 * Total number of rows mapped.
+			 */
+			long rows
+	) {}
+}
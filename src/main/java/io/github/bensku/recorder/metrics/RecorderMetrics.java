@@ -0,0 +1,81 @@
+package io.github.bensku.recorder.metrics;
+
+import java.util.function.LongSupplier;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+
+/**
+ * Receives measurements from Recorder. All methods do nothing by default,
+ * so implementations can override only what they are interested in.
+ * Methods are called from query threads, so implementations must be
+ * thread-safe and should return quickly.
+ *
+ * <p>Times are in nanoseconds, as measured by {@link System#nanoTime()}.
+ * @see CollectingMetrics
+ */
+public interface RecorderMetrics {
+
+	/**
+	 * Metrics that are discarded. Queries do not time their phases at all
+	 * when this is used.
+	 */
+	RecorderMetrics NONE = new RecorderMetrics() {};
+
+	/**
+	 * Called when a query is found from query cache.
+	 * @param query Cached query.
+	 */
+	default void queryCacheHit(CachedQuery query) {}
+
+	/**
+	 * Called when a query was not in query cache and SQL for it had to be
+	 * generated.
+	 * @param query Generated query.
+	 * @param nanos How long generating SQL took.
+	 */
+	default void queryCacheMiss(CachedQuery query, long nanos) {}
+
+	/**
+	 * Called when a query cache promotes a query to its old generation.
+	 * @param query Promoted query.
+	 */
+	default void queryCachePromotion(CachedQuery query) {}
+
+	/**
+	 * Called when a statement has been prepared (or taken from statement
+	 * cache) for a query.
+	 * @param query Query.
+	 * @param nanos How long preparing took.
+	 */
+	default void statementPrepared(CachedQuery query, long nanos) {}
+
+	/**
+	 * Called when a statement has been executed.
+	 * @param query Query.
+	 * @param nanos How long executing took.
+	 */
+	default void statementExecuted(CachedQuery query, long nanos) {}
+
+	/**
+	 * Called when results of a query have been mapped to records.
+	 * @param query Query.
+	 * @param rows Number of rows.
+	 * @param nanos How long reading and mapping rows took.
+	 */
+	default void rowsMapped(CachedQuery query, int rows, long nanos) {}
+
+	/**
+	 * Called when a record mapper has been generated.
+	 * @param record Record type.
+	 * @param nanos How long generating and loading the mapper took.
+	 */
+	default void mapperGenerated(Class<? extends Record> record, long nanos) {}
+
+	/**
+	 * Called once when Recorder is created, for each value that can be
+	 * sampled later (e.g. size of a cache).
+	 * @param name Name of value.
+	 * @param value Supplier of current value.
+	 */
+	default void registerGauge(String name, LongSupplier value) {}
+}
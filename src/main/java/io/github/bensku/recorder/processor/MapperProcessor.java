@@ -0,0 +1,258 @@
+package io.github.bensku.recorder.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import io.github.bensku.recorder.query.mapper.PrecompiledMapper;
+import io.github.bensku.recorder.record.Foreign;
+import io.github.bensku.recorder.record.PrimaryKey;
+
+/**
+ * Generates {@link PrecompiledMapper record mappers} for records that have
+ * {@link io.github.bensku.recorder.record.GenerateMapper}. The generated
+ * mappers do the same as mappers generated at runtime by
+ * {@link io.github.bensku.recorder.query.mapper.MapperGenerator}: component
+ * {@code i} of record is read from column {@code i + 1} of results.
+ *
+ * <p>With Gradle, this is enabled by adding Recorder to
+ * {@code annotationProcessor} configuration.
+ */
+@SupportedAnnotationTypes("io.github.bensku.recorder.record.GenerateMapper")
+public class MapperProcessor extends AbstractProcessor {
+
+	/**
+	 * How a component is read from results and written to statements.
+	 */
+	private record Access(
+
+			/**
+			 * Expression that reads the component. {@code %d} is replaced
+			 * with column index.
+			 */
+			String read,
+
+			/**
+			 * Name of PreparedStatement method that writes the component.
+			 */
+			String write,
+
+			/**
+			 * If the component is a foreign key.
+			 */
+			boolean foreign
+	) {}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported(); // Records need a recent version
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.RECORD) {
+					error(element, "only records can have mappers");
+					continue;
+				}
+				TypeElement record = (TypeElement) element;
+				if (!isAccessible(record)) {
+					error(record, "mappers cannot access private records");
+					continue;
+				}
+				try {
+					generate(record);
+				} catch (IllegalArgumentException e) {
+					error(record, e.getMessage());
+				} catch (IOException e) {
+					error(record, "cannot write mapper: " + e.getMessage());
+				}
+			}
+		}
+		return false; // Other processors may be interested in our annotation, too
+	}
+
+	/**
+	 * Checks if a type can be accessed from its package.
+	 * @param type Type.
+	 * @return Whether neither it nor its enclosing types are private.
+	 */
+	private boolean isAccessible(TypeElement type) {
+		for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	/**
+	 * Figures out how a record component is accessed.
+	 * @param component Record component.
+	 * @return Accessors.
+	 */
+	private Access access(RecordComponentElement component) {
+		TypeMirror type = component.asType();
+		Access primitive = switch (type.getKind()) {
+		case BOOLEAN -> new Access("results.getBoolean(%d)", "setBoolean", false);
+		case BYTE -> new Access("results.getByte(%d)", "setByte", false);
+		case SHORT -> new Access("results.getShort(%d)", "setShort", false);
+		case INT -> new Access("results.getInt(%d)", "setInt", false);
+		case LONG -> new Access("results.getLong(%d)", "setLong", false);
+		case FLOAT -> new Access("results.getFloat(%d)", "setFloat", false);
+		case DOUBLE -> new Access("results.getDouble(%d)", "setDouble", false);
+		default -> null; // Reference types are handled below
+		};
+		if (primitive != null) {
+			return primitive;
+		}
+
+		String erased = processingEnv.getTypeUtils().erasure(type).toString();
+		if (erased.equals(String.class.getName())) {
+			return new Access("results.getString(%d)", "setString", false);
+		} else if (erased.equals(Foreign.class.getName())) {
+			List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+			if (args.size() != 1 || args.get(0).getKind() != TypeKind.DECLARED) {
+				throw new IllegalArgumentException("foreign key " + component.getSimpleName() + " needs a record type");
+			}
+			TypeElement target = (TypeElement) ((DeclaredType) args.get(0)).asElement();
+			RecordComponentElement pk = target.getRecordComponents().stream()
+					.filter(c -> c.getAnnotation(PrimaryKey.class) != null)
+					.findAny().orElseThrow(() -> new IllegalArgumentException("foreign key " + component.getSimpleName()
+							+ " refers to " + target + ", which has no primary key"));
+			// Key is read as object, ForeignBatch needs it for its identity map
+			String keyType = boxed(pk.asType());
+			String read = "(" + type + ") ForeignBatch.reference(foreign, " + target.getQualifiedName() + ".class, "
+					+ "results.getObject(%d, " + keyType + ".class))";
+			return new Access(read, "setObject", true);
+		}
+		return new Access("(" + type + ") results.getObject(%d, " + erased + ".class)", "setObject", false);
+	}
+
+	private String boxed(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+		}
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private void generate(TypeElement record) throws IOException {
+		String packageName = processingEnv.getElementUtils().getPackageOf(record).getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(record).toString();
+		String mapperName = PrecompiledMapper.className(binaryName, packageName);
+		String simpleName = mapperName.substring(mapperName.lastIndexOf('.') + 1);
+		String recordName = record.getQualifiedName().toString();
+
+		List<? extends RecordComponentElement> components = record.getRecordComponents();
+		List<Access> accesses = new ArrayList<>();
+		List<String> generated = new ArrayList<>();
+		for (RecordComponentElement component : components) {
+			accesses.add(access(component));
+			PrimaryKey pk = component.getAnnotation(PrimaryKey.class);
+			if (pk != null && pk.generated()) {
+				generated.add(component.getSimpleName().toString());
+			}
+		}
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(mapperName, record);
+		try (PrintWriter out = new PrintWriter(file.openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("import java.sql.PreparedStatement;");
+			out.println("import java.sql.ResultSet;");
+			out.println("import java.sql.SQLException;");
+			out.println("import java.util.List;");
+			out.println("import java.util.Set;");
+			out.println();
+			out.println("import io.github.bensku.recorder.query.ForeignBatch;");
+			out.println("import io.github.bensku.recorder.query.mapper.PrecompiledMapper;");
+			out.println();
+			out.println("/**");
+			out.println(" * Record mapper for {@link " + recordName + "}. Generated by Recorder, do not edit.");
+			out.println(" */");
+			out.println("public final class " + simpleName + " implements PrecompiledMapper<" + recordName + "> {");
+			out.println();
+			out.println("\tprivate static final List<String> COLUMNS = List.of(" + components.stream()
+					.map(c -> "\"" + c.getSimpleName() + "\"")
+					.collect(Collectors.joining(", ")) + ");");
+			out.println("\tprivate static final Set<String> GENERATED = Set.of(" + generated.stream()
+					.map(name -> "\"" + name + "\"")
+					.collect(Collectors.joining(", ")) + ");");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic List<String> columns() {");
+			out.println("\t\treturn COLUMNS;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic Set<String> generatedColumns() {");
+			out.println("\t\treturn GENERATED;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic " + recordName + " read(ResultSet results) {");
+			out.println("\t\treturn read(results, null);");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\t@SuppressWarnings(\"unchecked\") // Foreign keys and generic components");
+			out.println("\tpublic " + recordName + " read(ResultSet results, ForeignBatch foreign) {");
+			out.println("\t\ttry {");
+			out.print("\t\t\treturn new " + recordName + "(");
+			for (int i = 0; i < accesses.size(); i++) {
+				out.println(i == 0 ? "" : ",");
+				out.print("\t\t\t\t\t" + String.format(accesses.get(i).read(), i + 1));
+			}
+			out.println(");");
+			out.println("\t\t} catch (SQLException e) {");
+			out.println("\t\t\tthrow PrecompiledMapper.rethrow(e);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic void write(PreparedStatement statement, " + recordName + " record, int offset) {");
+			out.println("\t\ttry {");
+			int index = 1;
+			for (int i = 0; i < components.size(); i++) {
+				String name = components.get(i).getSimpleName().toString();
+				if (generated.contains(name)) {
+					continue; // Database provides value for this
+				}
+				Access access = accesses.get(i);
+				String value = access.foreign() ? "ForeignBatch.keyOf(record." + name + "())" : "record." + name + "()";
+				out.println("\t\t\tstatement." + access.write() + "(offset + " + index++ + ", " + value + ");");
+			}
+			out.println("\t\t} catch (SQLException e) {");
+			out.println("\t\t\tthrow PrecompiledMapper.rethrow(e);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println("}");
+		}
+	}
+}
@@ -0,0 +1,446 @@
+package io.github.bensku.recorder.query;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.RecordComponent;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.github.bensku.recorder.ComponentLambda;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+
+/**
+ * Results of a query stored by columns instead of records. Primitive
+ * columns are stored in primitive arrays and strings are dictionary
+ * encoded, so reading millions of rows does not create an object per row.
+ *
+ * <p>Arrays returned by this are not copied, and should not be modified.
+ * Their length may be greater than {@link #size()}.
+ *
+ * @param <R> Record type whose components the columns are.
+ */
+public class ColumnBatch<R extends Record> {
+
+	/**
+	 * A dictionary encoded string column.
+	 */
+	public record Strings(
+
+			/**
+			 * Index of each row's value in {@link #dictionary()}, or -1 for null.
+			 */
+			int[] codes,
+
+			/**
+			 * Distinct values, in order they were first seen.
+			 */
+			String[] dictionary
+	) {
+
+		/**
+		 * Gets value of a row.
+		 * @param row Row index.
+		 * @return Value, or null.
+		 */
+		public String get(int row) {
+			int code = codes[row];
+			return code == -1 ? null : dictionary[code];
+		}
+	}
+
+	/**
+	 * A flyweight view to one row of the batch. The same view can be
+	 * moved between rows, so that iterating does not allocate.
+	 */
+	public class Row {
+
+		/**
+		 * Current row index.
+		 */
+		private int index = -1;
+
+		/**
+		 * Moves to next row.
+		 * @return Whether there was a next row.
+		 */
+		public boolean next() {
+			if (index + 1 >= size) {
+				return false;
+			}
+			index++;
+			return true;
+		}
+
+		/**
+		 * Moves to a row.
+		 * @param index Row index.
+		 * @return This view.
+		 */
+		public Row at(int index) {
+			this.index = Objects.checkIndex(index, size);
+			return this;
+		}
+
+		public int index() {
+			return index;
+		}
+
+		public int getInt(int column) {
+			return ((int[]) vectors[column])[index];
+		}
+
+		public long getLong(int column) {
+			return ((long[]) vectors[column])[index];
+		}
+
+		public double getDouble(int column) {
+			return ((double[]) vectors[column])[index];
+		}
+
+		public String getString(int column) {
+			return ((Strings) vectors[column]).get(index);
+		}
+
+		/**
+		 * Gets value of a column, boxing it if needed.
+		 * @param column Column index.
+		 * @return Value.
+		 */
+		public Object get(int column) {
+			return value(column, index);
+		}
+	}
+
+	/**
+	 * Record type.
+	 */
+	private final Class<R> record;
+
+	/**
+	 * Column names to their indices.
+	 */
+	private final Map<String, Integer> indices;
+
+	/**
+	 * Column types. Foreign keys are Objects.
+	 */
+	private final JavaType[] types;
+
+	/**
+	 * Column values. Each is a primitive array, {@link Strings} or Object array.
+	 */
+	private final Object[] vectors;
+
+	/**
+	 * Number of rows.
+	 */
+	private final int size;
+
+	private ColumnBatch(Class<R> record, Map<String, Integer> indices, JavaType[] types, Object[] vectors, int size) {
+		this.record = record;
+		this.indices = indices;
+		this.types = types;
+		this.vectors = vectors;
+		this.size = size;
+	}
+
+	public Class<R> record() {
+		return record;
+	}
+
+	/**
+	 * Gets number of rows in this batch.
+	 * @return Number of rows.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets index of a column.
+	 * @param component Record component of the column.
+	 * @return Column index.
+	 */
+	public int column(ComponentLambda<R, ?> component) {
+		String name = component.lookupComponent().name();
+		Integer index = indices.get(name);
+		if (index == null) {
+			throw new IllegalArgumentException(record.getName() + " has no column " + name);
+		}
+		return index;
+	}
+
+	/**
+	 * Gets values of a column as an array. Primitive columns are returned
+	 * as primitive arrays, strings as {@link Strings} and others as
+	 * Object arrays.
+	 * @param column Column index.
+	 * @return Column values.
+	 */
+	public Object vector(int column) {
+		return vectors[column];
+	}
+
+	/**
+	 * Gets values of an int column.
+	 * @param component Record component of the column.
+	 * @return Values.
+	 */
+	public int[] ints(ComponentLambda<R, Integer> component) {
+		return vector(component, JavaType.INT, int[].class);
+	}
+
+	/**
+	 * Gets values of a long column.
+	 * @param component Record component of the column.
+	 * @return Values.
+	 */
+	public long[] longs(ComponentLambda<R, Long> component) {
+		return vector(component, JavaType.LONG, long[].class);
+	}
+
+	/**
+	 * Gets values of a double column.
+	 * @param component Record component of the column.
+	 * @return Values.
+	 */
+	public double[] doubles(ComponentLambda<R, Double> component) {
+		return vector(component, JavaType.DOUBLE, double[].class);
+	}
+
+	/**
+	 * Gets values of a string column.
+	 * @param component Record component of the column.
+	 * @return Dictionary encoded values.
+	 */
+	public Strings strings(ComponentLambda<R, String> component) {
+		return vector(component, JavaType.STRING, Strings.class);
+	}
+
+	private <T> T vector(ComponentLambda<R, ?> component, JavaType type, Class<T> vectorType) {
+		int column = column(component);
+		if (!types[column].equals(type)) {
+			throw new IllegalArgumentException("column " + component.lookupComponent().name() + " is "
+					+ types[column].name() + ", not " + type.name());
+		}
+		return vectorType.cast(vectors[column]);
+	}
+
+	/**
+	 * Creates a row view, positioned before first row.
+	 * @return A new row view.
+	 */
+	public Row rows() {
+		return new Row();
+	}
+
+	/**
+	 * Gets a value, boxing it if needed.
+	 * @param column Column index.
+	 * @param row Row index.
+	 * @return Value.
+	 */
+	private Object value(int column, int row) {
+		Object vector = vectors[column];
+		if (vector instanceof Strings strings) {
+			return strings.get(row);
+		} else if (vector instanceof Object[] objects) {
+			return objects[row];
+		}
+		return Array.get(vector, row);
+	}
+
+	/**
+	 * Reads rows of results to columns.
+	 *
+	 * @param <R> Record type.
+	 */
+	static class Reader<R extends Record> implements QueryHelper.RowReader {
+
+		// Column kinds, so that reading a cell does not compare JavaTypes
+		private static final int BOOLEAN = 0, BYTE = 1, SHORT = 2, INT = 3, LONG = 4, FLOAT = 5, DOUBLE = 6,
+				STRING = 7, FOREIGN = 8, OBJECT = 9;
+
+		/**
+		 * Record type.
+		 */
+		private final Class<R> record;
+
+		/**
+		 * Columns of the record.
+		 */
+		private final Column[] columns;
+
+		/**
+		 * Column types, with foreign keys read as plain Object keys.
+		 */
+		private final JavaType[] types;
+
+		/**
+		 * Column kinds, e.g. {@link #INT}.
+		 */
+		private final int[] kinds;
+
+		/**
+		 * Component types, for reading columns that are not primitives or
+		 * strings.
+		 */
+		private final Class<?>[] classes;
+
+		/**
+		 * Column values, with some extra capacity.
+		 */
+		private final Object[] vectors;
+
+		/**
+		 * String dictionaries by column, or null for other columns.
+		 */
+		private final List<Map<String, Integer>> dictionaries;
+
+		/**
+		 * Number of rows read.
+		 */
+		private int size;
+
+		/**
+		 * Capacity of {@link #vectors}.
+		 */
+		private int capacity;
+
+		Reader(Class<R> record, Column[] columns, int capacity) {
+			this.record = record;
+			this.columns = columns;
+			this.types = new JavaType[columns.length];
+			this.kinds = new int[columns.length];
+			this.classes = new Class<?>[columns.length];
+			this.vectors = new Object[columns.length];
+			this.dictionaries = new ArrayList<>(columns.length);
+			this.capacity = Math.max(capacity, 16);
+			RecordComponent[] components = record.getRecordComponents();
+			for (int i = 0; i < columns.length; i++) {
+				JavaType type = columns[i].type();
+				types[i] = type.equals(JavaType.FOREIGN) ? JavaType.of(Object.class) : type; // Foreign keys as plain keys
+				kinds[i] = kind(type);
+				classes[i] = components[i].getType();
+				vectors[i] = allocate(kinds[i], this.capacity);
+				dictionaries.add(type.equals(JavaType.STRING) ? new HashMap<>() : null);
+			}
+		}
+
+		/**
+		 * Gets kind of a column.
+		 * @param type Column type.
+		 * @return Column kind, e.g. {@link #INT}.
+		 */
+		private static int kind(JavaType type) {
+			if (type.equals(JavaType.FOREIGN)) {
+				return FOREIGN;
+			}
+			return switch (type.name()) {
+			case "boolean" -> BOOLEAN;
+			case "byte" -> BYTE;
+			case "short" -> SHORT;
+			case "int" -> INT;
+			case "long" -> LONG;
+			case "float" -> FLOAT;
+			case "double" -> DOUBLE;
+			case "java.lang.String" -> STRING;
+			default -> OBJECT;
+			};
+		}
+
+		private static Object allocate(int kind, int capacity) {
+			return switch (kind) {
+			case BOOLEAN -> new boolean[capacity];
+			case BYTE -> new byte[capacity];
+			case SHORT -> new short[capacity];
+			case INT -> new int[capacity];
+			case LONG -> new long[capacity];
+			case FLOAT -> new float[capacity];
+			case DOUBLE -> new double[capacity];
+			case STRING -> new int[capacity]; // Dictionary codes
+			default -> new Object[capacity];
+			};
+		}
+
+		@Override
+		public boolean read(ResultSet results) throws SQLException {
+			if (size == capacity) {
+				grow();
+			}
+			int row = size++;
+			for (int i = 0; i < vectors.length; i++) {
+				int index = i + 1; // JDBC starts from 1
+				// Same types as mapper reads, see MapperGenerator#emitRead
+				Object vector = vectors[i];
+				switch (kinds[i]) {
+				case BOOLEAN -> ((boolean[]) vector)[row] = results.getBoolean(index);
+				case BYTE -> ((byte[]) vector)[row] = results.getByte(index);
+				case SHORT -> ((short[]) vector)[row] = results.getShort(index);
+				case INT -> ((int[]) vector)[row] = results.getInt(index);
+				case LONG -> ((long[]) vector)[row] = results.getLong(index);
+				case FLOAT -> ((float[]) vector)[row] = results.getFloat(index);
+				case DOUBLE -> ((double[]) vector)[row] = results.getDouble(index);
+				case STRING -> ((int[]) vector)[row] = encode(dictionaries.get(i), results.getString(index));
+				case FOREIGN -> ((Object[]) vector)[row] = results.getObject(index);
+				default -> ((Object[]) vector)[row] = results.getObject(index, classes[i]);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Encodes a string with a dictionary.
+		 * @param dictionary Dictionary of the column.
+		 * @param value String, or null.
+		 * @return Code of the string.
+		 */
+		private static int encode(Map<String, Integer> dictionary, String value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer code = dictionary.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.put(value, code);
+			}
+			return code;
+		}
+
+		private void grow() {
+			capacity = capacity << 1;
+			for (int i = 0; i < vectors.length; i++) {
+				Object vector = vectors[i];
+				Object grown = allocate(kinds[i], capacity);
+				System.arraycopy(vector, 0, grown, 0, size);
+				vectors[i] = grown;
+			}
+		}
+
+		/**
+		 * Creates a batch of rows that have been read.
+		 * @return Column batch.
+		 */
+		ColumnBatch<R> batch() {
+			Map<String, Integer> indices = new HashMap<>();
+			Object[] result = vectors.clone();
+			for (int i = 0; i < columns.length; i++) {
+				indices.put(columns[i].name(), i);
+				Map<String, Integer> dictionary = dictionaries.get(i);
+				if (dictionary != null) {
+					String[] strings = new String[dictionary.size()];
+					for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+						strings[entry.getValue()] = entry.getKey();
+					}
+					result[i] = new Strings((int[]) vectors[i], strings);
+				}
+			}
+			return new ColumnBatch<>(record, indices, types, result, size);
+		}
+	}
+}
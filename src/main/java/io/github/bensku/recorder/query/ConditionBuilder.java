@@ -1,5 +1,7 @@
 package io.github.bensku.recorder.query;
 
+import java.util.Collection;
+
 import io.github.bensku.recorder.ComponentLambda;
 import io.github.bensku.recorder.sql.Condition.Type;
 
@@ -25,10 +27,28 @@ public class ConditionBuilder<R extends Record, C> {
 		return query;
 	}
 	
-	public SelectBuilder<R> eq(ComponentLambda<?, C> rhs) {
+	public <T> SelectBuilder<R> eq(ComponentLambda<T, C> rhs) {
 		query.addCondition(lhs, Type.EQUAL, rhs);
 		return query;
 	}
 	
+	/**
+	 * Requires LHS to be one of given values. Number of parameters is
+	 * padded to next power of two by repeating the last value, so lists of
+	 * similar sizes share a query; lists longer than
+	 * {@link SelectBuilder#IN_BUCKET_SIZE} are padded to a multiple of it.
+	 * Lists longer than {@link SelectBuilder#IN_ARRAY_THRESHOLD} are sent as
+	 * one array parameter instead if the database supports it.
+	 * @param rhs Values. If there are none, nothing matches.
+	 * @return The query.
+	 * @throws IllegalArgumentException When there are more values than
+	 * {@link io.github.bensku.recorder.sql.adapter.SqlAdapter#maxParameters() database allows parameters}
+	 * and they cannot be sent as an array.
+	 */
+	public SelectBuilder<R> in(Collection<? extends C> rhs) {
+		query.addInCondition(lhs, rhs);
+		return query;
+	}
+	
 	// TODO rest of conditions
 }
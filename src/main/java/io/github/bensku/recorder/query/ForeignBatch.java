@@ -0,0 +1,280 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.bensku.recorder.record.Foreign;
+
+/**
+ * Resolves {@link Foreign} references of records returned by one query.
+ * Keys of references are collected as rows are mapped. When a reference
+ * is resolved for the first time, all pending keys of same record type
+ * are loaded at once, instead of running one query per reference.
+ * 
+ * <p>While the query that created a batch is open, records are loaded on
+ * its connection, so that resolving references while streaming results
+ * does not need a second connection from the pool. This runs a query while
+ * results of another are still open, which not all drivers allow; see
+ * {@link io.github.bensku.recorder.sql.adapter.SqlAdapter#supportsMultipleResultSets()}.
+ * After the query is closed, or if the driver does not allow that, the
+ * loader gets a connection of its own.
+ * 
+ * <p>All references to a foreign record share the same instance. A record
+ * is normally loaded once per batch, but threads that resolve the same key
+ * concurrently may both load it.
+ */
+public class ForeignBatch {
+	
+	/**
+	 * Loads records by their primary keys.
+	 *
+	 */
+	@FunctionalInterface
+	public interface Loader {
+		
+		/**
+		 * Loads records of given type.
+		 * @param type Record type.
+		 * @param keys Primary keys of records.
+		 * @param conn Connection of the query that references came from.
+		 * It must not be closed by loader. If this is null, loader should
+		 * get a connection by itself.
+		 * @return Records by their keys. Keys that have no records are
+		 * not included.
+		 * @throws SQLException When loading fails.
+		 */
+		Map<Object, ? extends Record> load(Class<? extends Record> type, Collection<Object> keys, Connection conn)
+				throws SQLException;
+	}
+	
+	/**
+	 * Keys of one record type.
+	 *
+	 */
+	private static class Group {
+		
+		/**
+		 * Records that have been loaded. Null values mean that there was
+		 * no record with that key.
+		 */
+		final Map<Object, Record> loaded;
+		
+		/**
+		 * Keys that have been referenced, but not loaded yet.
+		 */
+		Set<Object> pending;
+		
+		Group() {
+			this.loaded = new HashMap<>();
+			this.pending = new LinkedHashSet<>();
+		}
+	}
+	
+	/**
+	 * A reference created by generated record mappers.
+	 *
+	 * @param <T> Record type.
+	 */
+	private static class Reference<T extends Record> implements Foreign<T> {
+		
+		/**
+		 * Batch that this reference is resolved with, or null if this
+		 * cannot be resolved.
+		 */
+		private final ForeignBatch batch;
+		
+		private final Class<T> type;
+		
+		private final Object key;
+		
+		Reference(ForeignBatch batch, Class<T> type, Object key) {
+			this.batch = batch;
+			this.type = type;
+			this.key = key;
+		}
+
+		@Override
+		public T get() {
+			if (batch == null) {
+				throw new IllegalStateException("reference to " + type.getName() + " was not read by a query");
+			}
+			return type.cast(batch.resolve(type, key));
+		}
+
+		@Override
+		public Object key() {
+			return key;
+		}
+		
+		@Override
+		public String toString() {
+			return "Foreign[" + type.getSimpleName() + "=" + key + "]";
+		}
+	}
+	
+	/**
+	 * A reference to a record that was join fetched with the record
+	 * that refers to it.
+	 *
+	 * @param <T> Record type.
+	 */
+	private static class Fetched<T extends Record> implements Foreign<T> {
+		
+		private final T record;
+		
+		private final Object key;
+		
+		Fetched(T record, Object key) {
+			this.record = record;
+			this.key = key;
+		}
+
+		@Override
+		public T get() {
+			return record;
+		}
+
+		@Override
+		public Object key() {
+			return key;
+		}
+		
+		@Override
+		public String toString() {
+			return "Foreign[" + record + "]";
+		}
+	}
+	
+	/**
+	 * Loads foreign records.
+	 */
+	private final Loader loader;
+	
+	/**
+	 * Connection of the query that created this batch, or null after the
+	 * query has been closed.
+	 */
+	private volatile Connection conn;
+	
+	/**
+	 * Referenced keys by record type. Created when first reference is made.
+	 * Guarded by this.
+	 */
+	private Map<Class<?>, Group> groups;
+	
+	public ForeignBatch(Loader loader) {
+		this(loader, null);
+	}
+	
+	/**
+	 * Creates a batch that loads records on connection of a query.
+	 * @param loader Loads foreign records.
+	 * @param conn Connection of the query, or null. It must allow a query
+	 * to run while results of the other one are open.
+	 */
+	public ForeignBatch(Loader loader, Connection conn) {
+		this.loader = loader;
+		this.conn = conn;
+	}
+	
+	/**
+	 * Stops loading records on connection of the query that created this
+	 * batch. This is called when the query is closed.
+	 */
+	void release() {
+		conn = null;
+	}
+	
+	/**
+	 * Creates a foreign reference. Generated mappers call this for every
+	 * foreign key column.
+	 * @param batch Batch of current query, or null if the reference should
+	 * not be resolvable.
+	 * @param type Foreign record type.
+	 * @param key Primary key of foreign record.
+	 * @return A foreign reference, or null if key is null.
+	 */
+	public static Foreign<?> reference(ForeignBatch batch, Class<? extends Record> type, Object key) {
+		if (key == null) {
+			return null; // Nullable foreign key
+		}
+		if (batch != null) {
+			batch.addPending(type, key);
+		}
+		return new Reference<>(batch, type, key);
+	}
+	
+	/**
+	 * Creates a reference to a record that has already been read. Generated
+	 * mappers call this for join fetched foreign keys.
+	 * @param type Foreign record type.
+	 * @param key Primary key of foreign record.
+	 * @param record Foreign record.
+	 * @return A foreign reference.
+	 */
+	public static Foreign<?> fetched(Class<? extends Record> type, Object key, Record record) {
+		return new Fetched<>(type.cast(record), key);
+	}
+	
+	/**
+	 * Gets key of a foreign reference. Generated mappers call this for
+	 * every foreign key column.
+	 * @param ref Reference or null.
+	 * @return Primary key, or null if reference is null.
+	 */
+	public static Object keyOf(Foreign<?> ref) {
+		return ref != null ? ref.key() : null;
+	}
+	
+	private synchronized Group group(Class<?> type) {
+		if (groups == null) {
+			groups = new HashMap<>();
+		}
+		return groups.computeIfAbsent(type, t -> new Group());
+	}
+	
+	private synchronized void addPending(Class<?> type, Object key) {
+		Group group = group(type);
+		if (!group.loaded.containsKey(key)) {
+			group.pending.add(key);
+		}
+	}
+	
+	private Record resolve(Class<? extends Record> type, Object key) {
+		Group group;
+		Set<Object> keys;
+		synchronized (this) {
+			group = group(type);
+			if (group.loaded.containsKey(key)) {
+				return group.loaded.get(key);
+			}
+			keys = group.pending; // Load everything that is pending
+			keys.add(key);
+			group.pending = new LinkedHashSet<>();
+		}
+		
+		// Loading runs queries, so don't block other references meanwhile
+		Map<Object, ? extends Record> records;
+		try {
+			records = loader.load(type, keys, conn);
+		} catch (SQLException e) {
+			synchronized (this) {
+				group.pending.addAll(keys); // Allow retrying
+			}
+			throw new UncheckedSQLException(e);
+		}
+		synchronized (this) {
+			for (Object k : keys) {
+				if (!group.loaded.containsKey(k)) { // Keep instance that was loaded first
+					group.loaded.put(k, records.get(k));
+				}
+			}
+			return group.loaded.get(key);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.Condition;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.Value;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+
+/**
+ * Loads records by their primary keys with {@code IN} queries. This is used
+ * to resolve {@link ForeignBatch foreign references}.
+ * 
+ * <p>Keys are sent same way as {@link ConditionBuilder#in(Collection) IN}
+ * lists: as one array parameter if the database supports it, otherwise in
+ * chunks of at most {@link SqlAdapter#maxParameters()} keys padded to
+ * a few sizes.
+ *
+ * @param <R> Record type.
+ */
+public class ForeignQuery<R extends Record> {
+	
+	/**
+	 * Shape of a foreign query. Used as key for query cache.
+	 */
+	public record Shape(
+			
+			/**
+			 * Record type of the table.
+			 */
+			Class<? extends Record> table,
+			
+			/**
+			 * Number of keys in IN list, or -1 if keys are sent as array.
+			 */
+			int keys
+	) {}
+	
+	/**
+	 * Query helper, used for generating a query from
+	 * this builder and executing it.
+	 */
+	private final QueryHelper<Shape, R> helper;
+	
+	/**
+	 * Type of records we're loading.
+	 */
+	private final Class<R> table;
+	
+	public ForeignQuery(QueryHelper<Shape, R> helper, Class<R> table) {
+		this.helper = helper;
+		this.table = table;
+	}
+	
+	/**
+	 * Loads records with given primary keys.
+	 * @param keys Primary keys.
+	 * @return Records by their primary keys.
+	 * @throws SQLException When loading fails.
+	 */
+	public Map<Object, R> load(Collection<Object> keys) throws SQLException {
+		try {
+			Table table = helper.getTable(this.table);
+			Column pk = table.primaryKey();
+			if (pk == null) {
+				throw new IllegalArgumentException(table.name() + " has no primary key");
+			}
+			
+			// Figure out where key is in results, and how to read it
+			int keyIndex = 0;
+			while (table.columns()[keyIndex] != pk) {
+				keyIndex++;
+			}
+			Class<?> keyType;
+			try {
+				keyType = Class.forName(pk.type().boxed().name(), false, this.table.getClassLoader());
+			} catch (ClassNotFoundException e) {
+				throw new AssertionError("primary key type not found", e);
+			}
+			
+			Map<Object, R> records = new HashMap<>();
+			RecordMapper<R> mapper = helper.mapper();
+			ForeignBatch batch = helper.foreignBatch(); // For foreign keys of these records
+			SqlAdapter adapter = helper.adapter();
+			int maxChunk = InList.maxSize(adapter);
+			List<Object> chunk = new ArrayList<>(Math.min(keys.size(), maxChunk));
+			Iterator<Object> it = keys.iterator();
+			while (it.hasNext()) {
+				chunk.clear();
+				while (chunk.size() < maxChunk && it.hasNext()) {
+					chunk.add(it.next());
+				}
+				InList list = InList.of(adapter, pk.type(), chunk);
+				
+				CachedQuery query = getQuery(table, pk, list);
+				PreparedStatement stmt = helper.prepareStatement(query);
+				try {
+					list.setParameters(stmt, 1);
+					try (ResultSet results = helper.executeQuery(query, stmt)) {
+						int index = keyIndex + 1;
+						helper.readRows(query, results, row -> {
+							records.put(row.getObject(index, keyType), mapper.read(row, batch));
+							return true;
+						});
+					}
+				} finally {
+					helper.releaseStatement(query, stmt);
+				}
+			}
+			return records;
+		} finally {
+			helper.close();
+		}
+	}
+	
+	private CachedQuery getQuery(Table table, Column pk, InList keys) {
+		return helper.getQuery(new Shape(this.table, keys.shapeHash()), (adapter, shape) -> {
+			Column[] columns = table.columns();
+			String[] names = new String[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				names[i] = columns[i].name();
+			}
+			Condition cond = keys.condition(Value.column(pk.name()));
+			String sql = adapter.select(names, new String[] {table.name()}, new Condition[] {cond});
+			return new CachedQuery(sql, new int[0]);
+		});
+	}
+}
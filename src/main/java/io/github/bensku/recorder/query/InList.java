@@ -0,0 +1,134 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import io.github.bensku.recorder.sql.Condition;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Value;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+
+/**
+ * Values of an IN condition. Lists are padded so that only a few different
+ * statements are ever prepared for them: to next power of two, or to a
+ * multiple of {@link SelectBuilder#IN_BUCKET_SIZE}. Long lists are sent as
+ * one array parameter if the database supports it.
+ */
+record InList(
+
+		/**
+		 * Values, padded to a power of two (or to a multiple of
+		 * {@link SelectBuilder#IN_BUCKET_SIZE}) unless they are sent as array.
+		 */
+		Object[] values,
+
+		/**
+		 * SQL type of array elements, or null if values are sent as
+		 * separate parameters.
+		 */
+		String arrayType
+) {
+
+	/**
+	 * Creates an IN list.
+	 * @param adapter SQL adapter of the database.
+	 * @param type Type of column.
+	 * @param values Values that column may have.
+	 * @return A new IN list.
+	 * @throws IllegalArgumentException When there are more values than
+	 * {@link SqlAdapter#maxParameters() parameters} a statement may have,
+	 * and they cannot be sent as an array.
+	 */
+	static InList of(SqlAdapter adapter, JavaType type, Collection<?> values) {
+		int count = values.size();
+		if (count > SelectBuilder.IN_ARRAY_THRESHOLD && adapter.supportsArrayParameters()) {
+			return new InList(values.toArray(), adapter.sqlType(type));
+		}
+		int max = adapter.maxParameters();
+		if (count > max) {
+			throw new IllegalArgumentException("IN list has " + count + " values, but database allows at most "
+					+ max + " parameters per statement");
+		}
+		int size;
+		if (count <= SelectBuilder.IN_BUCKET_SIZE) {
+			size = count <= 1 ? count : Integer.highestOneBit(count - 1) << 1; // Next power of two
+		} else {
+			int bucket = SelectBuilder.IN_BUCKET_SIZE;
+			size = (count + bucket - 1) / bucket * bucket; // Next multiple of bucket
+			size = Math.min(size, max); // Last bucket may be smaller
+		}
+		Object[] padded = new Object[size];
+		Iterator<?> it = values.iterator();
+		for (int i = 0; i < count; i++) {
+			padded[i] = it.next();
+		}
+		if (count > 0) {
+			Arrays.fill(padded, count, padded.length, padded[count - 1]); // Pad with last value
+		}
+		return new InList(padded, null);
+	}
+
+	/**
+	 * Gets maximum number of values that one list may have.
+	 * @param adapter SQL adapter of the database.
+	 * @return Maximum list size.
+	 */
+	static int maxSize(SqlAdapter adapter) {
+		return adapter.supportsArrayParameters() ? Integer.MAX_VALUE : adapter.maxParameters();
+	}
+
+	/**
+	 * Creates a condition that checks if a column is in this list.
+	 * @param column Column.
+	 * @return Condition.
+	 */
+	Condition condition(Value column) {
+		if (arrayType != null) {
+			return new Condition(column, Condition.Type.ANY, new Value("(?)"));
+		} else if (values.length == 0) { // IN () is not valid SQL
+			return new Condition(new Value("1"), Condition.Type.EQUAL, new Value("0"));
+		}
+		return new Condition(column, Condition.Type.IN, Value.params(values.length));
+	}
+
+	/**
+	 * Checks if two lists need same SQL.
+	 * @param other Another list.
+	 * @return Whether SQL is same.
+	 */
+	boolean sameShape(InList other) {
+		if (arrayType != null || other.arrayType != null) {
+			return arrayType != null && other.arrayType != null;
+		}
+		return values.length == other.values.length;
+	}
+
+	/**
+	 * Computes a hash code that is same for lists of same shape.
+	 * @return Hash code.
+	 */
+	int shapeHash() {
+		return arrayType != null ? -1 : values.length;
+	}
+
+	/**
+	 * Sets values of this to a statement.
+	 * @param stmt Prepared statement.
+	 * @param index Index of first parameter.
+	 * @return Index of next parameter.
+	 * @throws SQLException When setting parameters fails.
+	 */
+	int setParameters(PreparedStatement stmt, int index) throws SQLException {
+		if (arrayType != null) {
+			stmt.setArray(index, stmt.getConnection().createArrayOf(arrayType, values));
+			return index + 1;
+		}
+		for (Object value : values) {
+			stmt.setObject(index++, value);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,214 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+
+/**
+ * Inserts records to a table. Rows are sent to database in batches, and
+ * if the database supports it, multiple rows are inserted with one statement.
+ *
+ * @param <R> Record type.
+ */
+public class InsertBuilder<R extends Record> {
+
+	/**
+	 * Shape of an INSERT statement. Used as key for query cache.
+	 */
+	public record Shape(
+
+			/**
+			 * Record type of the table.
+			 */
+			Class<? extends Record> table,
+
+			/**
+			 * Number of rows in VALUES.
+			 */
+			int rows
+	) {}
+
+	/**
+	 * Default value for {@link #batchSize}.
+	 */
+	private static final int DEFAULT_BATCH_SIZE = 100;
+
+	/**
+	 * Query helper, used for generating a query from
+	 * this builder and executing it.
+	 */
+	private final QueryHelper<Shape, R> helper;
+
+	/**
+	 * Type of records we're inserting.
+	 */
+	private final Class<R> table;
+
+	/**
+	 * Maximum number of rows to send to database at once.
+	 */
+	private int batchSize;
+
+	public InsertBuilder(QueryHelper<Shape, R> helper, Class<R> table) {
+		this.helper = helper;
+		this.table = table;
+		this.batchSize = DEFAULT_BATCH_SIZE;
+	}
+
+	/**
+	 * Sets how many rows are sent to database at once. Larger batches need
+	 * less round trips, but more memory on both client and database.
+	 * Multi-row statements may have less rows, so that they do not exceed
+	 * {@link SqlAdapter#maxParameters() parameter limit} of the database.
+	 * @param rows Number of rows per batch.
+	 * @return This builder.
+	 */
+	public InsertBuilder<R> batchSize(int rows) {
+		if (rows < 1) {
+			throw new IllegalArgumentException("batch size must be positive, got " + rows);
+		}
+		this.batchSize = rows;
+		return this;
+	}
+
+	/**
+	 * Inserts a single record.
+	 * @param record Record to insert.
+	 * @throws SQLException When inserting fails.
+	 */
+	public void insert(R record) throws SQLException {
+		insertAll(List.of(record));
+	}
+
+	/**
+	 * Inserts all given records.
+	 * @param records Records to insert.
+	 * @throws SQLException When inserting fails.
+	 */
+	public void insertAll(Iterable<? extends R> records) throws SQLException {
+		try {
+			String[] columns = insertColumns();
+			Iterator<? extends R> it = records.iterator();
+			// Rows without columns can only be inserted one by one (DEFAULT VALUES)
+			if (columns.length > 0 && helper.adapter().supportsMultiRowInsert()) {
+				int rows = Math.min(batchSize, helper.adapter().maxParameters() / columns.length);
+				if (rows > 1) {
+					it = insertMultiRow(columns, rows, it); // Leaves an incomplete batch
+				}
+			}
+			insertBatched(columns, it);
+		} finally {
+			// Even if we failed, some rows might have been inserted
+			helper.tableWritten(helper.getTable(table).name());
+			helper.close();
+		}
+	}
+
+	/**
+	 * Gets SQL that inserts a single record. It is generated if it is not
+	 * in query cache already, but nothing is inserted.
+	 * @return SQL string.
+	 */
+	public String sql() {
+		return getQuery(insertColumns(), 1).sql();
+	}
+
+	/**
+	 * Gets names of columns that we need to provide values for.
+	 * @return Column names.
+	 */
+	private String[] insertColumns() {
+		return Arrays.stream(helper.getTable(table).columns())
+				.filter(column -> !column.generated())
+				.map(Column::name)
+				.toArray(String[]::new);
+	}
+
+	private CachedQuery getQuery(String[] columns, int rows) {
+		return helper.getQuery(new Shape(table, rows), (adapter, shape) -> {
+			String sql = adapter.insert(helper.getTable(shape.table()).name(), columns, shape.rows());
+			return new CachedQuery(sql, new int[0]);
+		});
+	}
+
+	/**
+	 * Inserts full batches of records with one multi-row statement per batch.
+	 * @param columns Column names.
+	 * @param rows Number of rows per statement.
+	 * @param records Records to insert.
+	 * @return Records that did not fill a full batch.
+	 * @throws SQLException When inserting fails.
+	 */
+	private Iterator<R> insertMultiRow(String[] columns, int rows, Iterator<? extends R> records) throws SQLException {
+		RecordMapper<R> mapper = helper.mapper();
+		List<R> batch = new ArrayList<>(rows);
+		CachedQuery query = null;
+		PreparedStatement stmt = null;
+		try {
+			while (records.hasNext()) {
+				batch.add(records.next());
+				if (batch.size() == rows) {
+					if (stmt == null) { // Only prepare if we have a full batch
+						query = getQuery(columns, rows);
+						stmt = helper.prepareStatement(query);
+					}
+					for (int i = 0; i < batch.size(); i++) {
+						mapper.write(stmt, batch.get(i), i * columns.length);
+					}
+					helper.executeUpdate(query, stmt);
+					batch.clear();
+				}
+			}
+		} finally {
+			if (stmt != null) {
+				helper.releaseStatement(query, stmt);
+			}
+		}
+		return batch.iterator();
+	}
+
+	/**
+	 * Inserts records one row per statement, using JDBC batching.
+	 * @param columns Column names.
+	 * @param records Records to insert.
+	 * @throws SQLException When inserting fails.
+	 */
+	private void insertBatched(String[] columns, Iterator<? extends R> records) throws SQLException {
+		if (!records.hasNext()) {
+			return; // Don't prepare statements that we don't need
+		}
+		RecordMapper<R> mapper = helper.mapper();
+		CachedQuery query = getQuery(columns, 1);
+		PreparedStatement stmt = helper.prepareStatement(query);
+		boolean executed = false;
+		try {
+			int pending = 0;
+			while (records.hasNext()) {
+				mapper.write(stmt, records.next());
+				stmt.addBatch();
+				if (++pending == batchSize) {
+					helper.executeBatch(query, stmt);
+					pending = 0;
+				}
+			}
+			if (pending != 0) {
+				helper.executeBatch(query, stmt);
+			}
+			executed = true;
+		} finally {
+			if (executed) {
+				helper.releaseStatement(query, stmt);
+			} else {
+				stmt.close(); // Might have a pending batch, never let anyone else execute it
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package io.github.bensku.recorder.query;
+
+import java.util.List;
+
+/**
+ * A page of records returned by {@link SelectBuilder#page(Page.Token, int)}.
+ *
+ * @param <R> Record type.
+ */
+public record Page<R extends Record>(
+
+		/**
+		 * Records of this page, in query order.
+		 */
+		List<R> records,
+
+		/**
+		 * Where next page starts, or null if this is the last page.
+		 */
+		Token next
+) {
+
+	/**
+	 * Position after last record of a page. Next page is sought from
+	 * here instead of skipped to with OFFSET, so it does not shift when
+	 * rows before it are inserted or deleted.
+	 */
+	public record Token(
+
+			/**
+			 * Value of order column in last record, or null if query is
+			 * ordered by primary key only.
+			 */
+			Object orderValue,
+
+			/**
+			 * Primary key of last record.
+			 */
+			Object key
+	) {}
+
+	/**
+	 * Checks if there might be more records after this page.
+	 * @return Whether {@link #next()} is available.
+	 */
+	public boolean hasNext() {
+		return next != null;
+	}
+}
@@ -0,0 +1,160 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.SQLException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Reads partitions of a parallel scan. Each partition is a query that
+ * runs on its own connection, which is opened when a thread starts to read
+ * the partition. Splitting divides remaining partitions between threads,
+ * so at most as many connections are open as there are threads reading.
+ *
+ * <p>Partitions close themselves once they have been fully read. Partitions
+ * that were left open, e.g. by short-circuiting stream operations, are
+ * closed by {@link #close()}.
+ *
+ * @param <R> Record type.
+ */
+class PartitionSpliterator<R extends Record> implements Spliterator<R> {
+
+	/**
+	 * Executes partitions.
+	 *
+	 * @param <R> Record type.
+	 */
+	@FunctionalInterface
+	interface Opener<R extends Record> {
+
+		/**
+		 * Executes a partition on a new connection.
+		 * @param partition Index of partition.
+		 * @return Results of partition.
+		 * @throws SQLException When executing the partition fails.
+		 */
+		ResultSpliterator<R> open(int partition) throws SQLException;
+	}
+
+	/**
+	 * State shared by all spliterators of one scan.
+	 */
+	private static class Scan<R extends Record> {
+
+		/**
+		 * Executes partitions.
+		 */
+		final Opener<R> opener;
+
+		/**
+		 * All partitions that have been opened.
+		 */
+		final Queue<ResultSpliterator<R>> opened;
+
+		/**
+		 * Set when the scan has been closed. Partitions are not opened after it.
+		 */
+		volatile boolean closed;
+
+		Scan(Opener<R> opener) {
+			this.opener = opener;
+			this.opened = new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	private final Scan<R> scan;
+
+	/**
+	 * Index of next partition to read.
+	 */
+	private int from;
+
+	/**
+	 * Index after last partition that this reads.
+	 */
+	private final int to;
+
+	/**
+	 * Partition that is being read, or null.
+	 */
+	private ResultSpliterator<R> current;
+
+	public PartitionSpliterator(Opener<R> opener, int partitions) {
+		this(new Scan<>(opener), 0, partitions);
+	}
+
+	private PartitionSpliterator(Scan<R> scan, int from, int to) {
+		this.scan = scan;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super R> action) {
+		while (true) {
+			if (current == null) {
+				if (from == to || scan.closed) {
+					return false;
+				}
+				try {
+					current = scan.opener.open(from++);
+				} catch (SQLException e) {
+					throw new UncheckedSQLException(e);
+				}
+				scan.opened.add(current);
+			}
+			if (current.tryAdvance(action)) {
+				return true;
+			}
+			current = null; // Closed itself, move to next partition
+		}
+	}
+
+	@Override
+	public Spliterator<R> trySplit() {
+		if (current != null || to - from < 2) {
+			return null; // Prefix would not come before what we're reading
+		}
+		int middle = (from + to) >>> 1;
+		PartitionSpliterator<R> prefix = new PartitionSpliterator<>(scan, from, middle);
+		from = middle;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return from == to && current == null ? 0 : Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+	}
+
+	/**
+	 * Closes all partitions of the scan that are still open, and prevents
+	 * new ones from being opened. Calling this multiple times has no effect.
+	 * @throws UncheckedSQLException When closing a partition fails. Other
+	 * partitions are closed before this is thrown.
+	 */
+	public void close() {
+		scan.closed = true;
+		UncheckedSQLException error = null;
+		ResultSpliterator<R> partition;
+		while ((partition = scan.opened.poll()) != null) {
+			try {
+				partition.close();
+			} catch (UncheckedSQLException e) {
+				if (error == null) {
+					error = e;
+				} else {
+					error.addSuppressed(e);
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+}
@@ -0,0 +1,346 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.Connection;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.sql.DataSource;
+
+import io.github.bensku.recorder.cache.EntityCache;
+import io.github.bensku.recorder.cache.ResultCache;
+import io.github.bensku.recorder.cache.StatementCache;
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+import io.github.bensku.recorder.query.mapper.MapperSource;
+import io.github.bensku.recorder.query.mapper.TableSource;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+
+/**
+ * Everything that {@link QueryHelper query helpers} need apart from the
+ * query itself: database, caches and the connection to run queries on.
+ * Recorder builds one context, and derives a context for each query with
+ * {@link #withConnection(Connection, StatementCache)} or
+ * {@link #inSession(Connection, StatementCache)}.
+ *
+ * <p>Everything except {@link SqlAdapter} and {@link TableSource} is
+ * optional. Queries that need a missing part fail when they try to use it.
+ *
+ */
+public final class QueryContext {
+	
+	/**
+	 * Builds query contexts.
+	 *
+	 */
+	public static class Builder {
+		
+		private final SqlAdapter adapter;
+		private final TableSource tableSource;
+		private MapperSource mappers;
+		private ForeignBatch.Loader foreignLoader;
+		private EntityCache entityCache;
+		private ResultCache resultCache;
+		private Executor executor;
+		private RecorderMetrics metrics;
+		private DataSource dataSource;
+		private Connection conn;
+		private StatementCache statements;
+		
+		private Builder(SqlAdapter adapter, TableSource tableSource) {
+			this.adapter = adapter;
+			this.tableSource = tableSource;
+			this.metrics = RecorderMetrics.NONE;
+		}
+		
+		/**
+		 * Sets where mappers for records other than the query's own
+		 * record come from.
+		 * @param mappers Mapper source.
+		 * @return This builder.
+		 */
+		public Builder mappers(MapperSource mappers) {
+			this.mappers = mappers;
+			return this;
+		}
+		
+		/**
+		 * Sets how records that foreign keys refer to are loaded.
+		 * @param foreignLoader Foreign record loader.
+		 * @return This builder.
+		 */
+		public Builder foreignLoader(ForeignBatch.Loader foreignLoader) {
+			this.foreignLoader = foreignLoader;
+			return this;
+		}
+		
+		public Builder entityCache(EntityCache entityCache) {
+			this.entityCache = entityCache;
+			return this;
+		}
+		
+		public Builder resultCache(ResultCache resultCache) {
+			this.resultCache = resultCache;
+			return this;
+		}
+		
+		/**
+		 * Sets executor for asynchronous queries.
+		 * @param executor Executor.
+		 * @return This builder.
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+		
+		/**
+		 * Sets where phases of queries are reported. By default, they are
+		 * not reported.
+		 * @param metrics Metrics listener.
+		 * @return This builder.
+		 */
+		public Builder metrics(RecorderMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+		
+		/**
+		 * Sets source of connections for queries that need more than one,
+		 * e.g. {@link SelectBuilder#parallelStream(int) parallel scans}.
+		 * @param dataSource Data source.
+		 * @return This builder.
+		 */
+		public Builder dataSource(DataSource dataSource) {
+			this.dataSource = dataSource;
+			return this;
+		}
+		
+		/**
+		 * Sets connection that queries run on. It is closed when a query
+		 * is done with it. Without a connection, queries can only render
+		 * SQL.
+		 * @param conn Connection.
+		 * @return This builder.
+		 */
+		public Builder connection(Connection conn) {
+			this.conn = conn;
+			return this;
+		}
+		
+		/**
+		 * Sets prepared statement cache of {@link #connection(Connection)
+		 * connection}. By default, statements are not cached.
+		 * @param statements Statement cache.
+		 * @return This builder.
+		 */
+		public Builder statements(StatementCache statements) {
+			this.statements = statements;
+			return this;
+		}
+		
+		public QueryContext build() {
+			return new QueryContext(adapter, tableSource, mappers, foreignLoader, entityCache, resultCache, executor,
+					metrics, dataSource, conn, statements, false, null);
+		}
+	}
+	
+	/**
+	 * Creates a builder for query contexts.
+	 * @param adapter SQL adapter of the database.
+	 * @param tableSource Source of tables for records.
+	 * @return A new builder.
+	 */
+	public static Builder builder(SqlAdapter adapter, TableSource tableSource) {
+		return new Builder(adapter, tableSource);
+	}
+	
+	private final SqlAdapter adapter;
+	private final TableSource tableSource;
+	private final MapperSource mappers;
+	private final ForeignBatch.Loader foreignLoader;
+	private final EntityCache entityCache;
+	private final ResultCache resultCache;
+	private final Executor executor;
+	private final RecorderMetrics metrics;
+	private final DataSource dataSource;
+	private final Connection conn;
+	private final StatementCache statements;
+	
+	/**
+	 * If {@link #conn} belongs to a session. Such connections are closed
+	 * when the session ends, not when a query is done.
+	 */
+	private final boolean pinned;
+	
+	/**
+	 * Names of tables written in the open transaction of {@link #conn},
+	 * or null if there is none. Results of transactions might include
+	 * uncommitted changes, so they are not cached.
+	 */
+	private final Set<String> writtenTables;
+	
+	private QueryContext(SqlAdapter adapter, TableSource tableSource, MapperSource mappers,
+			ForeignBatch.Loader foreignLoader, EntityCache entityCache, ResultCache resultCache, Executor executor,
+			RecorderMetrics metrics, DataSource dataSource, Connection conn, StatementCache statements,
+			boolean pinned, Set<String> writtenTables) {
+		this.adapter = adapter;
+		this.tableSource = tableSource;
+		this.mappers = mappers;
+		this.foreignLoader = foreignLoader;
+		this.entityCache = entityCache;
+		this.resultCache = resultCache;
+		this.executor = executor;
+		this.metrics = metrics;
+		this.dataSource = dataSource;
+		this.conn = conn;
+		this.statements = statements;
+		this.pinned = pinned;
+		this.writtenTables = writtenTables;
+	}
+	
+	/**
+	 * Creates a context that runs queries on given connection. The
+	 * connection is closed when a query is done with it.
+	 * @param conn Connection.
+	 * @param statements Statement cache of the connection, or null to not
+	 * cache statements.
+	 * @return A new context.
+	 */
+	public QueryContext withConnection(Connection conn, StatementCache statements) {
+		return new QueryContext(adapter, tableSource, mappers, foreignLoader, entityCache, resultCache, executor,
+				metrics, dataSource, conn, statements, false, null);
+	}
+	
+	/**
+	 * Creates a context that runs queries on connection of a session.
+	 * Queries do not close the connection; the session does.
+	 * @param conn Connection of session.
+	 * @param statements Statement cache of the connection, or null to not
+	 * cache statements.
+	 * @return A new context.
+	 */
+	public QueryContext inSession(Connection conn, StatementCache statements) {
+		return new QueryContext(adapter, tableSource, mappers, foreignLoader, entityCache, resultCache, executor,
+				metrics, dataSource, conn, statements, true, null);
+	}
+	
+	/**
+	 * Creates a context that runs queries in a transaction on connection
+	 * of a session. Queries do not close the connection, and they neither
+	 * read from nor write to {@link EntityCache} and {@link ResultCache},
+	 * because they might see uncommitted changes. Writes still invalidate
+	 * the caches, and record tables that they wrote, so that whoever
+	 * commits the transaction can invalidate them again.
+	 * @param conn Connection of session, with auto-commit disabled.
+	 * @param statements Statement cache of the connection, or null to not
+	 * cache statements.
+	 * @param writtenTables Set where names of written tables are added.
+	 * It is shared by all queries of the transaction.
+	 * @return A new context.
+	 */
+	public QueryContext inTransaction(Connection conn, StatementCache statements, Set<String> writtenTables) {
+		return new QueryContext(adapter, tableSource, mappers, foreignLoader, entityCache, resultCache, executor,
+				metrics, dataSource, conn, statements, true, writtenTables);
+	}
+	
+	public SqlAdapter adapter() {
+		return adapter;
+	}
+	
+	public TableSource tableSource() {
+		return tableSource;
+	}
+	
+	/**
+	 * Gets source of mappers for records.
+	 * @return Mapper source, or null if queries can only use their own mappers.
+	 */
+	public MapperSource mappers() {
+		return mappers;
+	}
+	
+	/**
+	 * Gets loader of records that foreign keys refer to.
+	 * @return Loader, or null if foreign references cannot be resolved.
+	 */
+	public ForeignBatch.Loader foreignLoader() {
+		return foreignLoader;
+	}
+	
+	/**
+	 * Gets the cache of records by their primary keys.
+	 * @return Entity cache, or null if it is disabled.
+	 */
+	public EntityCache entityCache() {
+		return entityCache;
+	}
+	
+	/**
+	 * Gets the cache of query results.
+	 * @return Result cache, or null if it is disabled.
+	 */
+	public ResultCache resultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * Gets executor for asynchronous queries.
+	 * @return Executor, or null if asynchronous queries are not supported.
+	 */
+	public Executor executor() {
+		return executor;
+	}
+	
+	public RecorderMetrics metrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Gets source of new connections.
+	 * @return Data source, or null if queries cannot open connections.
+	 */
+	public DataSource dataSource() {
+		return dataSource;
+	}
+	
+	/**
+	 * Gets connection that queries run on.
+	 * @return Connection, or null if there is none.
+	 */
+	public Connection connection() {
+		return conn;
+	}
+	
+	/**
+	 * Gets prepared statement cache of {@link #connection()}.
+	 * @return Statement cache, or null if statements are not cached.
+	 */
+	public StatementCache statements() {
+		return statements;
+	}
+	
+	/**
+	 * Checks if {@link #connection()} belongs to a session, and should
+	 * not be closed by queries.
+	 * @return Whether connection is pinned to a session.
+	 */
+	public boolean pinned() {
+		return pinned;
+	}
+	
+	/**
+	 * Checks if queries run in a transaction, and their results must not
+	 * be cached.
+	 * @return Whether connection has an open transaction.
+	 */
+	public boolean transaction() {
+		return writtenTables != null;
+	}
+	
+	/**
+	 * Gets names of tables that the open transaction has written.
+	 * @return Written tables, or null if there is no transaction.
+	 */
+	public Set<String> writtenTables() {
+		return writtenTables;
+	}
+}
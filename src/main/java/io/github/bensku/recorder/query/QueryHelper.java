@@ -2,13 +2,27 @@ package io.github.bensku.recorder.query;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.sql.DataSource;
 
 import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.EntityCache;
 import io.github.bensku.recorder.cache.QueryCache;
+import io.github.bensku.recorder.cache.ResultCache;
+import io.github.bensku.recorder.cache.StatementCache;
+import io.github.bensku.recorder.jfr.QueryCompileEvent;
+import io.github.bensku.recorder.jfr.RowMappingEvent;
+import io.github.bensku.recorder.jfr.StatementExecuteEvent;
+import io.github.bensku.recorder.jfr.StatementPrepareEvent;
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+import io.github.bensku.recorder.query.mapper.FetchPlan;
+import io.github.bensku.recorder.query.mapper.MapperSource;
 import io.github.bensku.recorder.query.mapper.RecordMapper;
-import io.github.bensku.recorder.query.mapper.TableSource;
-import io.github.bensku.recorder.sql.JavaType;
 import io.github.bensku.recorder.sql.Table;
 import io.github.bensku.recorder.sql.QueryGenerator;
 import io.github.bensku.recorder.sql.adapter.SqlAdapter;
@@ -19,8 +33,13 @@ import io.github.bensku.recorder.sql.adapter.SqlAdapter;
  * @param <T> Type of query builder.
  * @param <R> Type of query input or output.
  */
-public class QueryHelper<T, R extends Record> {
+public class QueryHelper<T, R extends Record> implements AutoCloseable {
 
+	/**
+	 * Database, caches and connection of this query.
+	 */
+	private final QueryContext context;
+	
 	/**
 	 * SQL adapter of current database.
 	 */
@@ -32,31 +51,242 @@ public class QueryHelper<T, R extends Record> {
 	private final Connection conn;
 	
 	/**
-	 * Query cache of thread that initiated the query.
+	 * Query cache for this type of queries. Depending on configuration,
+	 * it is either shared by all threads or specific to current thread.
 	 */
 	private final QueryCache<T> cache;
 	
 	/**
-	 * Table source that this query can use to resolve table references.
+	 * Record mapper to use for this query.
 	 */
-	private final TableSource tableSource;
+	private final RecordMapper<R> mapper;
 	
 	/**
-	 * Record mapper to use for this query.
+	 * Prepared statement cache of {@link #conn}, or null if statements
+	 * should not be cached.
 	 */
-	private final RecordMapper<R> mapper;
+	private final StatementCache statements;
+	
+	/**
+	 * Metrics that phases of this query are reported to.
+	 */
+	private final RecorderMetrics metrics;
+	
+	/**
+	 * If phases of this query are timed for {@link #metrics}. Reading the
+	 * clock is not free, so it is skipped when metrics are discarded.
+	 */
+	private final boolean timed;
 	
-	public QueryHelper(SqlAdapter adapter, Connection conn,
-			QueryCache<T> cache, TableSource tableSource, RecordMapper<R> mapper) {
-		this.adapter = adapter;
-		this.conn = conn;
+	/**
+	 * Record type R, or null if it is not known. This is only used for
+	 * diagnostics.
+	 */
+	private final Class<R> record;
+	
+	/**
+	 * Foreign batches that load records on {@link #conn}, or null if there
+	 * are none. They are released when this is closed.
+	 */
+	private List<ForeignBatch> batches;
+	
+	/**
+	 * Reads a row of results.
+	 */
+	@FunctionalInterface
+	public interface RowReader {
+		
+		/**
+		 * Reads current row.
+		 * @param results Results, positioned at the row.
+		 * @return Whether more rows should be read.
+		 * @throws SQLException When reading fails.
+		 */
+		boolean read(ResultSet results) throws SQLException;
+	}
+	
+	/**
+	 * Creates a query helper.
+	 * @param context Database, caches and connection of the query.
+	 * @param cache Query cache for this type of queries.
+	 * @param mapper Record mapper of the query.
+	 * @param record Record type of the query, or null if it is not known.
+	 */
+	public QueryHelper(QueryContext context, QueryCache<T> cache, RecordMapper<R> mapper, Class<R> record) {
+		this.context = context;
+		this.adapter = context.adapter();
+		this.conn = context.connection();
 		this.cache = cache;
-		this.tableSource = tableSource;
 		this.mapper = mapper;
+		this.statements = context.statements();
+		this.metrics = context.metrics();
+		this.timed = metrics != RecorderMetrics.NONE;
+		this.record = record;
 	}
 	
-	public PreparedStatement prepareStatement(String sql) throws SQLException {
-		return conn.prepareStatement(sql);
+	/**
+	 * Creates a helper that maps results to a different record type. It
+	 * shares connection and caches with this helper, so only one of them
+	 * should be closed.
+	 * @param <U> New type of query builder.
+	 * @param <P> New record type.
+	 * @param record New record type.
+	 * @return A new query helper.
+	 */
+	@SuppressWarnings("unchecked") // Query builders are the same, only their generic type changes
+	public <U, P extends Record> QueryHelper<U, P> withRecord(Class<P> record) {
+		MapperSource mappers = context.mappers();
+		if (mappers == null) {
+			throw new IllegalStateException("no mapper source available");
+		}
+		return new QueryHelper<>(context, (QueryCache<U>) cache, (RecordMapper<P>) mappers.get(record), record);
+	}
+	
+	/**
+	 * Creates a helper that runs queries on a new connection, which is
+	 * never the connection of a session. It shares caches with this helper,
+	 * but prepared statements are not cached, and it must be closed
+	 * separately. Its query cache should only be used on the thread that
+	 * owns this helper.
+	 * @return A new query helper.
+	 * @throws SQLException When getting a connection fails.
+	 */
+	public QueryHelper<T, R> withNewConnection() throws SQLException {
+		DataSource dataSource = context.dataSource();
+		if (dataSource == null) {
+			throw new IllegalStateException("no data source available");
+		}
+		return new QueryHelper<>(context.withConnection(dataSource.getConnection(), null), cache, mapper, record);
+	}
+	
+	public SqlAdapter adapter() {
+		return adapter;
+	}
+	
+	/**
+	 * Gets a prepared statement for given query. If statement caching is
+	 * enabled, a cached statement may be returned.
+	 * @param query Query.
+	 * @return Prepared statement. It should be given to
+	 * {@link #releaseStatement(CachedQuery, PreparedStatement)} after use.
+	 * @throws SQLException When preparing statement fails.
+	 */
+	public PreparedStatement prepareStatement(CachedQuery query) throws SQLException {
+		if (conn == null) {
+			throw new IllegalStateException("query has no connection, it can only render SQL");
+		}
+		StatementPrepareEvent event = new StatementPrepareEvent();
+		event.begin();
+		long start = timed ? System.nanoTime() : 0;
+		PreparedStatement stmt;
+		if (statements != null) {
+			stmt = statements.take(conn, query.sql());
+		} else {
+			stmt = conn.prepareStatement(query.sql());
+		}
+		if (timed) {
+			metrics.statementPrepared(query, System.nanoTime() - start);
+		}
+		event.commit(query.sql(), record);
+		return stmt;
+	}
+	
+	/**
+	 * Executes a query statement.
+	 * @param query Query that the statement was prepared for.
+	 * @param stmt Prepared statement, with parameters set.
+	 * @return Results.
+	 * @throws SQLException When execution fails.
+	 */
+	public ResultSet executeQuery(CachedQuery query, PreparedStatement stmt) throws SQLException {
+		StatementExecuteEvent event = new StatementExecuteEvent();
+		event.begin();
+		long start = timed ? System.nanoTime() : 0;
+		ResultSet results = stmt.executeQuery();
+		if (timed) {
+			metrics.statementExecuted(query, System.nanoTime() - start);
+		}
+		event.commit(query.sql(), record);
+		return results;
+	}
+	
+	/**
+	 * Executes an update statement.
+	 * @param query Query that the statement was prepared for.
+	 * @param stmt Prepared statement, with parameters set.
+	 * @return Number of affected rows.
+	 * @throws SQLException When execution fails.
+	 */
+	public int executeUpdate(CachedQuery query, PreparedStatement stmt) throws SQLException {
+		StatementExecuteEvent event = new StatementExecuteEvent();
+		event.begin();
+		long start = timed ? System.nanoTime() : 0;
+		int rows = stmt.executeUpdate();
+		if (timed) {
+			metrics.statementExecuted(query, System.nanoTime() - start);
+		}
+		event.commit(query.sql(), record);
+		return rows;
+	}
+	
+	/**
+	 * Executes a batch of update statements.
+	 * @param query Query that the statement was prepared for.
+	 * @param stmt Prepared statement, with batch added.
+	 * @return Numbers of affected rows.
+	 * @throws SQLException When execution fails.
+	 */
+	public int[] executeBatch(CachedQuery query, PreparedStatement stmt) throws SQLException {
+		StatementExecuteEvent event = new StatementExecuteEvent();
+		event.begin();
+		long start = timed ? System.nanoTime() : 0;
+		int[] rows = stmt.executeBatch();
+		if (timed) {
+			metrics.statementExecuted(query, System.nanoTime() - start);
+		}
+		event.commit(query.sql(), record);
+		return rows;
+	}
+	
+	/**
+	 * Reads rows of results until they run out or reader asks to stop.
+	 * @param query Query that produced the results.
+	 * @param results Results.
+	 * @param reader Reader that is called for each row.
+	 * @return Number of rows read.
+	 * @throws SQLException When reading fails.
+	 */
+	public int readRows(CachedQuery query, ResultSet results, RowReader reader) throws SQLException {
+		RowMappingEvent event = new RowMappingEvent();
+		event.begin();
+		long start = timed ? System.nanoTime() : 0;
+		int rows = 0;
+		while (results.next()) {
+			rows++;
+			if (!reader.read(results)) {
+				break;
+			}
+		}
+		if (timed) {
+			metrics.rowsMapped(query, rows, System.nanoTime() - start);
+		}
+		event.commit(query.sql(), record, rows);
+		return rows;
+	}
+	
+	/**
+	 * Releases a statement that is no longer needed. It is either cached
+	 * or closed.
+	 * @param query Query that the statement was prepared for.
+	 * @param stmt Prepared statement.
+	 * @throws SQLException When closing statement fails.
+	 */
+	public void releaseStatement(CachedQuery query, PreparedStatement stmt) throws SQLException {
+		if (statements != null) {
+			statements.release(query.sql(), stmt);
+		} else {
+			stmt.close();
+		}
 	}
 	
 	/**
@@ -69,21 +299,131 @@ public class QueryHelper<T, R extends Record> {
 	public CachedQuery getQuery(T builder, QueryGenerator<T> generator) {
 		CachedQuery query = cache.get(builder);
 		if (query == null) { // Put to cache
+			QueryCompileEvent event = new QueryCompileEvent();
+			event.begin();
+			long start = timed ? System.nanoTime() : 0;
 			query = generator.generate(adapter, builder);
 			cache.put(builder, query);
+			if (timed) {
+				metrics.queryCacheMiss(query, System.nanoTime() - start);
+			}
+			event.commit(query.sql(), record);
+		} else {
+			metrics.queryCacheHit(query);
 		}
 		return query;
 	}
 	
 	public Table getTable(Class<? extends Record> record) {
-		return tableSource.get(JavaType.of(record));
+		return context.tableSource().get(record);
 	}
 	
 	public RecordMapper<R> mapper() {
 		return mapper;
 	}
+	
+	/**
+	 * Gets a record mapper that join fetches some foreign keys.
+	 * @param plan Foreign keys to fetch. Record type must be R.
+	 * @return Record mapper.
+	 */
+	@SuppressWarnings("unchecked") // Caller ensures that record type is R
+	public RecordMapper<R> mapper(FetchPlan plan) {
+		MapperSource mappers = context.mappers();
+		if (mappers == null) {
+			throw new IllegalStateException("no mapper source available");
+		}
+		return (RecordMapper<R>) mappers.get(plan);
+	}
+	
+	/**
+	 * Checks if results of this query may be read from and put to
+	 * {@link #entityCache()} and {@link #resultCache()}. Inside transactions,
+	 * they might include uncommitted changes, so only invalidating caches
+	 * is allowed.
+	 * @return Whether caches can be used for results.
+	 */
+	public boolean cachesResults() {
+		return !context.transaction();
+	}
+	
+	/**
+	 * Invalidates cached results of a table after it has been written.
+	 * Inside a transaction, the table is also recorded, so that results
+	 * read by others before the transaction commits can be invalidated
+	 * after it.
+	 * @param table Table name.
+	 */
+	public void tableWritten(String table) {
+		ResultCache results = context.resultCache();
+		if (results != null) {
+			results.invalidate(table);
+			if (context.transaction()) {
+				context.writtenTables().add(table);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the cache of records by their primary keys.
+	 * @return Entity cache, or null if it is disabled.
+	 */
+	public EntityCache entityCache() {
+		return context.entityCache();
+	}
+	
+	/**
+	 * Gets the cache of query results.
+	 * @return Result cache, or null if it is disabled.
+	 */
+	public ResultCache resultCache() {
+		return context.resultCache();
+	}
+	
+	/**
+	 * Gets executor for asynchronous queries.
+	 * @return Executor, or null if asynchronous queries are not supported.
+	 */
+	public Executor executor() {
+		return context.executor();
+	}
+	
+	/**
+	 * Creates a batch for resolving foreign references of records that
+	 * one query returns.
+	 * @return A new batch, or null if foreign references cannot be resolved.
+	 */
+	public ForeignBatch foreignBatch() {
+		ForeignBatch.Loader loader = context.foreignLoader();
+		if (loader == null) {
+			return null;
+		}
+		// Loading on this connection while results are read needs driver support
+		ForeignBatch batch = new ForeignBatch(loader, adapter.supportsMultipleResultSets() ? conn : null);
+		synchronized (this) { // Streams might be closed from another thread
+			if (batches == null) {
+				batches = new ArrayList<>(1);
+			}
+			batches.add(batch);
+		}
+		return batch;
+	}
 
+	/**
+	 * Closes connection of this query, unless it belongs to a session or
+	 * there is no connection.
+	 * Foreign references that are resolved after this use other connections.
+	 */
+	@Override
 	public void close() throws SQLException {
-		conn.close();
+		synchronized (this) {
+			if (batches != null) {
+				batches.forEach(ForeignBatch::release);
+				batches = null;
+			}
+		}
+		if (conn != null && !context.pinned()) {
+			conn.close();
+		}
 	}
 }
@@ -0,0 +1,106 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+
+/**
+ * Lazily maps rows of an open result set to records. Closes the result set,
+ * its statement and the query helper once all rows have been consumed or
+ * {@link #close()} is called, whichever happens first.
+ *
+ * @param <R> Record type.
+ */
+class ResultSpliterator<R extends Record> extends Spliterators.AbstractSpliterator<R> {
+
+	/**
+	 * Helper of query that created {@link #statement}.
+	 */
+	private final QueryHelper<?, R> helper;
+
+	/**
+	 * Query that {@link #statement} was prepared for.
+	 */
+	private final CachedQuery query;
+
+	/**
+	 * Statement that produced {@link #results}.
+	 */
+	private final PreparedStatement statement;
+
+	/**
+	 * Results that we're iterating over.
+	 */
+	private final ResultSet results;
+
+	/**
+	 * Maps rows to records.
+	 */
+	private final RecordMapper<R> mapper;
+	
+	/**
+	 * Foreign references of all rows are resolved with this.
+	 */
+	private final ForeignBatch batch;
+
+	/**
+	 * Set when JDBC resources have been released.
+	 */
+	private boolean closed;
+
+	public ResultSpliterator(QueryHelper<?, R> helper, CachedQuery query, PreparedStatement statement, ResultSet results,
+			RecordMapper<R> mapper) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+		this.helper = helper;
+		this.query = query;
+		this.statement = statement;
+		this.results = results;
+		this.mapper = mapper;
+		this.batch = helper.foreignBatch();
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super R> action) {
+		if (closed) {
+			return false;
+		}
+		try {
+			if (!results.next()) {
+				close(); // Fully consumed, no need to wait for Stream#close()
+				return false;
+			}
+			action.accept(mapper.read(results, batch));
+			return true;
+		} catch (SQLException e) {
+			close();
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Closes result set, releases statement and closes connection of this
+	 * query. Calling this multiple times has no effect.
+	 * @throws UncheckedSQLException When closing something fails.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try (helper) {
+			try {
+				results.close();
+			} finally {
+				helper.releaseStatement(query, statement);
+			}
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+}
@@ -1,26 +1,75 @@
 package io.github.bensku.recorder.query;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import io.github.bensku.recorder.ComponentLambda;
 import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.EntityCache;
+import io.github.bensku.recorder.cache.ResultCache;
+import io.github.bensku.recorder.query.mapper.FetchPlan;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.record.Foreign;
+import io.github.bensku.recorder.sql.Column;
 import io.github.bensku.recorder.sql.Condition;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Join;
+import io.github.bensku.recorder.sql.Table;
 import io.github.bensku.recorder.sql.Value;
 import io.github.bensku.recorder.sql.adapter.SqlAdapter;
 
 public class SelectBuilder<R extends Record> {
 	
+	private static final Object[] NO_PARAMETERS = new Object[0];
+	
+	/**
+	 * IN lists longer than this are sent as array parameters, if
+	 * {@link SqlAdapter#supportsArrayParameters() database supports them}.
+	 */
+	public static final int IN_ARRAY_THRESHOLD = 32;
+	
+	/**
+	 * IN lists longer than this are padded to a multiple of this instead
+	 * of next power of two, so that padding never nearly doubles them.
+	 */
+	public static final int IN_BUCKET_SIZE = 1024;
+	
 	/**
 	 * Query helper, used for generating a query from
 	 * this builder and executing it.
 	 */
 	private final QueryHelper<SelectBuilder<R>, R> helper;
 	
+	/**
+	 * Type of records that this query returns.
+	 */
+	private final Class<R> record;
+	
+	/**
+	 * Type of records in table that this query selects from. Unless this
+	 * query is {@link #project(Class) projected}, same as {@link #record}.
+	 */
+	private final Class<? extends Record> table;
+	
 	/**
 	 * A singular table name, table type, or an array of these.
 	 */
@@ -41,6 +90,11 @@ public class SelectBuilder<R extends Record> {
 	 */
 	private int conditionCount;
 	
+	/**
+	 * Foreign keys whose records are join fetched, or null if there are none.
+	 */
+	private ComponentLambda<?, ?>[] fetches;
+	
 	/**
 	 * Reference to column that this is ordered by.
 	 */
@@ -56,6 +110,38 @@ public class SelectBuilder<R extends Record> {
 	 */
 	private int limit;
 	
+	/**
+	 * If this is a {@link #page(Page.Token, int) page}, which is ordered
+	 * by primary key after {@link #orderColumn}.
+	 */
+	private boolean paged;
+	
+	/**
+	 * Where this page starts, or null if this is the first page.
+	 */
+	private Page.Token after;
+	
+	/**
+	 * Primary key range of a partition of a {@link #parallelStream(List)
+	 * parallel scan}: inclusive lower bound and exclusive upper bound,
+	 * either of which may be null if it is open. Null if this is not a
+	 * partition.
+	 */
+	private Object[] range;
+	
+	/**
+	 * JDBC fetch size hint, or 0 to use driver default. This does not affect
+	 * SQL, so it is not part of {@link #equals(Object)} or hash code.
+	 */
+	private int fetchSize;
+	
+	/**
+	 * How long results are cached in nanoseconds, or 0 if they are not.
+	 * This does not affect SQL, so it is not part of {@link #equals(Object)}
+	 * or hash code.
+	 */
+	private long cacheTtl;
+	
 	/**
 	 * Current (mutable) hash code.
 	 */
@@ -63,6 +149,8 @@ public class SelectBuilder<R extends Record> {
 	
 	public SelectBuilder(QueryHelper<SelectBuilder<R>, R> helper, Class<R> table) {
 		this.helper = helper;
+		this.record = table;
+		this.table = table;
 		this.tables = table;
 		this.defaultTables = true;
 		this.conditions = new Object[6];
@@ -71,6 +159,45 @@ public class SelectBuilder<R extends Record> {
 		this.cachedHash = 1;
 	}
 	
+	private SelectBuilder(QueryHelper<SelectBuilder<R>, R> helper, Class<R> record, SelectBuilder<?> source) {
+		this.helper = helper;
+		this.record = record;
+		this.table = source.table;
+		this.tables = source.tables;
+		this.defaultTables = source.defaultTables;
+		this.conditions = source.conditions.clone();
+		this.conditionCount = source.conditionCount;
+		this.fetches = source.fetches;
+		this.orderColumn = source.orderColumn;
+		this.order = source.order;
+		this.limit = source.limit;
+		this.paged = source.paged;
+		this.after = source.after;
+		this.range = source.range;
+		this.fetchSize = source.fetchSize;
+		this.cacheTtl = source.cacheTtl;
+		this.cachedHash = 31 * source.cachedHash + System.identityHashCode(record);
+	}
+	
+	/**
+	 * Projects results of this query to a narrower record. Only columns
+	 * that the projection has are selected from database. Components of
+	 * the projection must have same names and types as columns of the table.
+	 * 
+	 * <p>This builder should not be used after calling this.
+	 * @param <P> Projection type.
+	 * @param projection Record type to map results to.
+	 * @return A query that returns projections.
+	 */
+	public <P extends Record> SelectBuilder<P> project(Class<P> projection) {
+		if (record != table) {
+			throw new IllegalStateException("query is already projected to " + record.getName());
+		} else if (fetches != null) {
+			throw new IllegalStateException("projections cannot join fetch");
+		}
+		return new SelectBuilder<>(helper.withRecord(projection), projection, this);
+	}
+	
 	private void doTablesAccess() {
 		if (!defaultTables) {
 			throw new IllegalStateException("source tables already specified (FROM is used twice)");
@@ -114,7 +241,7 @@ public class SelectBuilder<R extends Record> {
 		return this;
 	}
 	
-	public <C> ConditionBuilder<R, C> where(ComponentLambda<?, C> lhs) {
+	public <T, C> ConditionBuilder<R, C> where(ComponentLambda<T, C> lhs) {
 		return new ConditionBuilder<>(this, lhs);
 	}
 	
@@ -138,18 +265,54 @@ public class SelectBuilder<R extends Record> {
 			hash = 31 * hash + System.identityHashCode(type);
 		}
 		cond[count++] = rhs;
-		hash = 31 * hash + System.identityHashCode(rhs);
+		// IN lists of same length have same SQL
+		hash = 31 * hash + (rhs instanceof InList list ? list.shapeHash() : System.identityHashCode(rhs));
 		
 		conditions = cond;
 		conditionCount = count;
 		cachedHash = hash;
 	}
 	
-	public SelectBuilder<R> orderBy(ComponentLambda<?, ?> column, Order order) {
+	/**
+	 * Adds an IN condition.
+	 * @param <C> Type of column.
+	 * @param lhs Column.
+	 * @param values Values that column may have.
+	 */
+	<C> void addInCondition(ComponentLambda<?, C> lhs, Collection<? extends C> values) {
+		InList list = InList.of(helper.adapter(), JavaType.of(lhs.lookupComponent().type()), values);
+		addCondition(lhs, Condition.Type.IN, list);
+	}
+	
+	/**
+	 * Join fetches records that given foreign key refers to. They are read
+	 * from the same rows as records of this query, and their
+	 * {@link Foreign#get()} does not query the database.
+	 * @param component Foreign key component of the record.
+	 * @return This builder.
+	 */
+	public SelectBuilder<R> fetch(ComponentLambda<R, ? extends Foreign<?>> component) {
+		if (record != table) {
+			throw new IllegalStateException("projections cannot join fetch");
+		}
+		ComponentLambda<?, ?>[] array;
+		if (fetches == null) {
+			array = new ComponentLambda<?, ?>[1];
+		} else {
+			array = Arrays.copyOf(fetches, fetches.length + 1);
+		}
+		array[array.length - 1] = component;
+		fetches = array;
+		cachedHash = 31 * cachedHash + System.identityHashCode(component);
+		return this;
+	}
+	
+	public <T> SelectBuilder<R> orderBy(ComponentLambda<T, ?> column, Order order) {
 		if (orderColumn != null) {
 			throw new IllegalStateException("order already specified (ORDER BY used twice)");
 		}
 		orderColumn = column;
+		this.order = order;
 		cachedHash = 31 * cachedHash + System.identityHashCode(column);
 		cachedHash = 31 * cachedHash + System.identityHashCode(order);
 		return this;
@@ -160,7 +323,99 @@ public class SelectBuilder<R extends Record> {
 			throw new IllegalStateException("limit already set to " + this.limit);
 		}
 		this.limit = limit;
-		cachedHash = 31 * cachedHash + limit;
+		cachedHash = 31 * cachedHash + 1; // Limit is a parameter, so its value does not change SQL
+		return this;
+	}
+	
+	/**
+	 * Gets a page of records with keyset (seek) pagination. Records are
+	 * ordered by {@link #orderBy(ComponentLambda, Order) order column},
+	 * if there is one, and then by primary key. Each page starts right
+	 * after the previous one with {@code WHERE (col, pk) > (?, ?)}, so
+	 * unlike OFFSET, deep pages are as fast as the first one if there is
+	 * an index on the order column and primary key.
+	 * 
+	 * <p>Order column should not be nullable. Databases that do not
+	 * support row value comparisons need an adapter that rewrites them.
+	 * This builder should not be used after calling this.
+	 * @param after Token of previous page, or null to get first page.
+	 * @param size Maximum number of records on page.
+	 * @return Page of records.
+	 * @throws SQLException When executing the query fails.
+	 */
+	public Page<R> page(Page.Token after, int size) throws SQLException {
+		if (size < 1) {
+			throw new IllegalArgumentException("page size must be positive, got " + size);
+		}
+		limit(size);
+		this.paged = true;
+		this.after = after;
+		cachedHash = 31 * cachedHash + (after != null ? 2 : 1); // First page has no seek condition
+		
+		List<R> records = all();
+		if (records.size() < size) {
+			return new Page<>(records, null); // Nothing after this
+		}
+		R last = records.get(records.size() - 1);
+		String[] columns = orderColumns("");
+		Object key = componentValue(last, columns[columns.length - 1]);
+		return new Page<>(records, new Page.Token(columns.length == 2 ? componentValue(last, columns[0]) : null, key));
+	}
+	
+	/**
+	 * Reads a component of a record.
+	 * @param record Record.
+	 * @param name Component name.
+	 * @return Component value.
+	 */
+	private Object componentValue(R record, String name) {
+		for (RecordComponent component : this.record.getRecordComponents()) {
+			if (component.getName().equals(name)) {
+				component.getAccessor().trySetAccessible(); // Record might not be public
+				try {
+					return component.getAccessor().invoke(record);
+				} catch (IllegalAccessException | InvocationTargetException e) {
+					throw new IllegalStateException("cannot read " + name + " of " + record, e);
+				}
+			}
+		}
+		throw new IllegalArgumentException(this.record.getName() + " has no component " + name
+				+ ", which is needed for pagination");
+	}
+	
+	/**
+	 * Sets how many rows the JDBC driver should fetch from database at once.
+	 * This is mainly useful with {@link #stream()} and
+	 * {@link #forEach(Consumer)}, as some drivers load all rows to memory
+	 * unless fetch size is set.
+	 * @param rows Number of rows to fetch at once, or 0 for driver default.
+	 * @return This builder.
+	 */
+	public SelectBuilder<R> fetchSize(int rows) {
+		if (rows < 0) {
+			throw new IllegalArgumentException("negative fetch size " + rows);
+		}
+		this.fetchSize = rows;
+		return this;
+	}
+	
+	/**
+	 * Caches results of this query. Until they expire, same query with same
+	 * parameters returns the cached results without querying database.
+	 * Inserting to any table that the query reads through Recorder removes
+	 * cached results, but changes made by others are only seen after the
+	 * results expire.
+	 * 
+	 * <p>This affects only {@link #first()} and {@link #all()}. Lists
+	 * returned by the latter are not modifiable when caching is enabled.
+	 * @param ttl How long results are cached.
+	 * @return This builder.
+	 */
+	public SelectBuilder<R> cached(Duration ttl) {
+		if (ttl.isNegative() || ttl.isZero()) {
+			throw new IllegalArgumentException("cache duration must be positive, got " + ttl);
+		}
+		this.cacheTtl = ttl.toNanos();
 		return this;
 	}
 	
@@ -171,9 +426,47 @@ public class SelectBuilder<R extends Record> {
 	 * @return Query.
 	 */
 	private CachedQuery computeQuery(SqlAdapter adapter, SelectBuilder<R> unused) {
-		String[] columns = null; // TODO how to get correct table source here?
+		if (fetches != null) {
+			return computeJoinQuery(adapter);
+		}
+		
+		// Mapper reads all columns of record, in order they are in table
+		Column[] recordColumns = helper.getTable(record).columns();
+		String[] columns = new String[recordColumns.length];
+		for (int i = 0; i < recordColumns.length; i++) {
+			columns[i] = recordColumns[i].name();
+		}
+		if (record != table) { // Projection can only use columns that table has
+			Column[] tableColumns = helper.getTable(table).columns();
+			for (Column column : recordColumns) {
+				Column source = Arrays.stream(tableColumns)
+						.filter(c -> c.name().equals(column.name()))
+						.findAny().orElseThrow(() -> new IllegalArgumentException("projection " + record.getName()
+								+ " has column " + column.name() + ", but " + table.getName() + " does not"));
+				if (!source.type().equals(column.type())) { // Mapper would fail to read it
+					throw new IllegalArgumentException("column " + column.name() + " is " + column.type().name()
+							+ " in projection " + record.getName() + ", but " + source.type().name() + " in "
+							+ table.getName());
+				}
+			}
+		}
+		
+		String[] tableNames = tableNames();
+		
+		// Process our conditions (and figure out parameters for them)
+		List<Integer> paramIndices = new ArrayList<>(); // TODO avoid boxing?
+		Condition[] cond = computeConditions("", paramIndices);
 		
-		// Figure out table names depending on how tables have been specified
+		// Let adapter for current database generate SQL for us
+		String sql = orderAndLimit(adapter, adapter.select(columns, tableNames, cond), "");
+		return new CachedQuery(sql, paramIndices.stream().mapToInt(i -> i).toArray());
+	}
+	
+	/**
+	 * Figures out table names depending on how tables have been specified.
+	 * @return Names of tables in FROM.
+	 */
+	private String[] tableNames() {
 		String[] tableNames;
 		if (tables instanceof String[] names) {
 			tableNames = names;
@@ -193,86 +486,760 @@ public class SelectBuilder<R extends Record> {
 		} else {
 			throw new AssertionError("unknown tables type " + tables);
 		}
+		return tableNames;
+	}
+	
+	/**
+	 * Gets names of all tables that this query reads.
+	 * @return Table names.
+	 */
+	private Set<String> sourceTables() {
+		Set<String> names = new HashSet<>(Arrays.asList(tableNames()));
+		if (fetches != null) {
+			Set<String> fetched = fetchedComponents();
+			for (Column column : helper.getTable(table).columns()) {
+				if (fetched.contains(column.name())) {
+					names.add(column.foreignTable().name());
+				}
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Gets values of parameters of given query.
+	 * @param query Query of this builder.
+	 * @return Parameter values.
+	 */
+	private Object[] parameterValues(CachedQuery query) {
+		List<Object> values = new ArrayList<>();
+		for (int index : query.parameterSources()) {
+			if (conditions[index] instanceof InList list) {
+				if (list.arrayType() != null) {
+					values.add(Arrays.asList(list.values())); // Array parameter, compare by contents
+				} else {
+					values.addAll(Arrays.asList(list.values()));
+				}
+			} else {
+				values.add(conditions[index]);
+			}
+		}
+		values.addAll(Arrays.asList(trailingParameters()));
+		return values.toArray();
+	}
+	
+	/**
+	 * Computes a cacheable query that join fetches {@link #fetches}.
+	 * Columns of main table come first, followed by columns of each fetched
+	 * table in order their foreign keys are in main table.
+	 * @param adapter Database-specific SQL generator.
+	 * @return Query.
+	 */
+	private CachedQuery computeJoinQuery(SqlAdapter adapter) {
+		if (tables != table) {
+			throw new IllegalStateException("join fetch cannot be used with custom FROM");
+		}
+		Table main = helper.getTable(table);
+		Set<String> fetched = fetchedComponents();
+		List<String> columns = new ArrayList<>();
+		for (Column column : main.columns()) {
+			columns.add("t0." + column.name());
+		}
+		List<Join> joins = new ArrayList<>();
+		for (Column column : main.columns()) {
+			if (fetched.contains(column.name())) {
+				Table foreign = column.foreignTable();
+				if (foreign == null || foreign.primaryKey() == null) {
+					throw new IllegalArgumentException(column.name() + " is not a foreign key");
+				}
+				String alias = "t" + (joins.size() + 1);
+				for (Column foreignColumn : foreign.columns()) {
+					columns.add(alias + "." + foreignColumn.name());
+				}
+				joins.add(new Join(foreign.name(), alias, new Condition(Value.column("t0." + column.name()),
+						Condition.Type.EQUAL, Value.column(alias + "." + foreign.primaryKey().name()))));
+			}
+		}
 		
-		// Process our conditions (and figure out parameters for them)
-		Condition[] cond = new Condition[conditions.length / 3];
-		List<Integer> paramIndices = new ArrayList<>(); // TODO avoid boxing?
-		for (int i = 0; i < conditions.length; i += 3) {
+		List<Integer> paramIndices = new ArrayList<>();
+		Condition[] cond = computeConditions("t0.", paramIndices);
+		String sql = orderAndLimit(adapter, adapter.select(columns.toArray(String[]::new), main.name(), "t0",
+				joins.toArray(Join[]::new), cond), "t0.");
+		return new CachedQuery(sql, paramIndices.stream().mapToInt(i -> i).toArray());
+	}
+	
+	/**
+	 * Creates SQL conditions from {@link #conditions}.
+	 * @param qualifier Prefix for column names, e.g. table alias.
+	 * @param paramIndices Where indices of parameter values are added.
+	 * @return Conditions.
+	 */
+	private Condition[] computeConditions(String qualifier, List<Integer> paramIndices) {
+		Condition[] cond = new Condition[conditionCount / 3 + (after != null ? 1 : 0) + rangeBounds()];
+		for (int i = 0; i < conditionCount; i += 3) {
 			// By convention, LHS in always column reference in Recorder
 			// TODO annotation support to rename database field (in ComponentLambda or here?)
-			Value lhs = new Value(((ComponentLambda<?, ?>) conditions[i]).lookupComponent().name());
+			Value lhs = new Value(qualifier + ((ComponentLambda<?, ?>) conditions[i]).lookupComponent().name());
 			Condition.Type type = (Condition.Type) conditions[i + 1]; // Condition type is same
 			
 			// RHS can be either column reference or (parameter) value
 			Value rhs;
 			if (conditions[i + 2] instanceof ComponentLambda<?, ?> l) {
-				rhs = new Value(l.lookupComponent().name()); // Column reference, works same as LHS
+				rhs = new Value(qualifier + l.lookupComponent().name()); // Column reference, works same as LHS
+			} else if (conditions[i + 2] instanceof InList list) {
+				paramIndices.add(i + 2); // Expands to all values of list
+				cond[i / 3] = list.condition(lhs);
+				continue;
 			} else {
 				rhs = Value.param(); // PreparedStatement parameter for WHERE
-				paramIndices.add(i); // Usage: stmt.setObject(i + 1, conditions[indices[i])
+				paramIndices.add(i + 2); // Usage: stmt.setObject(i + 1, conditions[indices[i]])
 				
 			}
 			cond[i / 3] = new Condition(lhs, type, rhs);
 		}
-		
-		// Let adapter for current database generate SQL for us
-		String sql = adapter.select(columns, tableNames, cond);
-		return new CachedQuery(sql, paramIndices.stream().mapToInt(i -> i).toArray());
+		if (after != null) { // Seek to start of page; parameters are set after condition parameters
+			String[] columns = orderColumns(qualifier);
+			Value lhs = columns.length == 1 ? Value.column(columns[0])
+					: Value.column("(" + String.join(",", columns) + ")");
+			Condition.Type type = order == Order.DESC ? Condition.Type.LESS : Condition.Type.GREATER;
+			cond[conditionCount / 3] = new Condition(lhs, type, columns.length == 1 ? Value.param() : Value.params(2));
+		}
+		if (range != null) { // Partition of parallel scan, parameters come after seek
+			Value pk = Value.column(qualifier + primaryKey().name());
+			int index = cond.length - rangeBounds();
+			if (range[0] != null) {
+				cond[index++] = new Condition(pk, Condition.Type.GREATER_OR_EQUAL, Value.param());
+			}
+			if (range[1] != null) {
+				cond[index] = new Condition(pk, Condition.Type.LESS, Value.param());
+			}
+		}
+		return cond;
+	}
+	
+	/**
+	 * Gets columns that this query is ordered by.
+	 * @param qualifier Prefix for column names, e.g. table alias.
+	 * @return Column names, or empty array if query is not ordered.
+	 */
+	private String[] orderColumns(String qualifier) {
+		String column = orderColumn != null ? orderColumn.lookupComponent().name() : null;
+		if (!paged) {
+			return column != null ? new String[] {qualifier + column} : new String[0];
+		}
+		Column pk = primaryKey();
+		if (column == null || column.equals(pk.name())) {
+			return new String[] {qualifier + pk.name()};
+		}
+		return new String[] {qualifier + column, qualifier + pk.name()};
+	}
+	
+	/**
+	 * Gets primary key of table that this query selects from.
+	 * @return Primary key column.
+	 * @throws IllegalStateException When the table has no primary key.
+	 */
+	private Column primaryKey() {
+		Column pk = helper.getTable(table).primaryKey();
+		if (pk == null) {
+			throw new IllegalStateException("pagination and partitioning need a primary key, but "
+					+ table.getName() + " has none");
+		}
+		return pk;
+	}
+	
+	/**
+	 * Gets which {@link #range} bounds are not open.
+	 * @return 0 if this is not a partition, otherwise bit 1 for lower
+	 * and bit 2 for upper bound, plus 4.
+	 */
+	private int rangeShape() {
+		if (range == null) {
+			return 0;
+		}
+		return 4 | (range[0] != null ? 1 : 0) | (range[1] != null ? 2 : 0);
+	}
+	
+	/**
+	 * Gets number of {@link #range} bounds that are not open.
+	 * @return 0, 1 or 2.
+	 */
+	private int rangeBounds() {
+		if (range == null) {
+			return 0;
+		}
+		return (range[0] != null ? 1 : 0) + (range[1] != null ? 1 : 0);
+	}
+	
+	/**
+	 * Appends ORDER BY and LIMIT to a query, if it has them.
+	 * @param adapter Database-specific SQL generator.
+	 * @param sql SELECT statement.
+	 * @param qualifier Prefix for column names, e.g. table alias.
+	 * @return SELECT statement.
+	 */
+	private String orderAndLimit(SqlAdapter adapter, String sql, String qualifier) {
+		String[] columns = orderColumns(qualifier);
+		if (columns.length == 0 && limit == -1) {
+			return sql;
+		}
+		return adapter.orderAndLimit(sql, columns, order == Order.DESC, limit != -1);
+	}
+	
+	/**
+	 * Gets values of parameters that come after condition parameters:
+	 * start of {@link #page(Page.Token, int) page}, followed by limit, or
+	 * bounds of {@link #range partition}.
+	 * @return Parameter values.
+	 */
+	private Object[] trailingParameters() {
+		if (range != null) { // Partitions have no pages or limits
+			List<Object> bounds = new ArrayList<>(2);
+			for (Object bound : range) {
+				if (bound != null) {
+					bounds.add(bound);
+				}
+			}
+			return bounds.toArray();
+		} else if (limit == -1) {
+			return NO_PARAMETERS;
+		} else if (after == null) {
+			return new Object[] {limit};
+		} else if (orderColumns("").length == 1) {
+			return new Object[] {after.key(), limit};
+		}
+		return new Object[] {after.orderValue(), after.key(), limit};
+	}
+	
+	/**
+	 * Gets names of components in {@link #fetches}.
+	 * @return Component names.
+	 */
+	private Set<String> fetchedComponents() {
+		Set<String> names = new HashSet<>();
+		for (ComponentLambda<?, ?> fetch : fetches) {
+			names.add(fetch.lookupComponent().name());
+		}
+		return names;
+	}
+	
+	/**
+	 * Gets a record mapper for this query.
+	 * @return Mapper that join fetches if needed.
+	 */
+	private RecordMapper<R> mapper() {
+		if (fetches == null) {
+			return helper.mapper();
+		}
+		return helper.mapper(new FetchPlan(record, fetchedComponents()));
+	}
+	
+	/**
+	 * Gets SQL of this query. It is generated if it is not in query cache
+	 * already, but the query is not executed.
+	 * @return SQL string.
+	 */
+	public String sql() {
+		return helper.getQuery(this, this::computeQuery).sql();
 	}
 	
 	public PreparedStatement prepareStatement() throws SQLException {
-		CachedQuery cached = helper.getQuery(this, this::computeQuery);
-		PreparedStatement stmt = helper.prepareStatement(cached.sql());
+		return prepareStatement(helper.getQuery(this, this::computeQuery));
+	}
+	
+	private PreparedStatement prepareStatement(CachedQuery cached) throws SQLException {
+		PreparedStatement stmt = helper.prepareStatement(cached);
 		
 		// Apply condition parameters
-		int[] indices = cached.parameterSources();
-		for (int i = 0; i < indices.length; i++) {
-			stmt.setObject(i + 1, conditions[indices[i]]);
+		int param = 1;
+		for (int index : cached.parameterSources()) {
+			if (conditions[index] instanceof InList list) {
+				param = list.setParameters(stmt, param);
+			} else {
+				stmt.setObject(param++, conditions[index]);
+			}
+		}
+		for (Object value : trailingParameters()) {
+			stmt.setObject(param++, value);
 		}
+		stmt.setFetchSize(fetchSize); // Statement might be cached, so always set
 		
 		return stmt;
 	}
 	
-	private R mapRow(ResultSet row) {
-		return helper.mapper().read(row);
+	/**
+	 * Checks if this query looks up one record by its primary key and
+	 * nothing else, so that {@link EntityCache} can be used.
+	 * @return Primary key, or null if this is some other query.
+	 */
+	private Object primaryKeyLookup() {
+		if (conditionCount != 3 || conditions[1] != Condition.Type.EQUAL || conditions[2] instanceof ComponentLambda
+				|| record != table || tables != table || fetches != null || limit != -1) {
+			return null;
+		}
+		Column pk = helper.getTable(table).primaryKey();
+		if (pk == null || !pk.name().equals(((ComponentLambda<?, ?>) conditions[0]).lookupComponent().name())) {
+			return null;
+		}
+		return conditions[2];
 	}
 	
+	/**
+	 * Gets first record that this query returns. If entity cache is
+	 * enabled and this query only looks up a primary key, cached record
+	 * may be returned without querying the database.
+	 * @return First record, or empty if nothing was found.
+	 * @throws SQLException When executing the query fails.
+	 */
 	public Optional<R> first() throws SQLException {
-		if (limit == -1) { // No limit requested...
-			limit(1); // Fetch only one row, might improve performance
+		return first(null);
+	}
+	
+	/**
+	 * Gets first record that this query returns.
+	 * @param query Query from {@link #firstQuery()}, or null to get it now.
+	 * @return First record, or empty if nothing was found.
+	 * @throws SQLException When executing the query fails.
+	 */
+	private Optional<R> first(CachedQuery query) throws SQLException {
+		EntityCache entities = helper.cachesResults() ? helper.entityCache() : null;
+		Object id = entities != null ? primaryKeyLookup() : null;
+		if (id != null) {
+			R cached = record.cast(entities.get(JavaType.of(record), id));
+			if (cached != null) {
+				helper.close();
+				return Optional.of(cached);
+			}
 		}
-		try (PreparedStatement stmt = prepareStatement()) {
-			try (ResultSet results = stmt.executeQuery()) {
-				if (results.next()) {
-					return Optional.of(mapRow(results));
-				} else {
-					return Optional.empty();
+		
+		try {
+			if (query == null) {
+				query = firstQuery();
+			}
+			ResultCache cache = cacheTtl != 0 && helper.cachesResults() ? helper.resultCache() : null;
+			Object[] params = null;
+			long invalidations = 0;
+			if (cache != null) {
+				params = parameterValues(query);
+				List<?> cached = cache.get(query.sql(), params);
+				if (cached != null) {
+					return cached.isEmpty() ? Optional.empty() : Optional.of(record.cast(cached.get(0)));
+				}
+				invalidations = cache.invalidations();
+			}
+			
+			PreparedStatement stmt = prepareStatement(query);
+			try (ResultSet results = helper.executeQuery(query, stmt)) {
+				List<R> found = new ArrayList<>(1);
+				helper.readRows(query, results, row -> {
+					found.add(mapper().read(row, helper.foreignBatch()));
+					return false; // Only first row is needed
+				});
+				Optional<R> result = found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+				if (id != null && result.isPresent()) {
+					entities.put(JavaType.of(record), id, result.get());
+				}
+				if (cache != null) {
+					cache.put(query.sql(), params, result.map(List::of).orElse(List.of()), sourceTables(),
+							cacheTtl, invalidations);
 				}
+				return result;
+			} finally {
+				helper.releaseStatement(query, stmt);
 			}
 		} finally {
 			helper.close();
 		}
 	}
 	
+	/**
+	 * Gets the query that {@link #first()} executes.
+	 * @return Cached query.
+	 */
+	private CachedQuery firstQuery() {
+		if (limit == -1) { // No limit requested...
+			limit(1); // Fetch only one row, might improve performance
+		}
+		return helper.getQuery(this, this::computeQuery);
+	}
+	
 	public List<R> all() throws SQLException {
-		try (PreparedStatement stmt = prepareStatement()) {
-			try (ResultSet results = stmt.executeQuery()) {
+		return all(null);
+	}
+	
+	/**
+	 * Gets all records that this query returns.
+	 * @param query Query, or null to get it now.
+	 * @return Records.
+	 * @throws SQLException When executing the query fails.
+	 */
+	private List<R> all(CachedQuery query) throws SQLException {
+		try {
+			if (query == null) {
+				query = helper.getQuery(this, this::computeQuery);
+			}
+			ResultCache cache = cacheTtl != 0 && helper.cachesResults() ? helper.resultCache() : null;
+			Object[] params = null;
+			long invalidations = 0;
+			if (cache != null) {
+				params = parameterValues(query);
+				@SuppressWarnings("unchecked") // Same SQL, so same record type
+				List<R> cached = (List<R>) cache.get(query.sql(), params);
+				if (cached != null) {
+					return cached;
+				}
+				invalidations = cache.invalidations();
+			}
+			
+			PreparedStatement stmt = prepareStatement(query);
+			try (ResultSet results = helper.executeQuery(query, stmt)) {
+				RecordMapper<R> mapper = mapper();
+				ForeignBatch batch = helper.foreignBatch(); // Shared by all rows
 				List<R> list = new ArrayList<>();
-				while (results.next()) {
-					list.add(mapRow(results));
+				helper.readRows(query, results, row -> list.add(mapper.read(row, batch)));
+				if (cache != null) {
+					List<R> cached = Collections.unmodifiableList(list);
+					cache.put(query.sql(), params, cached, sourceTables(), cacheTtl, invalidations);
+					return cached;
 				}
 				return list;
+			} finally {
+				helper.releaseStatement(query, stmt);
+			}
+		} finally {
+			helper.close();
+		}
+	}
+	
+	/**
+	 * Executes {@link #first()} asynchronously.
+	 * @return Future that completes with first record, or exceptionally
+	 * with {@link SQLException} if the query fails.
+	 * @see #allAsync()
+	 */
+	public CompletableFuture<Optional<R>> firstAsync() {
+		CachedQuery query;
+		try {
+			// Query cache might not be thread-safe, so get query now
+			query = firstQuery();
+		} catch (RuntimeException e) {
+			closeQuietly(e);
+			return CompletableFuture.failedFuture(e);
+		}
+		return async(() -> first(query));
+	}
+	
+	/**
+	 * Executes {@link #all()} asynchronously, on executor given to
+	 * Recorder. This builder should not be used after calling this.
+	 * 
+	 * <p>If the future is cancelled before the query starts, its connection
+	 * is closed and the query is never executed. If it is cancelled while
+	 * the query is running, the query runs to completion and the connection
+	 * is closed after it, but its results are discarded.
+	 * @return Future that completes with all records, or exceptionally
+	 * with {@link SQLException} if the query fails.
+	 */
+	public CompletableFuture<List<R>> allAsync() {
+		CachedQuery query;
+		try {
+			// Query cache might not be thread-safe, so get query now
+			query = helper.getQuery(this, this::computeQuery);
+		} catch (RuntimeException e) {
+			closeQuietly(e);
+			return CompletableFuture.failedFuture(e);
+		}
+		return async(() -> all(query));
+	}
+	
+	/**
+	 * A query that can throw {@link SQLException}.
+	 *
+	 * @param <T> Result type.
+	 */
+	@FunctionalInterface
+	private interface SqlSupplier<T> {
+		T get() throws SQLException;
+	}
+	
+	private <T> CompletableFuture<T> async(SqlSupplier<T> query) {
+		Executor executor = helper.executor();
+		if (executor == null) {
+			throw new IllegalStateException("asynchronous queries are not supported");
+		}
+		CompletableFuture<T> future = new CompletableFuture<>();
+		AtomicBoolean started = new AtomicBoolean(); // Whoever sets this closes the helper
+		try {
+			executor.execute(() -> {
+				if (!started.compareAndSet(false, true)) {
+					return; // Cancelled before we got to run
+				}
+				try {
+					future.complete(query.get()); // Closes helper
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			started.set(true);
+			closeQuietly(e);
+			future.completeExceptionally(e);
+			return future;
+		}
+		future.whenComplete((result, e) -> {
+			if (future.isCancelled() && started.compareAndSet(false, true)) {
+				closeQuietly(null); // Query will never run, release connection now
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Closes the query helper.
+	 * @param cause Exception that caused this, or null. Exceptions from
+	 * closing are added to it as suppressed.
+	 */
+	private void closeQuietly(Throwable cause) {
+		try {
+			helper.close();
+		} catch (SQLException e) {
+			if (cause != null) {
+				cause.addSuppressed(e);
+			}
+		}
+	}
+	
+	/**
+	 * Executes this query and lazily maps its results to records. Only the
+	 * rows that the driver has fetched (see {@link #fetchSize(int)}) are kept
+	 * in memory at once.
+	 * 
+	 * <p>The returned stream holds a database connection until it has been
+	 * fully consumed or {@link Stream#close() closed}, so it should be used
+	 * in a try-with-resources block. SQL errors that occur while consuming
+	 * it are thrown as {@link UncheckedSQLException}s.
+	 * @return Stream of results.
+	 * @throws SQLException When executing the query fails.
+	 */
+	public Stream<R> stream() throws SQLException {
+		ResultSpliterator<R> results = open(null);
+		return StreamSupport.stream(results, false).onClose(results::close);
+	}
+	
+	/**
+	 * Executes this query for a {@link ResultSpliterator}. If this fails,
+	 * the query helper is closed.
+	 * @param query Query of this builder, or null to get it from query cache.
+	 * @return Open results.
+	 * @throws SQLException When executing the query fails.
+	 */
+	private ResultSpliterator<R> open(CachedQuery query) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			if (query == null) {
+				query = helper.getQuery(this, this::computeQuery);
+			}
+			stmt = prepareStatement(query);
+			return new ResultSpliterator<>(helper, query, stmt, helper.executeQuery(query, stmt), mapper());
+		} catch (SQLException | RuntimeException e) {
+			// Spliterator was not created, so nothing else will release these
+			if (stmt != null) {
+				helper.releaseStatement(query, stmt);
+			}
+			helper.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Executes this query in parallel on multiple connections. Rows are
+	 * split to partitions by ranges of primary key, which must be numeric.
+	 * Its minimum and maximum are queried first, and the range between them
+	 * is split evenly, so partitions can have very different sizes if keys
+	 * are not evenly distributed. This builder should not be used after
+	 * calling this.
+	 * @param partitions Maximum number of partitions.
+	 * @return Parallel stream of results.
+	 * @throws SQLException When querying primary key range fails.
+	 * @see #parallelStream(List)
+	 */
+	public Stream<R> parallelStream(int partitions) throws SQLException {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("need at least one partition, got " + partitions);
+		}
+		List<Object> splitPoints;
+		try {
+			splitPoints = splitPoints(partitions);
+		} catch (SQLException | RuntimeException e) {
+			helper.close();
+			throw e;
+		}
+		return parallelStream(splitPoints);
+	}
+	
+	/**
+	 * Executes this query in parallel on multiple connections. Rows are
+	 * split to partitions by ranges of primary key: first partition has
+	 * keys before first split point, second from it to the next split point,
+	 * and so on. This builder should not be used after calling this.
+	 * 
+	 * <p>Each partition runs on a new connection from data source, even in
+	 * a session or transaction, so changes that have not been committed are
+	 * not seen. Connections are opened when threads of the stream start
+	 * reading partitions, and closed once they are done, so at most as
+	 * many connections are open at once as there are threads. Rows are
+	 * read lazily as with {@link #stream()}.
+	 * 
+	 * <p>Partitions are in primary key order, but within a partition,
+	 * rows are only ordered if {@link #orderBy(ComponentLambda, Order)}
+	 * was used. Pages and limits cannot be used. The returned stream should
+	 * be used in a try-with-resources block, so that partitions that a
+	 * short-circuiting operation did not consume are closed. SQL errors that
+	 * occur while consuming it are thrown as {@link UncheckedSQLException}s.
+	 * @param splitPoints Primary keys where partitions start, in ascending
+	 * order.
+	 * @return Parallel stream of results.
+	 * @throws SQLException When generating queries fails.
+	 */
+	public Stream<R> parallelStream(List<?> splitPoints) throws SQLException {
+		List<SelectBuilder<R>> partitions = new ArrayList<>(splitPoints.size() + 1);
+		List<CachedQuery> queries = new ArrayList<>(splitPoints.size() + 1);
+		try (helper) { // Partitions use their own connections
+			if (limit != -1) {
+				throw new IllegalStateException("parallel scans cannot have limits");
+			}
+			primaryKey(); // Fail early if there is none
+			for (int i = 0; i <= splitPoints.size(); i++) {
+				SelectBuilder<R> partition = new SelectBuilder<>(helper, record, this);
+				Object[] range = {i > 0 ? splitPoints.get(i - 1) : null, i < splitPoints.size() ? splitPoints.get(i) : null};
+				if (range[0] != null || range[1] != null) {
+					partition.range = range;
+					partition.cachedHash = 31 * partition.cachedHash + partition.rangeShape();
+				}
+				partitions.add(partition);
+				// Query cache might not be thread-safe, so get queries now
+				queries.add(helper.getQuery(partition, partition::computeQuery));
+			}
+		}
+		PartitionSpliterator<R> results = new PartitionSpliterator<>(index -> {
+			SelectBuilder<R> partition = partitions.get(index);
+			return new SelectBuilder<>(helper.withNewConnection(), record, partition).open(queries.get(index));
+		}, partitions.size());
+		return StreamSupport.stream(results, true).onClose(results::close);
+	}
+	
+	/**
+	 * Queries primary key range of this query and splits it evenly.
+	 * @param partitions Maximum number of partitions.
+	 * @return Split points, in ascending order. There are fewer of them
+	 * than partitions if range has fewer keys, and none if there are no rows.
+	 * @throws SQLException When querying range fails.
+	 */
+	private List<Object> splitPoints(int partitions) throws SQLException {
+		if (limit != -1) {
+			throw new IllegalStateException("parallel scans cannot have limits");
+		} else if (partitions == 1) {
+			return List.of();
+		}
+		String pk = primaryKey().name();
+		List<Integer> paramIndices = new ArrayList<>();
+		String sql = helper.adapter().select(new String[] {"MIN(" + pk + ")", "MAX(" + pk + ")"}, tableNames(),
+				computeConditions("", paramIndices));
+		CachedQuery query = new CachedQuery(sql, paramIndices.stream().mapToInt(i -> i).toArray());
+		Object min;
+		Object max;
+		PreparedStatement stmt = prepareStatement(query);
+		try (ResultSet results = helper.executeQuery(query, stmt)) {
+			if (!results.next()) {
+				return List.of();
+			}
+			min = results.getObject(1);
+			max = results.getObject(2);
+		} finally {
+			helper.releaseStatement(query, stmt);
+		}
+		if (min == null) {
+			return List.of(); // No rows
+		} else if (!(min instanceof Number) || min instanceof Double || min instanceof Float) {
+			throw new IllegalStateException("cannot split non-integer primary key " + pk + ", give split points instead");
+		}
+		long low = ((Number) min).longValue();
+		long high = ((Number) max).longValue();
+		double step = ((double) high - low + 1) / partitions; // Not exact for huge keys, but that is fine
+		List<Object> points = new ArrayList<>(partitions - 1);
+		long previous = low;
+		for (int i = 1; i < partitions; i++) {
+			long point = low + (long) (step * i);
+			if (point > previous && point <= high) {
+				points.add(min instanceof Integer ? (Object) (int) point : (Object) point);
+				previous = point;
+			}
+		}
+		return points;
+	}
+	
+	/**
+	 * Executes this query and reads the results to columns, without
+	 * creating records. Primitive components are stored in primitive arrays,
+	 * strings are dictionary encoded and foreign keys are stored as their
+	 * keys. This is meant for aggregating large results; it does not use
+	 * result cache and cannot join fetch. This builder should not be used
+	 * after calling this.
+	 * @return Column batch of results.
+	 * @throws SQLException When executing the query fails.
+	 */
+	public ColumnBatch<R> columns() throws SQLException {
+		if (fetches != null) {
+			throw new IllegalStateException("column batches cannot join fetch");
+		}
+		try {
+			CachedQuery query = helper.getQuery(this, this::computeQuery);
+			PreparedStatement stmt = prepareStatement(query);
+			try (ResultSet results = helper.executeQuery(query, stmt)) {
+				ColumnBatch.Reader<R> reader = new ColumnBatch.Reader<>(record, helper.getTable(record).columns(),
+						fetchSize); // Grows as needed
+				helper.readRows(query, results, reader);
+				return reader.batch();
+			} finally {
+				helper.releaseStatement(query, stmt);
 			}
 		} finally {
 			helper.close();
 		}
 	}
 	
-	// TODO stream-based API
+	/**
+	 * Executes this query and passes the results to given action one by one,
+	 * without collecting them to a list first.
+	 * @param action Action to call for each record.
+	 * @throws SQLException When executing the query fails.
+	 */
+	public void forEach(Consumer<? super R> action) throws SQLException {
+		try {
+			CachedQuery query = helper.getQuery(this, this::computeQuery);
+			PreparedStatement stmt = prepareStatement(query);
+			try (ResultSet results = helper.executeQuery(query, stmt)) {
+				RecordMapper<R> mapper = mapper();
+				ForeignBatch batch = helper.foreignBatch(); // Shared by all rows
+				while (results.next()) {
+					action.accept(mapper.read(results, batch));
+				}
+			} finally {
+				helper.releaseStatement(query, stmt);
+			}
+		} finally {
+			helper.close();
+		}
+	}
 	
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof SelectBuilder<?> b) {
+			// Projection changes selected columns
+			if (record != b.record) {
+				return false;
+			}
+			
 			// Compare FROM tables
 			if (tables instanceof Object[] ourTable) {
 				if (b.tables instanceof Object[] theirTable) {
@@ -307,6 +1274,11 @@ public class SelectBuilder<R extends Record> {
 				}
 			}
 			
+			// Compare join fetches
+			if (!Arrays.equals(fetches, b.fetches)) {
+				return false;
+			}
+			
 			// Compare conditions
 			if (conditionCount != b.conditionCount) {
 				return false; // Different number of them
@@ -315,7 +1287,8 @@ public class SelectBuilder<R extends Record> {
 			Object[] our = conditions;
 			Object[] their = b.conditions;
 			for (int i = 0; i < count; i++) {
-				if (our[i] != their[i]) {
+				if (our[i] != their[i] && !(our[i] instanceof InList ourList && their[i] instanceof InList theirList
+						&& ourList.sameShape(theirList))) {
 					return false; // Conditions might not be the same
 				}
 			}
@@ -325,8 +1298,18 @@ public class SelectBuilder<R extends Record> {
 				return false; // Different order column or order
 			}
 			
-			// And limit, too
-			if (limit != b.limit) {
+			// And whether there is a limit (its value is a parameter)
+			if ((limit == -1) != (b.limit == -1)) {
+				return false;
+			}
+			
+			// Pages are ordered by primary key, and later ones have seek condition
+			if (paged != b.paged || (after == null) != (b.after == null)) {
+				return false;
+			}
+			
+			// Partitions have conditions for bounds that are not open
+			if (rangeShape() != b.rangeShape()) {
 				return false;
 			}
 			
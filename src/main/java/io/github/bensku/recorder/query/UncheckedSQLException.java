@@ -0,0 +1,22 @@
+package io.github.bensku.recorder.query;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps an {@link SQLException} that occurred where checked exceptions
+ * cannot be thrown, e.g. while consuming a {@link java.util.stream.Stream}.
+ *
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UncheckedSQLException(SQLException cause) {
+		super(cause);
+	}
+
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+}
@@ -0,0 +1,21 @@
+package io.github.bensku.recorder.query.mapper;
+
+import java.util.Set;
+
+/**
+ * Describes a record mapper that reads records of some foreign keys from
+ * the same row as the main record (i.e. join fetches them).
+ *
+ */
+public record FetchPlan(
+		
+		/**
+		 * Main record type.
+		 */
+		Class<? extends Record> record,
+		
+		/**
+		 * Names of foreign key components that are fetched.
+		 */
+		Set<String> components
+) {}
@@ -4,22 +4,33 @@ import java.lang.reflect.InvocationTargetException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
+import io.github.bensku.recorder.jfr.MapperGenerationEvent;
+import io.github.bensku.recorder.query.ForeignBatch;
+import io.github.bensku.recorder.record.Foreign;
 import io.github.bensku.recorder.sql.Column;
 import io.github.bensku.recorder.sql.JavaType;
 import io.github.bensku.recorder.sql.Table;
 
 public class MapperGenerator implements Opcodes {
 
-	private static final String READ_NAME, READ_DESC;
+	private static final String READ_NAME, READ_DESC, READ_BATCH_DESC;
 	private static final String WRITE_NAME, WRITE_DESC;
 
 	private static final String RESULT_SET, PREPARED_STATEMENT;
+	
+	private static final String FOREIGN_BATCH, REFERENCE_DESC, KEY_OF_DESC, FETCHED_DESC;
+	
+	private static final String FETCH_PREFIX = "fetch$", FETCH_DESC;
 
 	private static final String BOOLEAN_GET, BOOLEAN_SET;
 	private static final String BYTE_GET, BYTE_SET;
@@ -37,10 +48,17 @@ public class MapperGenerator implements Opcodes {
 
 		try {
 			READ_DESC = Type.getMethodDescriptor(RecordMapper.class.getDeclaredMethod(READ_NAME, ResultSet.class));
-			WRITE_DESC = Type.getMethodDescriptor(RecordMapper.class.getDeclaredMethod(WRITE_NAME, PreparedStatement.class, Record.class));
+			READ_BATCH_DESC = Type.getMethodDescriptor(RecordMapper.class.getDeclaredMethod(READ_NAME, ResultSet.class, ForeignBatch.class));
+			WRITE_DESC = Type.getMethodDescriptor(RecordMapper.class.getDeclaredMethod(WRITE_NAME, PreparedStatement.class, Record.class, int.class));
 
 			RESULT_SET = Type.getInternalName(ResultSet.class);
 			PREPARED_STATEMENT = Type.getInternalName(PreparedStatement.class);
+			
+			FOREIGN_BATCH = Type.getInternalName(ForeignBatch.class);
+			REFERENCE_DESC = Type.getMethodDescriptor(ForeignBatch.class.getDeclaredMethod("reference", ForeignBatch.class, Class.class, Object.class));
+			KEY_OF_DESC = Type.getMethodDescriptor(ForeignBatch.class.getDeclaredMethod("keyOf", Foreign.class));
+			FETCHED_DESC = Type.getMethodDescriptor(ForeignBatch.class.getDeclaredMethod("fetched", Class.class, Object.class, Record.class));
+			FETCH_DESC = Type.getMethodDescriptor(Type.getType(Foreign.class), Type.getType(ResultSet.class), Type.getType(ForeignBatch.class));
 
 			BOOLEAN_GET = Type.getMethodDescriptor(ResultSet.class.getDeclaredMethod("getBoolean", int.class));
 			BOOLEAN_SET = Type.getMethodDescriptor(PreparedStatement.class.getDeclaredMethod("setBoolean", int.class, boolean.class));
@@ -81,33 +99,123 @@ public class MapperGenerator implements Opcodes {
 
 	/**
 	 * Creates a record mapper by generating and loading JVM bytecode.
+	 * The record class is loaded with context class loader of current
+	 * thread, or class loader of Recorder if there is none.
 	 * @param type Java type.
 	 * @return A new record mapper.
 	 */
 	public RecordMapper<?> create(JavaType type) {
-		Table table = tableSource.get(type);
-		String name = type.internalName() + "$Mapper";
-		byte[] code = createMapper(name, table.columns(), table.record().internalName());
-
-		// Load class
-		// TODO once JDK 15 lands, use loadAnonymousClass
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if (loader == null) {
+			loader = MapperGenerator.class.getClassLoader();
+		}
 		try {
-			SingleClassLoader loader = new SingleClassLoader(code);
-			Class<?> clazz = loader.findClass(null);
-			return (RecordMapper<?>) clazz.getConstructor().newInstance();
-		} catch (IllegalAccessException | InstantiationException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+			return create(Class.forName(type.name(), false, loader).asSubclass(Record.class));
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("record class " + type.name() + " not found", e);
+		}
+	}
+	
+	/**
+	 * Creates a record mapper by generating and loading JVM bytecode.
+	 * The mapper is defined in lookup context of the record, so no class
+	 * loaders are created for it.
+	 * @param record Record class.
+	 * @return A new record mapper.
+	 */
+	public RecordMapper<?> create(Class<? extends Record> record) {
+		return create(new FetchPlan(record, Set.of()));
+	}
+	
+	/**
+	 * Creates a record mapper that also reads records that some of its
+	 * foreign keys refer to. Columns of those records must follow columns
+	 * of the main record in the same row, in order their foreign keys are
+	 * in the main table.
+	 * 
+	 * <p>If nothing is fetched and the record has a
+	 * {@link PrecompiledMapper precompiled mapper} that agrees with its
+	 * table, that is used instead of generating a new mapper.
+	 * @param plan Record type and foreign keys to fetch.
+	 * @return A new record mapper.
+	 */
+	public RecordMapper<?> create(FetchPlan plan) {
+		MapperGenerationEvent event = new MapperGenerationEvent();
+		event.begin();
+		JavaType type = JavaType.of(plan.record());
+		Table table = tableSource.get(plan.record());
+		for (String component : plan.components()) {
+			if (Arrays.stream(table.columns()).noneMatch(c -> c.name().equals(component) && c.foreignTable() != null)) {
+				throw new IllegalArgumentException(component + " is not a foreign key of " + type.name());
+			}
+		}
+		if (plan.components().isEmpty()) {
+			RecordMapper<?> precompiled = findPrecompiled(plan.record(), table);
+			if (precompiled != null) {
+				event.commit(plan.record());
+				return precompiled;
+			}
+		}
+		try {
+			String name = MapperLoader.mapperName(plan.record());
+			byte[] code = createMapper(name, table.columns(), table.record().internalName(), plan.components());
+			Class<?> clazz = MapperLoader.define(plan.record(), code);
+			RecordMapper<?> mapper = (RecordMapper<?>) clazz.getConstructor().newInstance();
+			event.commit(plan.record());
+			return mapper;
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("cannot define mapper for " + type.name()
+					+ " (is its package open to Recorder?)", e);
+		} catch (InstantiationException | InvocationTargetException | NoSuchMethodException e) {
 			throw new AssertionError("loading created mapper failed", e);
 		}
 	}
 
+	/**
+	 * Finds a mapper that was generated at compile time.
+	 * @param record Record class.
+	 * @param table Table of record.
+	 * @return Precompiled mapper, or null if the record does not have one
+	 * or it does not agree with the table.
+	 */
+	private RecordMapper<?> findPrecompiled(Class<? extends Record> record, Table table) {
+		String name = PrecompiledMapper.className(record.getName(), record.getPackageName());
+		PrecompiledMapper<?> mapper;
+		try {
+			Class<?> type = Class.forName(name, true, record.getClassLoader());
+			if (!PrecompiledMapper.class.isAssignableFrom(type)) {
+				return null; // Unrelated class that happens to have same name
+			}
+			mapper = (PrecompiledMapper<?>) type.getConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			return null; // Not generated
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("cannot load precompiled mapper " + name, e);
+		}
+		
+		// Table source might e.g. not consider primary key to be generated
+		List<String> columns = Arrays.stream(table.columns())
+				.map(Column::name)
+				.collect(Collectors.toList());
+		Set<String> generated = Arrays.stream(table.columns())
+				.filter(Column::generated)
+				.map(Column::name)
+				.collect(Collectors.toSet());
+		if (!mapper.columns().equals(columns) || !mapper.generatedColumns().equals(generated)) {
+			return null; // Generate one that agrees with table
+		}
+		return mapper;
+	}
+
 	/**
 	 * Creates record mapper bytecode.
 	 * @param name Name of record mapper class.
 	 * @param columns Columns to map.
 	 * @param recordType Internal name of record type.
+	 * @param fetch Names of foreign key columns to join fetch.
 	 * @return Bytecode of mapper.
 	 */
-	private byte[] createMapper(String name, Column[] columns, String recordType) {
+	private byte[] createMapper(String name, Column[] columns, String recordType, Set<String> fetch) {
 		ClassWriter cw = new ClassWriter(0);
 		// Ignoring generic signature, we COULD create one but don't need it
 		cw.visit(V14, ACC_PUBLIC, name, null, Type.getInternalName(Object.class),
@@ -122,28 +230,143 @@ public class MapperGenerator implements Opcodes {
 		mv.visitMaxs(1, 1);
 
 		// Add methods to read/write
-		createRead(cw, columns, recordType);
+		createRead(cw, name);
+		createRead(cw, name, columns, recordType, fetch);
 		createWrite(cw, columns, recordType);
+		
+		// Fetched records follow main record in same row
+		int offset = columns.length;
+		for (Column column : columns) {
+			if (fetch.contains(column.name())) {
+				createFetch(cw, name, column, offset);
+				offset += column.foreignTable().columns().length;
+			}
+		}
 
 		return cw.toByteArray();
 	}
 
-	private void createRead(ClassWriter cw, Column[] columns, String recordType) {
+	/**
+	 * Creates read method without foreign batch parameter. Foreign references
+	 * of records that it reads cannot be resolved.
+	 * @param cw Class writer.
+	 * @param name Internal name of mapper class.
+	 */
+	private void createRead(ClassWriter cw, String name) {
 		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, READ_NAME, READ_DESC, null, null);
 		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0); // this
+		mv.visitVarInsn(ALOAD, 1); // ResultSet
+		mv.visitInsn(ACONST_NULL); // No ForeignBatch
+		mv.visitMethodInsn(INVOKEVIRTUAL, name, READ_NAME, READ_BATCH_DESC, false);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(3, 2);
+		mv.visitEnd();
+	}
+	
+	private void createRead(ClassWriter cw, String name, Column[] columns, String recordType, Set<String> fetch) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, READ_NAME, READ_BATCH_DESC, null, null);
+		mv.visitCode();
+		int stack = emitRecord(mv, name, columns, recordType, 1, 2, 0, fetch);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(stack, 3);
+		mv.visitEnd();
+	}
+	
+	/**
+	 * Creates a static method that reads a join fetched record, and returns
+	 * a reference to it. If the record was not found, null is returned.
+	 * @param cw Class writer.
+	 * @param name Internal name of mapper class.
+	 * @param column Foreign key column in main table.
+	 * @param offset Number of columns before the fetched record.
+	 */
+	private void createFetch(ClassWriter cw, String name, Column column, int offset) {
+		MethodVisitor mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, FETCH_PREFIX + column.name(), FETCH_DESC, null, null);
+		mv.visitCode();
+		Table table = column.foreignTable();
+		Column[] columns = table.columns();
+		
+		// Read primary key from joined table; null means there was no row to join
+		int keyIndex = Arrays.asList(columns).indexOf(table.primaryKey());
+		if (keyIndex == -1) {
+			throw new IllegalArgumentException("foreign key " + column.name() + " does not refer to a primary key");
+		}
+		mv.visitVarInsn(ALOAD, 0); // ResultSet
+		mv.visitLdcInsn(offset + keyIndex + 1);
+		emitRead(mv, table.primaryKey().type().boxed());
+		mv.visitVarInsn(ASTORE, 2);
+		mv.visitVarInsn(ALOAD, 2);
+		Label found = new Label();
+		mv.visitJumpInsn(IFNONNULL, found);
+		mv.visitInsn(ACONST_NULL);
+		mv.visitInsn(ARETURN);
+		
+		// Construct record and wrap it to a reference
+		mv.visitLabel(found);
+		mv.visitFrame(F_APPEND, 1, new Object[] {"java/lang/Object"}, 0, null);
+		mv.visitLdcInsn(table.record().toAsmType());
+		mv.visitVarInsn(ALOAD, 2); // Key
+		int stack = emitRecord(mv, name, columns, table.record().internalName(), 0, 1, offset, Set.of());
+		mv.visitMethodInsn(INVOKESTATIC, FOREIGN_BATCH, "fetched", FETCHED_DESC, false);
+		mv.visitInsn(ARETURN);
 		
+		mv.visitMaxs(Math.max(3, stack + 2), 3);
+		mv.visitEnd();
+	}
+	
+	/**
+	 * Reads a record from current row and leaves it on top of stack.
+	 * @param mv Method visitor.
+	 * @param name Internal name of mapper class.
+	 * @param columns Columns of the record.
+	 * @param recordType Internal name of record type.
+	 * @param results Local variable that contains the result set.
+	 * @param batch Local variable that contains the foreign batch.
+	 * @param offset Number of columns before the record in row.
+	 * @param fetch Names of foreign key columns to join fetch.
+	 * @return Maximum stack size that this needs.
+	 */
+	private int emitRecord(MethodVisitor mv, String name, Column[] columns, String recordType,
+			int results, int batch, int offset, Set<String> fetch) {
 		// Create new record (do not instantiate yet)
 		mv.visitTypeInsn(NEW, recordType);
 		mv.visitInsn(DUP);
 
 		// Read ResultSet values to stack
-		int stack = 4;
+		int depth = 2;
+		int stack = 2;
 		for (int i = 0; i < columns.length; i++) {
-			mv.visitVarInsn(ALOAD, 1); // ResultSet
-			mv.visitLdcInsn(i); // Argument index
-
-			emitRead(mv, columns[i].type());
-			stack += columns[i].type().equals(JavaType.LONG) || columns[i].type().equals(JavaType.DOUBLE) ? 2 : 1;
+			JavaType type = columns[i].type();
+			if (fetch.contains(columns[i].name())) {
+				mv.visitVarInsn(ALOAD, results);
+				mv.visitVarInsn(ALOAD, batch);
+				mv.visitMethodInsn(INVOKESTATIC, name, FETCH_PREFIX + columns[i].name(), FETCH_DESC, false);
+				stack = Math.max(stack, depth + 2);
+				depth++;
+			} else if (type.equals(JavaType.FOREIGN)) {
+				Table foreign = columns[i].foreignTable();
+				if (foreign == null || foreign.primaryKey() == null) {
+					throw new IllegalArgumentException("foreign key " + columns[i].name() + " does not refer to a primary key");
+				}
+				assert !foreign.primaryKey().type().equals(JavaType.FOREIGN);
+				mv.visitVarInsn(ALOAD, batch); // ForeignBatch
+				mv.visitLdcInsn(foreign.record().toAsmType()); // Foreign record type
+				
+				// Read key as object, ForeignBatch needs it for its identity map
+				mv.visitVarInsn(ALOAD, results); // ResultSet
+				mv.visitLdcInsn(offset + i + 1); // Column index (JDBC starts from 1)
+				emitRead(mv, foreign.primaryKey().type().boxed());
+				mv.visitMethodInsn(INVOKESTATIC, FOREIGN_BATCH, "reference", REFERENCE_DESC, false);
+				stack = Math.max(stack, depth + 5);
+				depth++;
+			} else {
+				mv.visitVarInsn(ALOAD, results); // ResultSet
+				mv.visitLdcInsn(offset + i + 1); // Column index (JDBC starts from 1)
+				emitRead(mv, type);
+				stack = Math.max(stack, depth + 3);
+				depth += type.equals(JavaType.LONG) || type.equals(JavaType.DOUBLE) ? 2 : 1;
+			}
 		}
 				
 		// Call constructor with values from top of stack
@@ -153,20 +376,12 @@ public class MapperGenerator implements Opcodes {
 				.toArray(Type[]::new);
 		mv.visitMethodInsn(INVOKESPECIAL, recordType, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, arguments), false);
 		
-		// Take the original record reference (not DUP'd one) and return
-		mv.visitInsn(ARETURN);
-
-		mv.visitMaxs(stack, 4);
-		mv.visitEnd();
+		// The original record reference (not DUP'd one) is left to stack
+		return Math.max(stack, depth);
 	}
 	
 	private void emitRead(MethodVisitor mv, JavaType type) {
-		if (type.equals(JavaType.FOREIGN)) {
-			Table table = tableSource.get(type);
-			JavaType realType = table.primaryKey().type();
-			assert !realType.equals(JavaType.FOREIGN);
-			emitRead(mv, realType);
-		} else if (type.equals(JavaType.BOOLEAN)) {
+		if (type.equals(JavaType.BOOLEAN)) {
 			mv.visitMethodInsn(INVOKEINTERFACE, RESULT_SET, "getBoolean", BOOLEAN_GET, true);
 		} else if (type.equals(JavaType.BYTE)) {
 			mv.visitMethodInsn(INVOKEINTERFACE, RESULT_SET, "getByte", BYTE_GET, true);
@@ -193,13 +408,23 @@ public class MapperGenerator implements Opcodes {
 		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, WRITE_NAME, WRITE_DESC, null, null);
 		mv.visitCode();
 
+		// Cast record once, not once per component
+		mv.visitVarInsn(ALOAD, 2); // Record
+		mv.visitTypeInsn(CHECKCAST, recordType); // Generic method, (check) cast
+		mv.visitVarInsn(ASTORE, 4);
+		
+		int index = 1; // JDBC parameter indices start from 1
 		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].generated()) {
+				continue; // Database provides value for this
+			}
 			mv.visitVarInsn(ALOAD, 1); // PreparedStatement
-			mv.visitLdcInsn(i); // Argument index
+			mv.visitVarInsn(ILOAD, 3); // Parameter offset
+			mv.visitLdcInsn(index++);
+			mv.visitInsn(IADD); // Parameter index
 			
 			// Get component from record
-			mv.visitVarInsn(ALOAD, 2); // Record
-			mv.visitTypeInsn(CHECKCAST, recordType); // Generic method, (check) cast
+			mv.visitVarInsn(ALOAD, 4); // Record, already cast
 			mv.visitMethodInsn(INVOKEVIRTUAL, recordType, columns[i].name(),
 					Type.getMethodDescriptor(columns[i].type().toAsmType()), false);
 			
@@ -208,16 +433,14 @@ public class MapperGenerator implements Opcodes {
 		
 		mv.visitInsn(RETURN); // All methods must return
 
-		mv.visitMaxs(4, 3);
+		mv.visitMaxs(4, 5);
 		mv.visitEnd();
 	}
 	
 	private void emitWrite(MethodVisitor mv, JavaType type) {
 		if (type.equals(JavaType.FOREIGN)) {
-			Table table = tableSource.get(type);
-			JavaType realType = table.primaryKey().type();
-			assert !realType.equals(JavaType.FOREIGN);
-			emitWrite(mv, realType);
+			mv.visitMethodInsn(INVOKESTATIC, FOREIGN_BATCH, "keyOf", KEY_OF_DESC, false); // Write primary key
+			mv.visitMethodInsn(INVOKEINTERFACE, PREPARED_STATEMENT, "setObject", OBJECT_SET, true);
 		} else if (type.equals(JavaType.BOOLEAN)) {
 			mv.visitMethodInsn(INVOKEINTERFACE, PREPARED_STATEMENT, "setBoolean", BOOLEAN_SET, true);
 		} else if (type.equals(JavaType.BYTE)) {
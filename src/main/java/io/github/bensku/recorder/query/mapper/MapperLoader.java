@@ -0,0 +1,131 @@
+package io.github.bensku.recorder.query.mapper;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Defines generated mapper classes in lookup context of the records that
+ * they map. No class loaders are created for mappers.
+ * 
+ * <p>Mappers are normal classes in package of their record, so they live
+ * as long as the class loader of the record, and private records cannot
+ * be mapped. This is always the case with the current build, which
+ * targets JDK 14 with preview features: such class files only run on
+ * JDK 14, which has no hidden classes. Hidden classes are future-proofing
+ * until the build targets a newer JDK.
+ * 
+ * <p>Once the build targets JDK 15 or newer, mappers become hidden
+ * nestmates of their records without further changes. They can then be
+ * unloaded as soon as they are no longer used, and they can access private
+ * constructors of records. Records in other modules (including unnamed
+ * modules of other class loaders) still get normal classes.
+ */
+class MapperLoader {
+	
+	/**
+	 * {@code Lookup#defineHiddenClass(byte[], boolean, ClassOption...)},
+	 * or null if this JDK does not support hidden classes.
+	 */
+	private static final Method DEFINE_HIDDEN;
+	
+	/**
+	 * Options for hidden classes: an array that contains
+	 * {@code ClassOption.NESTMATE}.
+	 */
+	private static final Object HIDDEN_OPTIONS;
+	
+	static {
+		Method defineHidden;
+		Object options;
+		try {
+			// Reflection, because we're compiled for JDK 14 (where this always fails)
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			Class<? extends Enum> optionType = (Class<? extends Enum>) Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			options = Array.newInstance(optionType, 1);
+			@SuppressWarnings("unchecked")
+			Object nestmate = Enum.valueOf(optionType, "NESTMATE");
+			Array.set(options, 0, nestmate);
+			defineHidden = Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			defineHidden = null;
+			options = null;
+		}
+		DEFINE_HIDDEN = defineHidden;
+		HIDDEN_OPTIONS = options;
+	}
+	
+	/**
+	 * Used to generate unique names for mappers that are not hidden classes.
+	 */
+	private static final AtomicInteger mapperId = new AtomicInteger();
+	
+	/**
+	 * Gets a name for a new mapper. It must be in same package as the record.
+	 * @param record Record class.
+	 * @return Internal name for the mapper.
+	 * @throws IllegalAccessException When Recorder does not have access to
+	 * package of the record.
+	 */
+	public static String mapperName(Class<?> record) throws IllegalAccessException {
+		String name = record.getName().replace('.', '/') + "$Mapper";
+		if (canDefineHidden(lookup(record))) {
+			return name; // JVM makes names of hidden classes unique
+		}
+		return name + mapperId.getAndIncrement();
+	}
+	
+	private static Lookup lookup(Class<?> record) throws IllegalAccessException {
+		return MethodHandles.privateLookupIn(record, MethodHandles.lookup());
+	}
+	
+	/**
+	 * Checks if a hidden class can be defined with given lookup. Lookups
+	 * into other modules do not have full privilege access that is needed.
+	 * @param lookup Lookup.
+	 * @return Whether a hidden class can be defined.
+	 */
+	private static boolean canDefineHidden(Lookup lookup) {
+		return DEFINE_HIDDEN != null && lookup.hasFullPrivilegeAccess();
+	}
+	
+	/**
+	 * Defines a mapper class.
+	 * @param record Record class that the mapper is for.
+	 * @param code Bytecode of the mapper.
+	 * @return Mapper class.
+	 * @throws IllegalAccessException When Recorder does not have access to
+	 * package of the record. Packages of named modules must be opened to
+	 * Recorder for it to work.
+	 * @throws IllegalArgumentException When the record is private, and the
+	 * mapper cannot be a hidden class.
+	 */
+	public static Class<?> define(Class<?> record, byte[] code) throws IllegalAccessException {
+		Lookup lookup = lookup(record);
+		if (!canDefineHidden(lookup)) {
+			if (Modifier.isPrivate(record.getModifiers())) {
+				// Normal classes would fail to call its constructor
+				throw new IllegalArgumentException("cannot map private record " + record.getName()
+						+ " without hidden classes (JDK 15 or newer)");
+			}
+			return lookup.defineClass(code);
+		}
+		try {
+			return ((Lookup) DEFINE_HIDDEN.invoke(lookup, code, true, HIDDEN_OPTIONS)).lookupClass();
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IllegalAccessException iae) {
+				throw iae;
+			} else if (cause instanceof RuntimeException re) {
+				throw re;
+			} else if (cause instanceof Error err) {
+				throw err;
+			}
+			throw new AssertionError(cause);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package io.github.bensku.recorder.query.mapper;
+
+/**
+ * Provides {@link RecordMapper record mappers} for record types.
+ *
+ */
+@FunctionalInterface
+public interface MapperSource {
+
+	/**
+	 * Gets a record mapper for given type.
+	 * @param record Record type.
+	 * @return Record mapper.
+	 */
+	RecordMapper<?> get(Class<? extends Record> record);
+	
+	/**
+	 * Gets a record mapper that join fetches some foreign keys.
+	 * @param plan Record type and foreign keys to fetch.
+	 * @return Record mapper.
+	 * @throws UnsupportedOperationException When this source does not
+	 * support join fetching and some foreign keys should be fetched.
+	 */
+	default RecordMapper<?> get(FetchPlan plan) {
+		if (!plan.components().isEmpty()) {
+			throw new UnsupportedOperationException("join fetching is not supported");
+		}
+		return get(plan.record());
+	}
+}
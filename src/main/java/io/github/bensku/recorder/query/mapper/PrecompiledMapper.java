@@ -0,0 +1,64 @@
+package io.github.bensku.recorder.query.mapper;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+import io.github.bensku.recorder.record.GenerateMapper;
+
+/**
+ * A record mapper that was generated at compile time for a record that
+ * has {@link GenerateMapper}. Before it is used, Recorder checks that it
+ * agrees with the table of its record, and generates a new mapper if it
+ * does not.
+ *
+ * @param <R> Record type.
+ */
+public interface PrecompiledMapper<R extends Record> extends RecordMapper<R> {
+	
+	/**
+	 * Suffix of names of generated mapper classes.
+	 */
+	String SUFFIX = "_Mapper";
+
+	/**
+	 * Gets name of the mapper class for a record. The mapper is a top-level
+	 * class in package of the record.
+	 * @param binaryName Binary name of record, e.g. {@code a.b.Outer$Inner}.
+	 * @param packageName Package of record, e.g. {@code a.b}.
+	 * @return Binary name of mapper, e.g. {@code a.b.Outer_Inner_Mapper}.
+	 */
+	static String className(String binaryName, String packageName) {
+		String local = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+		return (packageName.isEmpty() ? "" : packageName + ".") + local.replace('$', '_') + SUFFIX;
+	}
+	
+	/**
+	 * Throws an {@link SQLException} without declaring it, like mappers
+	 * generated at runtime do.
+	 * @param e Exception to throw.
+	 * @return Never returns.
+	 */
+	static RuntimeException rethrow(SQLException e) {
+		PrecompiledMapper.<RuntimeException>sneakyThrow(e);
+		throw new AssertionError(); // Unreachable
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <E extends Throwable> void sneakyThrow(Throwable e) throws E {
+		throw (E) e;
+	}
+	
+	/**
+	 * Gets names of columns that this mapper reads, in order they are read.
+	 * @return Column names.
+	 */
+	List<String> columns();
+	
+	/**
+	 * Gets names of columns that this mapper does not write, because
+	 * database generates their values.
+	 * @return Column names.
+	 */
+	Set<String> generatedColumns();
+}
@@ -3,9 +3,12 @@ package io.github.bensku.recorder.query.mapper;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 
+import io.github.bensku.recorder.query.ForeignBatch;
+
 /**
  * Record mappers convert JDBC types to records and back. They are generatd
- * automatically by using ASM.
+ * automatically by using ASM, or at compile time for records that have
+ * {@link io.github.bensku.recorder.record.GenerateMapper}.
  * @param <R> Record type.
  */
 public interface RecordMapper<R extends Record> {
@@ -19,9 +22,32 @@ public interface RecordMapper<R extends Record> {
 	R read(ResultSet results);
 	
 	/**
-	 * Writes a record to given statement.
+	 * Reads a record from a single row. Foreign references of the record
+	 * are resolved with given batch.
+	 * @param results Result set from JDBC.
+	 * @param foreign Batch for foreign references, or null.
+	 * @return Next record.
+	 */
+	default R read(ResultSet results, ForeignBatch foreign) {
+		return read(results);
+	}
+	
+	/**
+	 * Writes a record to given statement. Columns with values generated by
+	 * database are not written.
+	 * @param statement Prepared statement.
+	 * @param record Record to write.
+	 */
+	default void write(PreparedStatement statement, R record) {
+		write(statement, record, 0);
+	}
+	
+	/**
+	 * Writes a record to given statement, starting after given parameter
+	 * index. This is used to write multiple records to one statement.
 	 * @param statement Prepared statement.
 	 * @param record Record to write.
+	 * @param offset Number of parameters before the first column of record.
 	 */
-	void write(PreparedStatement statement, R record);
+	void write(PreparedStatement statement, R record, int offset);
 }
@@ -16,4 +16,15 @@ public interface TableSource {
 	 * @return Table definition.
 	 */
 	Table get(JavaType type);
+	
+	/**
+	 * Gets a table definition for given record type. Implementations
+	 * that are keyed by classes can override this to skip creating
+	 * {@link JavaType}s.
+	 * @param record Record type.
+	 * @return Table definition.
+	 */
+	default Table get(Class<? extends Record> record) {
+		return get(JavaType.of(record));
+	}
 }
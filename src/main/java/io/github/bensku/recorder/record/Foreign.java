@@ -14,4 +14,11 @@ public interface Foreign<T> {
 	 */
 	T get();
 	
+	/**
+	 * Gets primary key of this foreign record. Unlike {@link #get()}, this
+	 * never queries the database.
+	 * @return Primary key.
+	 */
+	Object key();
+	
 }
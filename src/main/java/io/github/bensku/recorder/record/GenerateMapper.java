@@ -0,0 +1,23 @@
+package io.github.bensku.recorder.record;
+
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a record mapper for the annotated record at compile time, so
+ * that it does not need to be generated when the record is first used.
+ * This requires Recorder to be on annotation processor path of the
+ * compiler. Records must not be private, because generated mappers are
+ * normal classes. Private records can only use mappers that are generated
+ * at runtime as hidden classes, which needs JDK 15 or newer.
+ *
+ * @see io.github.bensku.recorder.processor.MapperProcessor
+ */
+@Retention(CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+
+}
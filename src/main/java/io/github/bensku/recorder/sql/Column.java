@@ -1,6 +1,8 @@
 package io.github.bensku.recorder.sql;
 
 import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.ForeignConstraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
 
 /**
  * A column in a table.
@@ -22,4 +24,33 @@ public record Column(
 		 * Constraints specific to this column.
 		 */
 		Constraint[] constraints
-) {}
+) {
+	
+	/**
+	 * Checks if values of this column are generated by the database.
+	 * Such columns are not written when inserting records.
+	 * @return Whether this column has {@link SimpleConstraint#GENERATED}.
+	 */
+	public boolean generated() {
+		for (Constraint constraint : constraints) {
+			if (constraint == SimpleConstraint.GENERATED) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the table that this column refers to.
+	 * @return Table from {@link ForeignConstraint}, or null if this is not
+	 * a foreign key.
+	 */
+	public Table foreignTable() {
+		for (Constraint constraint : constraints) {
+			if (constraint instanceof ForeignConstraint foreign) {
+				return foreign.foreignTable();
+			}
+		}
+		return null;
+	}
+}
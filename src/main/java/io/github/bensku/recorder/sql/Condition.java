@@ -7,7 +7,34 @@ public record Condition(
 ) {
 	
 	public enum Type {
-		EQUAL
+		EQUAL,
+		
+		/**
+		 * LHS is one of values in RHS list.
+		 */
+		IN,
+		
+		/**
+		 * LHS is one of values in RHS, which is an array parameter.
+		 * This is only used if {@link io.github.bensku.recorder.sql.adapter.SqlAdapter#supportsArrayParameters()
+		 * adapter supports it}.
+		 */
+		ANY,
+		
+		/**
+		 * LHS is greater than RHS.
+		 */
+		GREATER,
+		
+		/**
+		 * LHS is greater than or equal to RHS.
+		 */
+		GREATER_OR_EQUAL,
+		
+		/**
+		 * LHS is less than RHS.
+		 */
+		LESS
 	}
 
 }
@@ -22,6 +22,24 @@ public record JavaType(
 	public static final JavaType STRING = of(String.class);
 	public static final JavaType FOREIGN = of(Foreign.class);
 	
+	/**
+	 * Gets wrapper type of a primitive type. For other types, this returns
+	 * the type itself.
+	 * @return Boxed type.
+	 */
+	public JavaType boxed() {
+		return switch (name()) {
+		case "boolean" -> of(Boolean.class);
+		case "byte" -> of(Byte.class);
+		case "short" -> of(Short.class);
+		case "int" -> of(Integer.class);
+		case "long" -> of(Long.class);
+		case "float" -> of(Float.class);
+		case "double" -> of(Double.class);
+		default -> this;
+		};
+	}
+	
 	public String internalName() {
 		return name.replace('.', '/');
 	}
@@ -0,0 +1,23 @@
+package io.github.bensku.recorder.sql;
+
+/**
+ * A table that is joined to rows of another table.
+ *
+ */
+public record Join(
+		
+		/**
+		 * Name of joined table.
+		 */
+		String table,
+		
+		/**
+		 * Alias of joined table in query.
+		 */
+		String alias,
+		
+		/**
+		 * Condition that joined rows must match.
+		 */
+		Condition on
+) {}
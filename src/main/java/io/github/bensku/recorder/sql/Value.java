@@ -9,6 +9,21 @@ public record Value(
 		return PARAM;
 	}
 	
+	/**
+	 * Creates a parenthesized list of PreparedStatement parameters,
+	 * e.g. {@code (?,?,?)}.
+	 * @param count Number of parameters.
+	 * @return Parameter list.
+	 */
+	public static Value params(int count) {
+		StringBuilder sb = new StringBuilder(count * 2 + 1);
+		sb.append('(');
+		for (int i = 0; i < count - 1; i++) {
+			sb.append("?,");
+		}
+		return new Value(sb.append("?)").toString());
+	}
+	
 	public static Value column(String name) {
 		return new Value(name);
 	}
@@ -6,6 +6,7 @@ import java.util.stream.Collectors;
 import io.github.bensku.recorder.sql.Column;
 import io.github.bensku.recorder.sql.Condition;
 import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Join;
 import io.github.bensku.recorder.sql.Table;
 import io.github.bensku.recorder.sql.constraint.Constraint;
 
@@ -38,7 +39,7 @@ public interface SqlAdapter {
 	 * @return Column SQL string.
 	 */
 	default String column(Column column) {
-		return column.name() + sqlType(column.type()) + columnConstraints(column.constraints());
+		return column.name() + ' ' + sqlType(column.type()) + ' ' + columnConstraints(column.constraints());
 	}
 	
 	/**
@@ -68,18 +69,160 @@ public interface SqlAdapter {
 		// With given conditions
 		if (conditions.length > 0) {
 			sb.append(" WHERE ");
-			for (int i = 0; i < conditions.length - 1; i++) {
+			for (int i = 0; i < conditions.length; i++) {
+				if (i != 0) {
+					sb.append(" AND ");
+				}
 				Condition cond = conditions[i];
-				sb.append(cond.lhs().sql()).append(conditionType(cond.type())).append(cond.rhs().sql()).append(',');
+				sb.append(cond.lhs().sql()).append(conditionType(cond.type())).append(cond.rhs().sql());
 			}
 		}
 		
 		return sb.toString();
 	}
 	
+	/**
+	 * Generates a SELECT statement that left joins other tables to a table.
+	 * @param columns Columns to select, qualified with table aliases.
+	 * @param table Name of main table.
+	 * @param alias Alias of main table.
+	 * @param joins Joined tables.
+	 * @param conditions Conditions, qualified with table aliases.
+	 * @return SELECT statement.
+	 */
+	default String select(String[] columns, String table, String alias, Join[] joins, Condition[] conditions) {
+		StringBuilder from = new StringBuilder(table).append(' ').append(alias);
+		for (Join join : joins) {
+			Condition on = join.on();
+			from.append(" LEFT JOIN ").append(join.table()).append(' ').append(join.alias())
+					.append(" ON ").append(on.lhs().sql()).append(conditionType(on.type())).append(on.rhs().sql());
+		}
+		return select(columns, new String[] {from.toString()}, conditions);
+	}
+	
+	/**
+	 * Appends ORDER BY and LIMIT to a SELECT statement. Limit is a
+	 * PreparedStatement parameter, so that changing it does not change SQL.
+	 * @param select SELECT statement.
+	 * @param orderBy Columns to order by, or an empty array.
+	 * @param descending If all columns are ordered in descending order.
+	 * @param limit Whether to add a LIMIT parameter.
+	 * @return SELECT statement with order and limit.
+	 */
+	default String orderAndLimit(String select, String[] orderBy, boolean descending, boolean limit) {
+		StringBuilder sb = new StringBuilder(select);
+		if (orderBy.length > 0) {
+			sb.append(" ORDER BY ");
+			for (int i = 0; i < orderBy.length; i++) {
+				if (i != 0) {
+					sb.append(',');
+				}
+				sb.append(orderBy[i]);
+				if (descending) {
+					sb.append(" DESC");
+				}
+			}
+		}
+		if (limit) {
+			sb.append(" LIMIT ?");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Generates an INSERT statement with placeholders for given number of
+	 * rows. Multiple rows are only requested if
+	 * {@link #supportsMultiRowInsert()} returns true.
+	 * 
+	 * <p>If all columns are generated by database, there are no columns
+	 * to insert, and one row is inserted with {@code DEFAULT VALUES}.
+	 * @param table Table name.
+	 * @param columns Names of columns to insert.
+	 * @param rows Number of rows.
+	 * @return INSERT statement.
+	 */
+	default String insert(String table, String[] columns, int rows) {
+		StringBuilder sb = new StringBuilder("INSERT INTO ");
+		if (columns.length == 0) {
+			if (rows != 1) {
+				throw new IllegalArgumentException("multi-row insert needs columns");
+			}
+			return sb.append(table).append(" DEFAULT VALUES").toString();
+		}
+		sb.append(table).append(" (");
+		for (int i = 0; i < columns.length - 1; i++) {
+			sb.append(columns[i]).append(',');
+		}
+		sb.append(columns[columns.length - 1]).append(") VALUES ");
+		
+		// Placeholders for each row, e.g. (?,?),(?,?)
+		for (int i = 0; i < rows; i++) {
+			if (i != 0) {
+				sb.append(',');
+			}
+			sb.append('(');
+			for (int j = 0; j < columns.length - 1; j++) {
+				sb.append("?,");
+			}
+			sb.append("?)");
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Checks if this database supports inserting multiple rows with one
+	 * statement, e.g. {@code INSERT INTO t (a,b) VALUES (?,?),(?,?)}.
+	 * Adapters for databases that do not support it must override this.
+	 * @return Whether multi-row inserts are supported.
+	 */
+	default boolean supportsMultiRowInsert() {
+		return true;
+	}
+	
+	/**
+	 * Checks if this database supports comparing a column to an array
+	 * parameter with {@code col=ANY(?)}, e.g. PostgreSQL. Large IN lists
+	 * are sent as arrays if it does, so that they all share one statement.
+	 * Arrays are created with {@link java.sql.Connection#createArrayOf(String, Object[])}
+	 * and {@link #sqlType(JavaType) SQL type} of column.
+	 * @return Whether array parameters are supported.
+	 */
+	default boolean supportsArrayParameters() {
+		return false;
+	}
+	
+	/**
+	 * Checks if a connection can run a query while results of another one
+	 * are still being read. Foreign references of streamed records are
+	 * loaded on connection of the query if it can, and on another connection
+	 * from the pool if not. Adapters for e.g. SQL Server without MARS or
+	 * MySQL with streaming results must return false.
+	 * @return Whether multiple result sets can be open on one connection.
+	 */
+	default boolean supportsMultipleResultSets() {
+		return true;
+	}
+	
+	/**
+	 * Gets maximum number of parameters that one statement may have. IN
+	 * lists that would need more are rejected. The default matches H2 and
+	 * PostgreSQL; adapters for databases with lower limits, e.g. SQL Server
+	 * (2100), must override this.
+	 * @return Maximum number of parameters.
+	 */
+	default int maxParameters() {
+		return 32767;
+	}
+	
 	default String conditionType(Condition.Type type) {
 		return switch (type) {
 		case EQUAL -> "=";
+		case IN -> " IN ";
+		case ANY -> "=ANY";
+		case GREATER -> ">";
+		case GREATER_OR_EQUAL -> ">=";
+		case LESS -> "<";
 		};
 	}
 	
@@ -0,0 +1,141 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.QueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import recorderio.github.bensku.recorder.test.TestRows.Row;
+import recorderio.github.bensku.recorder.test.TestRows.RowMapper;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class AsyncQueryTest {
+
+	@Mock
+	private SqlAdapter adapter;
+	
+	@Mock
+	private Connection conn;
+	
+	@Mock
+	private PreparedStatement statement;
+	
+	@Mock
+	private ResultSet results;
+	
+	/**
+	 * Tasks submitted to executor, run manually.
+	 */
+	private List<Runnable> tasks;
+	
+	private SelectBuilder<Row> builder;
+	
+	@BeforeEach
+	public void initQuery() throws SQLException {
+		tasks = new ArrayList<>();
+		QueryHelper<SelectBuilder<Row>, Row> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> TestRows.TABLE).connection(conn).executor(tasks::add).build(),
+				new LocalQueryCache<>(30, 10), new RowMapper(), Row.class);
+		builder = new SelectBuilder<>(helper, Row.class);
+		
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM rows");
+		Mockito.when(conn.prepareStatement("SELECT id FROM rows")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1, 2);
+	}
+	
+	@Test
+	public void completed() throws Exception {
+		CompletableFuture<List<Row>> future = builder.allAsync();
+		Mockito.verifyNoInteractions(conn); // Not started yet
+		tasks.forEach(Runnable::run);
+		assertEquals(List.of(new Row(1), new Row(2)), future.get());
+		Mockito.verify(conn).close();
+	}
+	
+	@Test
+	public void cancelledBeforeStart() throws SQLException {
+		CompletableFuture<List<Row>> future = builder.allAsync();
+		future.cancel(false);
+		Mockito.verify(conn).close();
+		tasks.forEach(Runnable::run);
+		Mockito.verify(conn, Mockito.never()).prepareStatement(Mockito.anyString());
+		Mockito.verify(conn).close(); // Still only once
+	}
+	
+	@Test
+	public void failed() throws SQLException {
+		Mockito.when(statement.executeQuery()).thenThrow(new SQLException("boom"));
+		CompletableFuture<List<Row>> future = builder.allAsync();
+		tasks.forEach(Runnable::run);
+		ExecutionException e = assertThrows(ExecutionException.class, future::get);
+		assertTrue(e.getCause() instanceof SQLException);
+		Mockito.verify(conn).close();
+	}
+	
+	@Test
+	public void fanOutFromOneThread() throws Exception {
+		// Default query caches belong to one thread, so fail if another uses it
+		Thread owner = Thread.currentThread();
+		LocalQueryCache<SelectBuilder<Row>> local = new LocalQueryCache<>(30, 10);
+		QueryCache<SelectBuilder<Row>> cache = new QueryCache<>() {
+			
+			@Override
+			public CachedQuery get(SelectBuilder<Row> key) {
+				assertSame(owner, Thread.currentThread());
+				return local.get(key);
+			}
+			
+			@Override
+			public void put(SelectBuilder<Row> key, CachedQuery query) {
+				assertSame(owner, Thread.currentThread());
+				local.put(key, query);
+			}
+		};
+		// first() adds a limit
+		Mockito.when(adapter.orderAndLimit(Mockito.eq("SELECT id FROM rows"), Mockito.any(), Mockito.eq(false), Mockito.eq(true)))
+				.thenReturn("SELECT id FROM rows LIMIT ?");
+		Mockito.when(conn.prepareStatement("SELECT id FROM rows LIMIT ?")).thenReturn(statement);
+		List<CompletableFuture<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			QueryHelper<SelectBuilder<Row>, Row> helper = new QueryHelper<>(
+					QueryContext.builder(adapter, type -> TestRows.TABLE).connection(conn).executor(tasks::add).build(),
+					cache, new RowMapper(), Row.class);
+			futures.add(i % 2 == 0 ? new SelectBuilder<>(helper, Row.class).allAsync()
+					: new SelectBuilder<>(helper, Row.class).firstAsync());
+		}
+		Thread worker = new Thread(() -> tasks.forEach(Runnable::run));
+		worker.start();
+		worker.join();
+		for (CompletableFuture<?> future : futures) {
+			future.get(); // Throws if a query used the cache on worker thread
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.bensku.recorder.cache.ClassValueCache;
+
+public class ClassValueCacheTest {
+
+	public record A(int id) {}
+
+	public record B(String name) {}
+
+	@Test
+	public void loadsOnce() {
+		AtomicInteger loads = new AtomicInteger();
+		ClassValueCache<Record, String> cache = new ClassValueCache<>(type -> {
+			loads.incrementAndGet();
+			return type.getSimpleName();
+		});
+		assertEquals("A", cache.get(A.class));
+		assertEquals("A", cache.get(A.class));
+		assertEquals("B", cache.get(B.class));
+		assertEquals(2, loads.get());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void raceCountedOnce() throws InterruptedException {
+		CountDownLatch loading = new CountDownLatch(2);
+		ClassValueCache<Record, Object> cache = new ClassValueCache<>(type -> {
+			loading.countDown();
+			try {
+				loading.await(1, TimeUnit.SECONDS); // Both threads load
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new Object();
+		});
+		Thread other = new Thread(() -> cache.get(A.class));
+		other.start();
+		cache.get(A.class);
+		other.join();
+		assertEquals(1, cache.size());
+		List<Object> values = new ArrayList<>();
+		cache.forEach(values::add);
+		assertEquals(List.of(cache.get(A.class)), values);
+	}
+
+	@Test
+	public void separateCaches() {
+		ClassValueCache<Record, String> first = new ClassValueCache<>(type -> "first");
+		ClassValueCache<Record, String> second = new ClassValueCache<>(type -> "second");
+		assertEquals("first", first.get(A.class));
+		assertEquals("second", second.get(A.class));
+	}
+
+	@Test
+	public void sameValueAcrossThreads() throws InterruptedException {
+		ClassValueCache<Record, Object> cache = new ClassValueCache<>(type -> new Object());
+		CountDownLatch start = new CountDownLatch(1);
+		Object[] seen = new Object[8];
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < seen.length; i++) {
+			int index = i;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				seen[index] = cache.get(A.class);
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (Object value : seen) {
+			assertSame(seen[0], value);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.ColumnBatch;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ColumnBatchTest {
+
+	public record Sale(int id, String region, long quantity, double price) {}
+
+	private static final Table SALES = new Table(JavaType.of(Sale.class), "sales", new Column[] {
+			new Column("id", JavaType.INT, new Constraint[0]),
+			new Column("region", JavaType.STRING, new Constraint[0]),
+			new Column("quantity", JavaType.LONG, new Constraint[0]),
+			new Column("price", JavaType.DOUBLE, new Constraint[0])
+	}, null);
+
+	private static final int ROWS = 100; // More than initial capacity
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	private SqlAdapter adapter;
+
+	private RecordMapper<Sale> mapper;
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	public void init() throws SQLException {
+		adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		mapper = (RecordMapper<Sale>) new MapperGenerator(type -> SALES).create(Sale.class);
+		Mockito.when(conn.prepareStatement(Mockito.anyString())).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+
+		int[] row = {0};
+		Mockito.when(results.next()).thenAnswer(invocation -> ++row[0] <= ROWS);
+		Mockito.when(results.getInt(1)).thenAnswer(invocation -> row[0]);
+		Mockito.when(results.getString(2)).thenAnswer(invocation -> row[0] % 10 == 0 ? null
+				: new String(row[0] % 2 == 0 ? "north" : "south")); // Equal, but not same strings
+		Mockito.when(results.getLong(3)).thenAnswer(invocation -> (long) row[0] * 2);
+		Mockito.when(results.getDouble(4)).thenAnswer(invocation -> row[0] / 2.0);
+	}
+
+	private SelectBuilder<Sale> select() {
+		QueryHelper<SelectBuilder<Sale>, Sale> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> SALES).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), mapper, Sale.class);
+		return new SelectBuilder<>(helper, Sale.class);
+	}
+
+	@Test
+	public void columns() throws SQLException {
+		ColumnBatch<Sale> batch = select().columns();
+		assertEquals(ROWS, batch.size());
+		Mockito.verify(conn).prepareStatement("SELECT id,region,quantity,price FROM sales");
+		Mockito.verify(conn).close();
+
+		int[] ids = batch.ints(Sale::id);
+		long[] quantities = batch.longs(Sale::quantity);
+		double[] prices = batch.doubles(Sale::price);
+		long total = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			assertEquals(i + 1, ids[i]);
+			total += quantities[i];
+			assertEquals((i + 1) / 2.0, prices[i]);
+		}
+		assertEquals(ROWS * (ROWS + 1), total);
+		assertTrue(batch.vector(batch.column(Sale::quantity)) instanceof long[]);
+	}
+
+	@Test
+	public void dictionary() throws SQLException {
+		ColumnBatch.Strings regions = select().columns().strings(Sale::region);
+		assertArrayEquals(new String[] {"south", "north"}, regions.dictionary());
+		assertEquals(0, regions.codes()[0]);
+		assertEquals(1, regions.codes()[1]);
+		assertEquals(-1, regions.codes()[9]);
+		assertNull(regions.get(9));
+		assertEquals("north", regions.get(3));
+	}
+
+	@Test
+	public void rowView() throws SQLException {
+		ColumnBatch<Sale> batch = select().columns();
+		ColumnBatch<Sale>.Row row = batch.rows();
+		int id = batch.column(Sale::id);
+		int region = batch.column(Sale::region);
+		int count = 0;
+		while (row.next()) {
+			count++;
+			assertEquals(count, row.getInt(id));
+		}
+		assertEquals(ROWS, count);
+		assertFalse(row.next());
+
+		row.at(4);
+		assertEquals("south", row.getString(region));
+		assertEquals(10L, row.get(batch.column(Sale::quantity))); // Boxed
+	}
+}
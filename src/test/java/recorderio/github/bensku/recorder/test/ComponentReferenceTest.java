@@ -1,6 +1,7 @@
 package recorderio.github.bensku.recorder.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import org.junit.jupiter.api.Test;
 
@@ -29,4 +30,10 @@ public class ComponentReferenceTest {
 		assertEquals("foo", ref.name());
 		assertEquals(String.class, ref.type());
 	}
+	
+	@Test
+	public void cachedLookup() {
+		ComponentLambda<TestRecord, String> lambda = TestRecord::foo;
+		assertSame(lambda.lookupComponent(), lambda.lookupComponent());
+	}
 }
@@ -0,0 +1,108 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.github.bensku.recorder.cache.CacheStats;
+import io.github.bensku.recorder.cache.EntityCache;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.query.mapper.TableSource;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+public class EntityCacheTest {
+
+	public record User(int id, String name) {}
+	
+	private static final JavaType USER = JavaType.of(User.class);
+	
+	@Test
+	public void evictLeastRecentlyUsed() {
+		EntityCache cache = new EntityCache(2, null); // Too small to be striped
+		cache.put(USER, 1, new User(1, "a"));
+		cache.put(USER, 2, new User(2, "b"));
+		cache.get(USER, 1); // 2 is now least recently used
+		cache.put(USER, 3, new User(3, "c"));
+		
+		assertNull(cache.get(USER, 2));
+		assertEquals(new User(1, "a"), cache.get(USER, 1));
+		assertEquals(new CacheStats(2, 1), cache.stats());
+	}
+	
+	@Test
+	public void expire() {
+		AtomicLong time = new AtomicLong();
+		EntityCache cache = new EntityCache(10, Duration.ofNanos(100), time::get);
+		cache.put(USER, 1, new User(1, "a"));
+		time.set(99);
+		assertEquals(new User(1, "a"), cache.get(USER, 1));
+		time.set(100);
+		assertNull(cache.get(USER, 1));
+	}
+	
+	@Test
+	public void invalidate() {
+		EntityCache cache = new EntityCache(10, null);
+		cache.put(USER, 1, new User(1, "a"));
+		cache.put(USER, 2, new User(2, "b"));
+		cache.invalidate(USER, 1);
+		assertNull(cache.get(USER, 1));
+		cache.invalidateAll(USER);
+		assertNull(cache.get(USER, 2));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void firstByPrimaryKey() throws SQLException {
+		Column id = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+		Table table = new Table(USER, "users", new Column[] {id, new Column("name", JavaType.STRING, new Constraint[0])}, id);
+		TableSource tables = type -> table;
+		RecordMapper<User> mapper = (RecordMapper<User>) new MapperGenerator(tables).create(User.class);
+		EntityCache cache = new EntityCache(10, null);
+		SqlAdapter adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		LocalQueryCache<SelectBuilder<User>> queries = new LocalQueryCache<>(30, 10);
+		
+		Connection conn = Mockito.mock(Connection.class);
+		PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+		ResultSet results = Mockito.mock(ResultSet.class);
+		Mockito.when(conn.prepareStatement(Mockito.anyString())).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true);
+		Mockito.when(results.getInt(1)).thenReturn(1);
+		Mockito.when(results.getString(2)).thenReturn("a");
+		
+		User[] found = new User[3];
+		for (int i = 0; i < found.length; i++) {
+			QueryHelper<SelectBuilder<User>, User> helper = new QueryHelper<>(
+					QueryContext.builder(adapter, tables).connection(conn).entityCache(cache).build(),
+					queries, mapper, User.class);
+			found[i] = new SelectBuilder<>(helper, User.class).where(User::id).eq(1).first().orElseThrow();
+		}
+		
+		assertEquals(new User(1, "a"), found[0]);
+		assertSame(found[0], found[2]);
+		Mockito.verify(statement, Mockito.times(1)).executeQuery();
+		Mockito.verify(conn, Mockito.times(3)).close();
+		assertEquals(new CacheStats(2, 1), cache.stats());
+	}
+}
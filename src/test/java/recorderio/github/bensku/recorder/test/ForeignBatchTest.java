@@ -0,0 +1,218 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.ForeignBatch;
+import io.github.bensku.recorder.query.ForeignQuery;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.record.Foreign;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.ForeignConstraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ForeignBatchTest {
+
+	public record Customer(int id, String name) {}
+	
+	public record Order(int id, Foreign<Customer> customer) {}
+	
+	private static final Column CUSTOMER_ID = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+	private static final Table CUSTOMERS = new Table(JavaType.of(Customer.class), "customers", new Column[] {
+			CUSTOMER_ID, new Column("name", JavaType.STRING, new Constraint[0])
+	}, CUSTOMER_ID);
+	private static final Table ORDERS = new Table(JavaType.of(Order.class), "orders", new Column[] {
+			new Column("id", JavaType.INT, new Constraint[0]),
+			new Column("customer", JavaType.FOREIGN, new Constraint[] {new ForeignConstraint(CUSTOMERS)})
+	}, null);
+	
+	@Mock
+	private ResultSet results;
+	
+	@Mock
+	private PreparedStatement statement;
+	
+	private RecordMapper<Order> mapper;
+	
+	/**
+	 * Keys passed to each call of loader.
+	 */
+	private List<List<Object>> loads;
+	
+	private ForeignBatch batch;
+	
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	public void initMapper() {
+		mapper = (RecordMapper<Order>) new MapperGenerator(type -> ORDERS).create(Order.class);
+		loads = new ArrayList<>();
+		batch = new ForeignBatch((type, keys, conn) -> {
+			assertEquals(Customer.class, type);
+			loads.add(new ArrayList<>(keys));
+			Map<Object, Customer> customers = new HashMap<>();
+			for (Object key : keys) {
+				if ((int) key != 404) {
+					customers.put(key, new Customer((int) key, "customer" + key));
+				}
+			}
+			return customers;
+		});
+	}
+	
+	private List<Order> readOrders(Integer... customers) throws SQLException {
+		Mockito.when(results.getInt(1)).thenReturn(1, 2, 3, 4, 5);
+		Mockito.when(results.getObject(2, Integer.class)).thenReturn(customers[0], Arrays.copyOfRange(customers, 1, customers.length));
+		List<Order> orders = new ArrayList<>();
+		for (int i = 0; i < customers.length; i++) {
+			orders.add(mapper.read(results, batch));
+		}
+		return orders;
+	}
+	
+	@Test
+	public void batched() throws SQLException {
+		List<Order> orders = readOrders(10, 20, 10, 30);
+		assertEquals(new Customer(20, "customer20"), orders.get(1).customer().get());
+		
+		// One load for all pending keys, and identity map for duplicates
+		assertEquals(List.of(List.of(10, 20, 30)), loads);
+		assertSame(orders.get(0).customer().get(), orders.get(2).customer().get());
+		assertEquals(1, loads.size());
+	}
+	
+	@Test
+	public void missingAndNull() throws SQLException {
+		List<Order> orders = readOrders(404, null);
+		assertNull(orders.get(0).customer().get()); // No such customer
+		assertNull(orders.get(1).customer()); // Nullable foreign key
+		orders.get(0).customer().get();
+		assertEquals(1, loads.size());
+	}
+	
+	@Test
+	public void writeKey() throws SQLException {
+		Order order = readOrders(10).get(0);
+		mapper.write(statement, order);
+		Mockito.verify(statement).setObject(2, 10);
+		assertEquals(0, loads.size()); // Writing needs only the key
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void paddedQuery() throws SQLException {
+		SqlAdapter adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		Connection conn = Mockito.mock(Connection.class);
+		String sql = "SELECT id,name FROM customers WHERE id IN (?,?,?,?)";
+		Mockito.when(conn.prepareStatement(sql)).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, false);
+		Mockito.when(results.getObject(1, Integer.class)).thenReturn(2);
+		Mockito.when(results.getInt(1)).thenReturn(2);
+		Mockito.when(results.getString(2)).thenReturn("customer2");
+		
+		RecordMapper<Customer> customerMapper = (RecordMapper<Customer>) new MapperGenerator(type -> CUSTOMERS).create(Customer.class);
+		QueryHelper<ForeignQuery.Shape, Customer> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> CUSTOMERS).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), customerMapper, Customer.class);
+		Map<Object, Customer> customers = new ForeignQuery<>(helper, Customer.class).load(List.of(1, 2, 3));
+		
+		assertEquals(Map.of(2, new Customer(2, "customer2")), customers);
+		Mockito.verify(statement).setObject(3, 3);
+		Mockito.verify(statement).setObject(4, 3); // Padding
+		Mockito.verify(conn).close();
+	}
+	
+	@Test
+	public void loadWithoutLock() throws Exception {
+		// Loader that needs another reference of same batch resolved on another thread
+		List<Object> loaded = new ArrayList<>();
+		ForeignBatch[] self = new ForeignBatch[1];
+		self[0] = new ForeignBatch((type, keys, conn) -> {
+			loaded.addAll(keys);
+			if (keys.contains(10)) {
+				try {
+					CompletableFuture.supplyAsync(() -> ForeignBatch.reference(self[0], Customer.class, 20).get())
+							.get(5, TimeUnit.SECONDS);
+				} catch (InterruptedException | ExecutionException | TimeoutException e) {
+					throw new AssertionError("batch was locked while loading", e);
+				}
+			}
+			Map<Object, Customer> customers = new HashMap<>();
+			keys.forEach(key -> customers.put(key, new Customer((int) key, "customer" + key)));
+			return customers;
+		});
+		assertEquals(new Customer(10, "customer10"), ForeignBatch.reference(self[0], Customer.class, 10).get());
+		assertEquals(List.of(10, 20), loaded);
+	}
+	
+	@Test
+	public void queryConnection() throws SQLException {
+		SqlAdapter adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		Connection conn = Mockito.mock(Connection.class);
+		List<Connection> used = new ArrayList<>();
+		QueryHelper<ForeignQuery.Shape, Order> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> ORDERS).connection(conn).foreignLoader((type, keys, loadConn) -> {
+					used.add(loadConn);
+					return Map.of();
+				}).build(), new LocalQueryCache<>(30, 10), mapper, Order.class);
+		
+		// While query is open, its connection is used instead of a new one
+		ForeignBatch batch = helper.foreignBatch();
+		ForeignBatch.reference(batch, Customer.class, 1).get();
+		helper.close();
+		ForeignBatch.reference(batch, Customer.class, 2).get();
+		assertEquals(Arrays.asList(conn, null), used);
+	}
+	
+	@Test
+	public void singleResultSet() throws SQLException {
+		SqlAdapter adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		Mockito.doReturn(false).when(adapter).supportsMultipleResultSets();
+		Connection conn = Mockito.mock(Connection.class);
+		List<Connection> used = new ArrayList<>();
+		QueryHelper<ForeignQuery.Shape, Order> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> ORDERS).connection(conn).foreignLoader((type, keys, loadConn) -> {
+					used.add(loadConn);
+					return Map.of();
+				}).build(), new LocalQueryCache<>(30, 10), mapper, Order.class);
+		
+		// Query is still open, but its connection cannot run another query
+		ForeignBatch.reference(helper.foreignBatch(), Customer.class, 1).get();
+		assertEquals(Arrays.asList((Connection) null), used);
+		helper.close();
+	}
+}
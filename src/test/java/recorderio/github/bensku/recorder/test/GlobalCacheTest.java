@@ -0,0 +1,189 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.bensku.recorder.cache.Cache;
+import io.github.bensku.recorder.cache.GlobalCache;
+
+public class GlobalCacheTest {
+
+	private static void await(CountDownLatch latch) {
+		try {
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	@Test
+	public void recursiveLoad() {
+		AtomicInteger loads = new AtomicInteger();
+		// Like foreign keys: table of a key depends on tables of smaller keys
+		AtomicReference<GlobalCache<Integer, Integer>> self = new AtomicReference<>();
+		self.set(new GlobalCache<>(key -> {
+			loads.incrementAndGet();
+			return key == 0 ? 0 : key + self.get().get(key - 1);
+		}));
+		GlobalCache<Integer, Integer> cache = self.get();
+		assertEquals(5050, cache.get(100));
+		assertEquals(101, loads.get());
+		assertEquals(101, cache.size());
+	}
+
+	@Test
+	public void recursiveViewLoad() {
+		AtomicReference<Cache<Integer, Integer>> view = new AtomicReference<>();
+		GlobalCache<Integer, Integer> cache = new GlobalCache<>(key -> key == 0 ? 0 : 1 + view.get().get(key - 1));
+		view.set(cache.threadLocalView());
+		assertEquals(10, view.get().get(10));
+	}
+
+	@Test
+	public void cycle() {
+		AtomicReference<GlobalCache<Integer, Integer>> self = new AtomicReference<>();
+		self.set(new GlobalCache<>(key -> self.get().get(key)));
+		assertThrows(IllegalStateException.class, () -> self.get().get(1));
+		assertEquals(0, self.get().size()); // Failed loads are not cached
+	}
+
+	@Test
+	public void crossThreadCycle() throws InterruptedException {
+		// Like mutual foreign keys, preloaded in parallel
+		CountDownLatch loading = new CountDownLatch(2);
+		AtomicReference<GlobalCache<Integer, Integer>> self = new AtomicReference<>();
+		self.set(new GlobalCache<>(key -> {
+			loading.countDown();
+			await(loading); // Both keys are now owned by different threads
+			return self.get().get(key == 1 ? 2 : 1);
+		}));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Integer> first = executor.submit(() -> self.get().get(1));
+			Future<Integer> second = executor.submit(() -> self.get().get(2));
+			for (Future<Integer> future : List.of(first, second)) {
+				ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			assertEquals(0, self.get().size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void deduplicated() throws InterruptedException {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		GlobalCache<String, String> cache = new GlobalCache<>(key -> {
+			loads.incrementAndGet();
+			loading.countDown();
+			await(release);
+			return key.toUpperCase();
+		});
+		Thread first = new Thread(() -> cache.get("a"));
+		first.start();
+		await(loading);
+		CompletableFuture<String> waiting = cache.getAsync("a");
+		assertFalse(waiting.isDone());
+		release.countDown();
+		assertEquals("A", waiting.join());
+		assertEquals("A", cache.get("a"));
+		first.join();
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void slowLoadDoesNotBlockOthers() throws InterruptedException {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		GlobalCache<Integer, Integer> cache = new GlobalCache<>(key -> {
+			if (key == 0) {
+				loading.countDown();
+				await(release);
+			}
+			return key;
+		});
+		Thread slow = new Thread(() -> cache.get(0));
+		slow.start();
+		await(loading);
+		// Keys that would share a hash bin with 0 in small maps
+		for (int i = 1; i < 100; i++) {
+			assertEquals(i * 16, cache.get(i * 16));
+		}
+		release.countDown();
+		slow.join();
+		assertEquals(0, cache.get(0));
+	}
+
+	@Test
+	public void failureIsRetried() throws InterruptedException {
+		AtomicInteger loads = new AtomicInteger();
+		GlobalCache<String, String> cache = new GlobalCache<>(key -> {
+			if (loads.incrementAndGet() == 1) {
+				throw new IllegalArgumentException("first");
+			}
+			return key;
+		});
+		assertThrows(IllegalArgumentException.class, () -> cache.get("a"));
+		assertEquals("a", cache.get("a"));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void asyncLoad() throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			GlobalCache<String, String> cache = new GlobalCache<>(key -> {
+				if (key.isEmpty()) {
+					throw new IllegalArgumentException("empty");
+				}
+				return key.toUpperCase();
+			}, executor);
+			assertEquals("A", cache.getAsync("a").get());
+			assertEquals("A", cache.get("a"));
+			ExecutionException e = assertThrows(ExecutionException.class, () -> cache.getAsync("").get());
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void loaderPerCall() {
+		GlobalCache<String, String> cache = new GlobalCache<>();
+		assertEquals("A", cache.get("a", String::toUpperCase));
+		assertEquals("A", cache.get("a", key -> "other")); // Already loaded
+		assertThrows(IllegalStateException.class, () -> cache.get("b"));
+		assertThrows(IllegalStateException.class, () -> cache.getAsync("b"));
+	}
+
+	@Test
+	public void asyncRejected() {
+		GlobalCache<String, String> cache = new GlobalCache<>(String::toUpperCase, task -> {
+			throw new RejectedExecutionException("shut down");
+		});
+		CompletableFuture<String> future = cache.getAsync("a");
+		ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof RejectedExecutionException);
+		assertEquals(0, cache.size());
+		assertEquals("A", cache.get("a")); // Not stuck loading
+	}
+}
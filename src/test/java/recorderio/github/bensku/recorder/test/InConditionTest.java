@@ -0,0 +1,152 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.ComponentLambda;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class InConditionTest {
+
+	public record Item(int id) {}
+
+	private static final Table ITEMS = new Table(JavaType.of(Item.class), "items", new Column[] {
+			new Column("id", JavaType.INT, new Constraint[0])
+	}, null);
+
+	private static final ComponentLambda<Item, Integer> ID = Item::id;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	@Mock
+	private Array array;
+
+	private SqlAdapter adapter;
+
+	private RecordMapper<Item> mapper;
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	public void init() throws SQLException {
+		adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		mapper = (RecordMapper<Item>) new MapperGenerator(type -> ITEMS).create(Item.class);
+		Mockito.when(conn.prepareStatement(Mockito.anyString())).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(statement.getConnection()).thenReturn(conn);
+	}
+
+	private SelectBuilder<Item> select() {
+		QueryHelper<SelectBuilder<Item>, Item> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> ITEMS).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), mapper, Item.class);
+		return new SelectBuilder<>(helper, Item.class);
+	}
+
+	private static List<Integer> ids(int count) {
+		return IntStream.range(0, count).boxed().collect(Collectors.toList());
+	}
+
+	@Test
+	public void bucketing() {
+		SelectBuilder<Item> three = select().where(ID).in(ids(3));
+		SelectBuilder<Item> four = select().where(ID).in(ids(4));
+		SelectBuilder<Item> five = select().where(ID).in(ids(5));
+		assertEquals(three, four);
+		assertEquals(three.hashCode(), four.hashCode());
+		assertNotEquals(four, five);
+		assertEquals("SELECT id FROM items WHERE id IN (?,?,?,?)", three.sql());
+		assertEquals("SELECT id FROM items WHERE id IN (?,?,?,?,?,?,?,?)", five.sql());
+	}
+
+	@Test
+	public void padding() throws SQLException {
+		select().where(ID).in(List.of(7, 8, 9)).all();
+		Mockito.verify(statement).setObject(1, 7);
+		Mockito.verify(statement).setObject(2, 8);
+		Mockito.verify(statement).setObject(3, 9);
+		Mockito.verify(statement).setObject(4, 9); // Last value repeated
+	}
+
+	@Test
+	public void empty() {
+		assertEquals("SELECT id FROM items WHERE 1=0", select().where(ID).in(List.of()).sql());
+	}
+
+	@Test
+	public void arrayParameter() throws SQLException {
+		Mockito.when(adapter.supportsArrayParameters()).thenReturn(true);
+		Mockito.when(adapter.sqlType(JavaType.INT)).thenReturn("INT");
+		Mockito.when(conn.createArrayOf(Mockito.eq("INT"), Mockito.any())).thenReturn(array);
+
+		SelectBuilder<Item> large = select().where(ID).in(ids(SelectBuilder.IN_ARRAY_THRESHOLD + 1));
+		SelectBuilder<Item> larger = select().where(ID).in(ids(1000));
+		assertEquals(large, larger);
+		assertEquals("SELECT id FROM items WHERE id=ANY(?)", large.sql());
+		assertEquals("SELECT id FROM items WHERE id IN (?,?)", select().where(ID).in(ids(2)).sql());
+
+		larger.all();
+		Mockito.verify(conn).createArrayOf("INT", ids(1000).toArray());
+		Mockito.verify(statement).setArray(1, array);
+	}
+
+	private static long parameters(SelectBuilder<Item> query) {
+		return query.sql().chars().filter(c -> c == '?').count();
+	}
+
+	@Test
+	public void largeList() {
+		// Padded to next multiple of bucket size, not next power of two
+		assertEquals(5 * SelectBuilder.IN_BUCKET_SIZE, parameters(select().where(ID).in(ids(4100))));
+		assertEquals(select().where(ID).in(ids(4100)), select().where(ID).in(ids(5000)));
+
+		// Never padded above the limit
+		Mockito.when(adapter.maxParameters()).thenReturn(2100);
+		assertEquals(2100, parameters(select().where(ID).in(ids(2050))));
+	}
+
+	@Test
+	public void tooLargeList() {
+		// 40k values would be 65536 parameters if padded to a power of two
+		assertThrows(IllegalArgumentException.class, () -> select().where(ID).in(ids(40_000)));
+		Mockito.when(adapter.maxParameters()).thenReturn(65535);
+		assertEquals(40 * SelectBuilder.IN_BUCKET_SIZE, parameters(select().where(ID).in(ids(40_000))));
+	}
+}
@@ -0,0 +1,225 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.StatementCache;
+import io.github.bensku.recorder.query.InsertBuilder;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class InsertBuilderTest {
+
+	public record Row(int id, String name) {}
+
+	private static class RowMapper implements RecordMapper<Row> {
+
+		@Override
+		public Row read(ResultSet results) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void write(PreparedStatement statement, Row record, int offset) {
+			try { // id is generated
+				statement.setString(offset + 1, record.name());
+			} catch (SQLException e) {
+				throw new AssertionError(e);
+			}
+		}
+
+	}
+
+	private static final String SINGLE_ROW = "INSERT INTO rows (name) VALUES (?)";
+	private static final String TWO_ROWS = "INSERT INTO rows (name) VALUES (?),(?)";
+
+	private SqlAdapter adapter;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement single;
+
+	@Mock
+	private PreparedStatement multi;
+
+	private InsertBuilder<Row> builder;
+
+	@BeforeEach
+	public void initQuery() throws SQLException {
+		adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		Table table = new Table(JavaType.of(Row.class), "rows", new Column[] {
+				new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY, SimpleConstraint.GENERATED}),
+				new Column("name", JavaType.STRING, new Constraint[0])
+		}, null);
+		QueryHelper<InsertBuilder.Shape, Row> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> table).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), new RowMapper(), Row.class);
+		builder = new InsertBuilder<>(helper, Row.class);
+
+		Mockito.when(conn.prepareStatement(SINGLE_ROW)).thenReturn(single);
+		Mockito.when(conn.prepareStatement(TWO_ROWS)).thenReturn(multi);
+	}
+
+	private List<Row> rows(int count) {
+		return IntStream.range(0, count)
+				.mapToObj(i -> new Row(0, "row" + i))
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void multiRow() throws SQLException {
+		builder.batchSize(2).insertAll(rows(5));
+
+		// Two full batches with multi-row statement
+		Mockito.verify(multi, Mockito.times(2)).executeUpdate();
+		Mockito.verify(multi).setString(1, "row0");
+		Mockito.verify(multi).setString(2, "row1");
+		Mockito.verify(multi).setString(1, "row2");
+		Mockito.verify(multi).setString(2, "row3");
+
+		// Last row with normal batching
+		Mockito.verify(single).setString(1, "row4");
+		Mockito.verify(single).addBatch();
+		Mockito.verify(single).executeBatch();
+
+		Mockito.verify(multi).close();
+		Mockito.verify(single).close();
+		Mockito.verify(conn).close();
+	}
+
+	@Test
+	public void parameterLimit() throws SQLException {
+		Mockito.when(adapter.maxParameters()).thenReturn(2); // One column, so two rows per statement
+		builder.batchSize(100).insertAll(rows(5));
+
+		Mockito.verify(conn, Mockito.never()).prepareStatement(Mockito.startsWith("INSERT INTO rows (name) VALUES (?),(?),(?)"));
+		Mockito.verify(multi, Mockito.times(2)).executeUpdate();
+		Mockito.verify(single).setString(1, "row4");
+		Mockito.verify(single).executeBatch();
+	}
+
+	@Test
+	public void singleRowBatches() throws SQLException {
+		Mockito.when(adapter.supportsMultiRowInsert()).thenReturn(false);
+		builder.batchSize(2).insertAll(rows(5));
+
+		Mockito.verify(conn, Mockito.never()).prepareStatement(TWO_ROWS);
+		Mockito.verify(single, Mockito.times(5)).addBatch();
+		Mockito.verify(single, Mockito.times(3)).executeBatch(); // 2 + 2 + 1
+		Mockito.verify(conn).close();
+	}
+
+	@Test
+	public void failedBatchIsNotRepeated() throws SQLException {
+		Mockito.when(adapter.supportsMultiRowInsert()).thenReturn(false);
+		StatementCache statements = new StatementCache(10);
+		Table table = new Table(JavaType.of(Row.class), "rows", new Column[] {
+				new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY, SimpleConstraint.GENERATED}),
+				new Column("name", JavaType.STRING, new Constraint[0])
+		}, null);
+		
+		// Statement that remembers its batch like a real one
+		List<String> batch = new ArrayList<>();
+		List<String> sent = new ArrayList<>();
+		String[] parameter = new String[1];
+		Mockito.doAnswer(invocation -> parameter[0] = invocation.getArgument(1))
+				.when(single).setString(Mockito.eq(1), Mockito.anyString());
+		Mockito.doAnswer(invocation -> batch.add(parameter[0])).when(single).addBatch();
+		Mockito.doAnswer(invocation -> {
+			batch.clear();
+			return null;
+		}).when(single).clearBatch();
+		Mockito.doAnswer(invocation -> {
+			batch.clear(); // Closed statements are never executed
+			return null;
+		}).when(single).close();
+		Mockito.when(single.executeBatch()).thenAnswer(invocation -> {
+			sent.addAll(batch);
+			batch.clear();
+			return new int[0];
+		});
+		RecordMapper<Row> failing = new RowMapper() {
+			
+			@Override
+			public void write(PreparedStatement statement, Row record, int offset) {
+				if (record.name().equals("fail")) {
+					throw new IllegalStateException("cannot write");
+				}
+				super.write(statement, record, offset);
+			}
+		};
+		
+		QueryHelper<InsertBuilder.Shape, Row> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> table).connection(conn).statements(statements).build(),
+				new LocalQueryCache<>(30, 10), failing, Row.class);
+		assertThrows(IllegalStateException.class, () -> new InsertBuilder<>(helper, Row.class).batchSize(10)
+				.insertAll(List.of(new Row(0, "a"), new Row(0, "b"), new Row(0, "fail"))));
+		
+		QueryHelper<InsertBuilder.Shape, Row> next = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> table).connection(conn).statements(statements).build(),
+				new LocalQueryCache<>(30, 10), failing, Row.class);
+		new InsertBuilder<>(next, Row.class).insert(new Row(0, "c"));
+		assertEquals(List.of("c"), sent);
+	}
+
+	public record Generated(int id) {}
+
+	@Test
+	public void onlyGeneratedColumns() throws SQLException {
+		Table table = new Table(JavaType.of(Generated.class), "generated", new Column[] {
+				new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY, SimpleConstraint.GENERATED})
+		}, null);
+		RecordMapper<Generated> mapper = new RecordMapper<>() {
+
+			@Override
+			public Generated read(ResultSet results) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void write(PreparedStatement statement, Generated record, int offset) {
+				// Nothing to write
+			}
+		};
+		QueryHelper<InsertBuilder.Shape, Generated> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> table).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), mapper, Generated.class);
+		Mockito.when(conn.prepareStatement("INSERT INTO generated DEFAULT VALUES")).thenReturn(single);
+
+		new InsertBuilder<>(helper, Generated.class).batchSize(2).insertAll(List.of(new Generated(0), new Generated(0),
+				new Generated(0)));
+		Mockito.verify(single, Mockito.times(3)).addBatch();
+		Mockito.verify(single, Mockito.times(2)).executeBatch();
+		Mockito.verify(conn, Mockito.never()).prepareStatement(Mockito.startsWith("INSERT INTO generated ("));
+	}
+}
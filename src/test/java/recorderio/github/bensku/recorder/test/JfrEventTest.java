@@ -0,0 +1,104 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.jfr.MapperGenerationEvent;
+import io.github.bensku.recorder.jfr.QueryCompileEvent;
+import io.github.bensku.recorder.jfr.RowMappingEvent;
+import io.github.bensku.recorder.jfr.StatementExecuteEvent;
+import io.github.bensku.recorder.jfr.StatementPrepareEvent;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import recorderio.github.bensku.recorder.test.TestRows.Row;
+import recorderio.github.bensku.recorder.test.TestRows.RowMapper;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class JfrEventTest {
+
+	@Mock
+	private SqlAdapter adapter;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	@Test
+	public void disabledByDefault() {
+		for (Class<? extends jdk.jfr.Event> type : List.of(QueryCompileEvent.class, StatementPrepareEvent.class,
+				StatementExecuteEvent.class, RowMappingEvent.class, MapperGenerationEvent.class)) {
+			assertFalse(EventType.getEventType(type).isEnabled(), type.getName());
+		}
+	}
+
+	@Test
+	public void queryEvents() throws SQLException, IOException {
+		QueryHelper<SelectBuilder<Row>, Row> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> TestRows.TABLE).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), new RowMapper(), Row.class);
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM rows");
+		Mockito.when(conn.prepareStatement("SELECT id FROM rows")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1, 2);
+
+		Path file = Files.createTempFile("recorder", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(QueryCompileEvent.class);
+			recording.enable(StatementPrepareEvent.class);
+			recording.enable(StatementExecuteEvent.class);
+			recording.enable(RowMappingEvent.class);
+			recording.start();
+			new SelectBuilder<>(helper, Row.class).all();
+			recording.stop();
+			recording.dump(file);
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+					.filter(event -> event.getEventType().getName().startsWith("io.github.bensku.recorder."))
+					.sorted(Comparator.comparing(RecordedEvent::getStartTime))
+					.collect(Collectors.toList());
+			assertEquals(List.of("QueryCompile", "StatementPrepare", "StatementExecute", "RowMapping"), events.stream()
+					.map(event -> event.getEventType().getName().substring("io.github.bensku.recorder.".length()))
+					.collect(Collectors.toList()));
+			for (RecordedEvent event : events) {
+				assertEquals("SELECT id FROM rows", event.getString("sql"));
+				assertEquals(Row.class.getName(), event.getClass("recordType").getName());
+			}
+			assertEquals(2, events.get(3).getInt("rows"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
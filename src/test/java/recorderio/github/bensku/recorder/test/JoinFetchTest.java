@@ -0,0 +1,109 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.FetchPlan;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.MapperSource;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.record.Foreign;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.ForeignConstraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class JoinFetchTest {
+
+	public record Customer(int id, String name) {}
+	
+	public record Order(int id, Foreign<Customer> customer) {}
+	
+	private static final Column CUSTOMER_ID = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+	private static final Table CUSTOMERS = new Table(JavaType.of(Customer.class), "customers", new Column[] {
+			CUSTOMER_ID, new Column("name", JavaType.STRING, new Constraint[0])
+	}, CUSTOMER_ID);
+	private static final Table ORDERS = new Table(JavaType.of(Order.class), "orders", new Column[] {
+			new Column("id", JavaType.INT, new Constraint[0]),
+			new Column("customer", JavaType.FOREIGN, new Constraint[] {new ForeignConstraint(CUSTOMERS)})
+	}, null);
+	
+	private static final String SQL = "SELECT t0.id,t0.customer,t1.id,t1.name FROM orders t0"
+			+ " LEFT JOIN customers t1 ON t0.customer=t1.id WHERE t0.id=?";
+	
+	@Mock
+	private Connection conn;
+	
+	@Mock
+	private PreparedStatement statement;
+	
+	@Mock
+	private ResultSet results;
+	
+	private SelectBuilder<Order> builder;
+	
+	@BeforeEach
+	public void initQuery() throws SQLException {
+		SqlAdapter adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		MapperGenerator generator = new MapperGenerator(type -> type.equals(JavaType.of(Order.class)) ? ORDERS : CUSTOMERS);
+		MapperSource mappers = new MapperSource() {
+			
+			@Override
+			public RecordMapper<?> get(Class<? extends Record> record) {
+				return generator.create(record);
+			}
+			
+			@Override
+			public RecordMapper<?> get(FetchPlan plan) {
+				return generator.create(plan);
+			}
+		};
+		QueryHelper<SelectBuilder<Order>, Order> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> ORDERS).connection(conn).mappers(mappers).foreignLoader((type, keys, conn) -> {
+					throw new AssertionError("fetched records should not be loaded");
+				}).build(), new LocalQueryCache<>(30, 10), null, Order.class);
+		builder = new SelectBuilder<>(helper, Order.class);
+		
+		Mockito.when(conn.prepareStatement(SQL)).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1, 2);
+		Mockito.when(results.getObject(2, Integer.class)).thenReturn(10).thenReturn(null);
+		Mockito.when(results.getObject(3, Integer.class)).thenReturn(10).thenReturn(null);
+		Mockito.when(results.getInt(3)).thenReturn(10);
+		Mockito.when(results.getString(4)).thenReturn("Alice");
+	}
+	
+	@Test
+	public void fetchCustomer() throws SQLException {
+		List<Order> orders = builder.fetch(Order::customer).where(Order::id).eq(1).all();
+		assertEquals(new Customer(10, "Alice"), orders.get(0).customer().get());
+		assertEquals(10, orders.get(0).customer().key());
+		assertNull(orders.get(1).customer()); // Nothing to join
+		Mockito.verify(statement).setObject(1, 1);
+	}
+}
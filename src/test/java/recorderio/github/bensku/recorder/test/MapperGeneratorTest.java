@@ -1,7 +1,10 @@
 package recorderio.github.bensku.recorder.test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.reflect.Method;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -22,6 +25,7 @@ import io.github.bensku.recorder.sql.Column;
 import io.github.bensku.recorder.sql.JavaType;
 import io.github.bensku.recorder.sql.Table;
 import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
 
 @ExtendWith(MockitoExtension.class)
 @TestInstance(Lifecycle.PER_CLASS)
@@ -65,6 +69,31 @@ public class MapperGeneratorTest {
 		Mockito.verifyNoInteractions(results, statement);
 	}
 	
+	private record PrivateRecord(int i) {}
+	
+	@Test
+	public void privateRecord() throws ReflectiveOperationException, SQLException {
+		// Only hidden nestmate mappers can call private constructors
+		Method isHidden;
+		try {
+			isHidden = Class.class.getMethod("isHidden"); // Not on JDK 14
+		} catch (NoSuchMethodException e) {
+			isHidden = null;
+		}
+		tableSource.table = new Table(JavaType.of(PrivateRecord.class), "private_records", new Column[] {
+				column("i", int.class)
+		}, null);
+		if (isHidden == null) { // JDK 14, which the build targets
+			assertThrows(IllegalArgumentException.class, () -> generator.create(PrivateRecord.class));
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		RecordMapper<PrivateRecord> mapper = (RecordMapper<PrivateRecord>) generator.create(PrivateRecord.class);
+		assertTrue((boolean) isHidden.invoke(mapper.getClass()));
+		Mockito.when(results.getInt(1)).thenReturn(42);
+		assertEquals(new PrivateRecord(42), mapper.read(results));
+	}
+	
 	public record AllTypes(boolean bool, byte b, short s, int i, long l, float f, double d, Object o, String str) {}
 	
 	private Column column(String name, Class<?> type) {
@@ -81,19 +110,36 @@ public class MapperGeneratorTest {
 		RecordMapper<AllTypes> mapper = (RecordMapper<AllTypes>) generator.create(JavaType.of(AllTypes.class));
 		
 		// Mock reading from ResultSet
-		Mockito.when(results.getBoolean(0)).thenReturn(true);
-		Mockito.when(results.getByte(1)).thenReturn((byte) 42);
-		Mockito.when(results.getShort(2)).thenReturn((short) 1337);
-		Mockito.when(results.getInt(3)).thenReturn(0xf00f);
-		Mockito.when(results.getLong(4)).thenReturn(0xdeadbeefL);
-		Mockito.when(results.getFloat(5)).thenReturn(Float.NaN);
-		Mockito.when(results.getDouble(6)).thenReturn(Double.MIN_VALUE);
+		Mockito.when(results.getBoolean(1)).thenReturn(true);
+		Mockito.when(results.getByte(2)).thenReturn((byte) 42);
+		Mockito.when(results.getShort(3)).thenReturn((short) 1337);
+		Mockito.when(results.getInt(4)).thenReturn(0xf00f);
+		Mockito.when(results.getLong(5)).thenReturn(0xdeadbeefL);
+		Mockito.when(results.getFloat(6)).thenReturn(Float.NaN);
+		Mockito.when(results.getDouble(7)).thenReturn(Double.MIN_VALUE);
 		Object obj = new Object();
-		Mockito.when(results.getObject(7, Object.class)).thenReturn(obj);
-		Mockito.when(results.getString(8)).thenReturn("hello world");
+		Mockito.when(results.getObject(8, Object.class)).thenReturn(obj);
+		Mockito.when(results.getString(9)).thenReturn("hello world");
 		
 		// Read and verify
 		assertEquals(new AllTypes(true, (byte) 42, (short) 1337, 0xf00f, 0xdeadbeefl, Float.NaN, Double.MIN_VALUE, obj, "hello world"), mapper.read(results));
 	}
 	
+	public record GeneratedKey(int id, long l, String str) {}
+	
+	@Test
+	public void writeWithOffset() throws SQLException {
+		tableSource.table = new Table(JavaType.of(GeneratedKey.class), "generated_key", new Column[] {
+				new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY, SimpleConstraint.GENERATED}),
+				column("l", long.class), column("str", String.class)
+		}, null);
+		@SuppressWarnings("unchecked")
+		RecordMapper<GeneratedKey> mapper = (RecordMapper<GeneratedKey>) generator.create(JavaType.of(GeneratedKey.class));
+		
+		// Generated id is skipped, rest are written after offset
+		mapper.write(statement, new GeneratedKey(1, 2, "foo"), 4);
+		Mockito.verify(statement).setLong(5, 2);
+		Mockito.verify(statement).setString(6, "foo");
+		Mockito.verifyNoMoreInteractions(statement);
+	}
 }
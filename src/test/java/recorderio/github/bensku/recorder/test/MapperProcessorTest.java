@@ -0,0 +1,236 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.github.bensku.recorder.processor.MapperProcessor;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.PrecompiledMapper;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.record.Foreign;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.ForeignConstraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+public class MapperProcessorTest {
+
+	private static final String CUSTOMER = """
+			package gen;
+
+			import io.github.bensku.recorder.record.*;
+
+			@GenerateMapper
+			public record Customer(@PrimaryKey int id, String name) {}
+			""";
+
+	private static final String ORDER = """
+			package gen;
+
+			import io.github.bensku.recorder.record.*;
+
+			public class Orders {
+				@GenerateMapper
+				public record Order(@PrimaryKey(generated = false) long id, Foreign<Customer> customer, double total) {}
+			}
+			""";
+
+	private static class Source extends SimpleJavaFileObject {
+
+		private final String code;
+
+		Source(String name, String code) {
+			super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+
+	@Mock
+	private ResultSet results;
+
+	@Mock
+	private PreparedStatement statement;
+
+	private Path output;
+
+	@BeforeEach
+	public void createOutput() throws IOException {
+		output = Files.createTempDirectory("recorder-processor");
+	}
+
+	@AfterEach
+	public void deleteOutput() throws IOException {
+		try (Stream<Path> files = Files.walk(output)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Compiles sources with mapper processor.
+	 * @param sources Sources by class names.
+	 * @return Errors reported by compiler.
+	 * @throws IOException When output cannot be written.
+	 */
+	private List<String> compile(Map<String, String> sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+			files.setLocation(StandardLocation.CLASS_OUTPUT, List.of(output.toFile()));
+			files.setLocation(StandardLocation.SOURCE_OUTPUT, List.of(output.toFile()));
+			List<String> options = new ArrayList<>(List.of("-classpath", System.getProperty("java.class.path")));
+			if (Runtime.version().feature() < 16) { // Records are a preview feature
+				options.addAll(List.of("--release", "" + Runtime.version().feature(), "--enable-preview"));
+			}
+			List<Source> units = sources.entrySet().stream()
+					.map(entry -> new Source(entry.getKey(), entry.getValue()))
+					.collect(Collectors.toList());
+			JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null, units);
+			task.setProcessors(List.of(new MapperProcessor()));
+			task.call();
+		}
+		return diagnostics.getDiagnostics().stream()
+				.filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+				.map(diagnostic -> diagnostic.getMessage(null))
+				.collect(Collectors.toList());
+	}
+
+	private URLClassLoader loader() throws IOException {
+		return new URLClassLoader(new URL[] {output.toUri().toURL()}, getClass().getClassLoader());
+	}
+
+	private static Table customers(Class<?> record, boolean generatedId) {
+		Constraint[] id = generatedId ? new Constraint[] {SimpleConstraint.PRIMARY_KEY, SimpleConstraint.GENERATED}
+				: new Constraint[] {SimpleConstraint.PRIMARY_KEY};
+		Column pk = new Column("id", JavaType.INT, id);
+		return new Table(JavaType.of(record), "customers", new Column[] {
+				pk, new Column("name", JavaType.STRING, new Constraint[0])
+		}, pk);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <R extends Record> RecordMapper<R> create(MapperGenerator generator, Class<?> record) {
+		return (RecordMapper<R>) generator.create(record.asSubclass(Record.class));
+	}
+
+	@Test
+	public void precompiled() throws Exception {
+		assertEquals(List.of(), compile(Map.of("gen.Customer", CUSTOMER)));
+		assertTrue(Files.exists(output.resolve("gen/Customer_Mapper.java")));
+		try (URLClassLoader loader = loader()) {
+			Class<?> customer = loader.loadClass("gen.Customer");
+			MapperGenerator generator = new MapperGenerator(type -> customers(customer, true));
+			RecordMapper<Record> mapper = create(generator, customer);
+			assertTrue(mapper instanceof PrecompiledMapper, mapper.getClass().getName());
+			assertEquals("gen.Customer_Mapper", mapper.getClass().getName());
+
+			Mockito.when(results.getInt(1)).thenReturn(3);
+			Mockito.when(results.getString(2)).thenReturn("Alice");
+			Record record = mapper.read(results);
+			assertEquals("Customer[id=3, name=Alice]", record.toString());
+
+			mapper.write(statement, record, 2);
+			Mockito.verify(statement).setString(3, "Alice");
+			Mockito.verifyNoMoreInteractions(statement); // Generated id is not written
+		}
+	}
+
+	@Test
+	public void tableMismatch() throws Exception {
+		assertEquals(List.of(), compile(Map.of("gen.Customer", CUSTOMER)));
+		try (URLClassLoader loader = loader()) {
+			Class<?> customer = loader.loadClass("gen.Customer");
+			// Table source does not consider id generated, so mapper must write it
+			MapperGenerator generator = new MapperGenerator(type -> customers(customer, false));
+			RecordMapper<Record> mapper = create(generator, customer);
+			assertFalse(mapper instanceof PrecompiledMapper);
+		}
+	}
+
+	@Test
+	public void foreignKey() throws Exception {
+		assertEquals(List.of(), compile(Map.of("gen.Customer", CUSTOMER, "gen.Orders", ORDER)));
+		assertTrue(Files.exists(output.resolve("gen/Orders_Order_Mapper.java")));
+		try (URLClassLoader loader = loader()) {
+			Class<?> customer = loader.loadClass("gen.Customer");
+			Class<?> order = loader.loadClass("gen.Orders$Order");
+			Column pk = new Column("id", JavaType.LONG, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+			Table orders = new Table(JavaType.of(order), "orders", new Column[] {
+					pk,
+					new Column("customer", JavaType.FOREIGN, new Constraint[] {
+							new ForeignConstraint(customers(customer, true))}),
+					new Column("total", JavaType.DOUBLE, new Constraint[0])
+			}, pk);
+			MapperGenerator generator = new MapperGenerator(type -> orders);
+			RecordMapper<Record> mapper = create(generator, order);
+			assertTrue(mapper instanceof PrecompiledMapper, mapper.getClass().getName());
+
+			Mockito.when(results.getLong(1)).thenReturn(10L);
+			Mockito.when(results.getObject(2, Integer.class)).thenReturn(3);
+			Mockito.when(results.getDouble(3)).thenReturn(9.5);
+			Record record = mapper.read(results);
+			Method accessor = order.getMethod("customer");
+			assertEquals(3, ((Foreign<?>) accessor.invoke(record)).key());
+
+			mapper.write(statement, record);
+			Mockito.verify(statement).setLong(1, 10L);
+			Mockito.verify(statement).setObject(2, 3);
+			Mockito.verify(statement).setDouble(3, 9.5);
+		}
+	}
+
+	@Test
+	public void notRecord() throws IOException, SQLException {
+		List<String> errors = compile(Map.of("gen.Plain", """
+				package gen;
+
+				@io.github.bensku.recorder.record.GenerateMapper
+				public class Plain {}
+				"""));
+		assertEquals(List.of("only records can have mappers"), errors);
+	}
+}
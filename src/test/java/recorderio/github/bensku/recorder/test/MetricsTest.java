@@ -0,0 +1,105 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.QueryCache;
+import io.github.bensku.recorder.metrics.CollectingMetrics;
+import io.github.bensku.recorder.metrics.LatencyHistogram;
+import io.github.bensku.recorder.metrics.MetricsSnapshot;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import recorderio.github.bensku.recorder.test.TestRows.Row;
+import recorderio.github.bensku.recorder.test.TestRows.RowMapper;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class MetricsTest {
+
+	@Mock
+	private SqlAdapter adapter;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	@Test
+	public void histogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(100, snapshot.count());
+		assertEquals(50_500, snapshot.meanNanos());
+		assertEquals(100_000, snapshot.maxNanos());
+		long median = snapshot.percentileNanos(50);
+		assertTrue(median >= 50_000 && median < 100_000, "median " + median);
+		assertEquals(100_000, snapshot.percentileNanos(100)); // Capped to maximum
+		assertEquals(0, new LatencyHistogram().snapshot().percentileNanos(99));
+	}
+
+	@Test
+	public void queryPhases() throws SQLException {
+		CollectingMetrics metrics = new CollectingMetrics();
+		QueryCache<SelectBuilder<Row>> queries = new LocalQueryCache<>(30, 2, metrics);
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM rows");
+		Mockito.when(conn.prepareStatement("SELECT id FROM rows")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, true, false, true, true, false, true, true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1, 2);
+
+		for (int i = 0; i < 3; i++) {
+			QueryHelper<SelectBuilder<Row>, Row> helper = new QueryHelper<>(
+					QueryContext.builder(adapter, type -> TestRows.TABLE).connection(conn).metrics(metrics).build(),
+					queries, new RowMapper(), Row.class);
+			new SelectBuilder<>(helper, Row.class).all();
+		}
+
+		MetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(1, snapshot.queryCacheMisses());
+		assertEquals(2, snapshot.queryCacheHits());
+		assertEquals(1, snapshot.queryCachePromotions());
+		MetricsSnapshot.QueryStats stats = snapshot.queries().get("SELECT id FROM rows");
+		assertEquals(1, stats.generate().count());
+		assertEquals(3, stats.prepare().count());
+		assertEquals(3, stats.execute().count());
+		assertEquals(3, stats.map().count());
+		assertEquals(6, stats.rows());
+	}
+
+	@Test
+	public void maxQueries() {
+		CollectingMetrics metrics = new CollectingMetrics(2);
+		for (int i = 0; i < 5; i++) {
+			metrics.statementExecuted(new CachedQuery("SELECT " + i, new int[0]), 10);
+		}
+		metrics.registerGauge("answer", () -> 42);
+		MetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(3, snapshot.queries().size()); // Two queries and others
+		assertEquals(3, snapshot.queries().get(CollectingMetrics.OTHER_QUERIES).execute().count());
+		assertEquals(42, snapshot.gauges().get("answer"));
+	}
+}
@@ -0,0 +1,152 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.ComponentLambda;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.Order;
+import io.github.bensku.recorder.query.Page;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.query.mapper.TableSource;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class PaginationTest {
+
+	public record Item(int id, String name) {}
+
+	private static final Column ID = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+
+	private static final Table ITEMS = new Table(JavaType.of(Item.class), "items", new Column[] {
+			ID, new Column("name", JavaType.STRING, new Constraint[0])
+	}, ID);
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	private SqlAdapter adapter;
+
+	private LocalQueryCache<SelectBuilder<Item>> queries;
+
+	private RecordMapper<Item> mapper;
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	public void init() throws SQLException {
+		adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		queries = new LocalQueryCache<>(30, 10);
+		TableSource tables = type -> ITEMS;
+		mapper = (RecordMapper<Item>) new MapperGenerator(tables).create(Item.class);
+		Mockito.when(conn.prepareStatement(Mockito.anyString())).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+	}
+
+	private SelectBuilder<Item> select() {
+		QueryHelper<SelectBuilder<Item>, Item> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> ITEMS).connection(conn).build(), queries, mapper, Item.class);
+		return new SelectBuilder<>(helper, Item.class);
+	}
+
+	private void rows(Item... items) throws SQLException {
+		Boolean[] next = new Boolean[items.length];
+		for (int i = 0; i < items.length; i++) {
+			next[i] = i < items.length - 1;
+		}
+		Mockito.when(results.next()).thenReturn(items.length > 0, next);
+		if (items.length > 0) {
+			Integer[] ids = new Integer[items.length - 1];
+			String[] names = new String[items.length - 1];
+			for (int i = 1; i < items.length; i++) {
+				ids[i - 1] = items[i].id();
+				names[i - 1] = items[i].name();
+			}
+			Mockito.when(results.getInt(1)).thenReturn(items[0].id(), ids);
+			Mockito.when(results.getString(2)).thenReturn(items[0].name(), names);
+		}
+	}
+
+	@Test
+	public void seekByOrderColumn() throws SQLException {
+		rows(new Item(3, "a"), new Item(1, "b"));
+		Page<Item> first = select().orderBy(Item::name, Order.ASC).page(null, 2);
+		assertEquals(List.of(new Item(3, "a"), new Item(1, "b")), first.records());
+		assertTrue(first.hasNext());
+		assertEquals(new Page.Token("b", 1), first.next());
+		Mockito.verify(conn).prepareStatement("SELECT id,name FROM items ORDER BY name,id LIMIT ?");
+		Mockito.verify(statement).setObject(1, 2);
+
+		rows(new Item(2, "c"));
+		Page<Item> second = select().orderBy(Item::name, Order.ASC).page(first.next(), 2);
+		assertEquals(List.of(new Item(2, "c")), second.records());
+		assertFalse(second.hasNext());
+		Mockito.verify(conn).prepareStatement("SELECT id,name FROM items WHERE (name,id)>(?,?) ORDER BY name,id LIMIT ?");
+		Mockito.verify(statement).setObject(1, "b");
+		Mockito.verify(statement).setObject(2, 1);
+		Mockito.verify(statement).setObject(3, 2);
+	}
+
+	@Test
+	public void seekByPrimaryKey() throws SQLException {
+		rows(new Item(5, "x"));
+		Page<Item> page = select().where(Item::name).eq("x").orderBy(Item::id, Order.DESC)
+				.page(new Page.Token(null, 7), 1);
+		assertEquals(new Page.Token(null, 5), page.next());
+		Mockito.verify(conn).prepareStatement("SELECT id,name FROM items WHERE name=? AND id<? ORDER BY id DESC LIMIT ?");
+		Mockito.verify(statement).setObject(1, "x");
+		Mockito.verify(statement).setObject(2, 7);
+		Mockito.verify(statement).setObject(3, 1);
+	}
+
+	@Test
+	public void stableShape() {
+		// Limit is a parameter, so it does not change query shape
+		ComponentLambda<Item, String> name = Item::name; // Lambdas are compared by identity
+		SelectBuilder<Item> a = select().orderBy(name, Order.ASC).limit(10);
+		SelectBuilder<Item> b = select().orderBy(name, Order.ASC).limit(20);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals("SELECT id,name FROM items ORDER BY name LIMIT ?", a.sql());
+	}
+
+	@Test
+	public void lastPage() throws SQLException {
+		rows();
+		Page<Item> page = select().page(null, 10);
+		assertEquals(List.of(), page.records());
+		assertNull(page.next());
+	}
+}
@@ -0,0 +1,199 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.github.bensku.recorder.cache.SharedQueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+public class ParallelScanTest {
+
+	public record Item(int id, String name) {}
+
+	private static final Column ID = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+
+	private static final Table ITEMS = new Table(JavaType.of(Item.class), "items", new Column[] {
+			ID, new Column("name", JavaType.STRING, new Constraint[0])
+	}, ID);
+
+	private static final List<Item> ROWS = IntStream.rangeClosed(1, 100)
+			.mapToObj(id -> new Item(id, "item" + id))
+			.collect(Collectors.toList());
+
+	/**
+	 * Connections are used from many threads, so they are simple proxies
+	 * instead of mocks.
+	 */
+	private final AtomicInteger opened = new AtomicInteger();
+	private final AtomicInteger closed = new AtomicInteger();
+	private final Set<String> executed = ConcurrentHashMap.newKeySet();
+
+	private SqlAdapter adapter;
+
+	private SharedQueryCache<SelectBuilder<Item>> queries;
+
+	private RecordMapper<Item> mapper;
+
+	private DataSource dataSource;
+
+	@SuppressWarnings("unchecked")
+	@BeforeEach
+	public void init() throws SQLException {
+		adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		queries = new SharedQueryCache<>(30, 10);
+		mapper = (RecordMapper<Item>) new MapperGenerator(type -> ITEMS).create(Item.class);
+		dataSource = Mockito.mock(DataSource.class);
+		Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> connection());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, BiFunction<String, Object[], Object> handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			Object result = handler.apply(method.getName(), args);
+			if (result == null && method.getReturnType() == boolean.class) {
+				return false;
+			} else if (result == null && method.getReturnType() == int.class) {
+				return 0;
+			}
+			return result;
+		});
+	}
+
+	private Connection connection() {
+		opened.incrementAndGet();
+		return proxy(Connection.class, (method, args) -> switch (method) {
+		case "prepareStatement" -> statement((String) args[0]);
+		case "close" -> {
+			closed.incrementAndGet();
+			yield null;
+		}
+		default -> null;
+		});
+	}
+
+	private PreparedStatement statement(String sql) {
+		Map<Integer, Object> params = new ConcurrentHashMap<>();
+		return proxy(PreparedStatement.class, (method, args) -> {
+			if (method.equals("setObject")) {
+				params.put((Integer) args[0], args[1]);
+			} else if (method.equals("executeQuery")) {
+				executed.add(sql);
+				return results(sql, params);
+			}
+			return null;
+		});
+	}
+
+	private ResultSet results(String sql, Map<Integer, Object> params) {
+		List<Object[]> rows = new ArrayList<>();
+		if (sql.startsWith("SELECT MIN(id),MAX(id)")) {
+			rows.add(new Object[] {1, 100});
+		} else {
+			int param = 1;
+			Integer lower = sql.contains("id>=?") ? (Integer) params.get(param++) : null;
+			Integer upper = sql.contains("id<?") ? (Integer) params.get(param) : null;
+			for (Item item : ROWS) {
+				if ((lower == null || item.id() >= lower) && (upper == null || item.id() < upper)) {
+					rows.add(new Object[] {item.id(), item.name()});
+				}
+			}
+		}
+		int[] row = {-1};
+		return proxy(ResultSet.class, (method, args) -> switch (method) {
+		case "next" -> ++row[0] < rows.size();
+		case "getInt", "getString", "getObject" -> rows.get(row[0])[(Integer) args[0] - 1];
+		default -> null;
+		});
+	}
+
+	private SelectBuilder<Item> select() throws SQLException {
+		QueryHelper<SelectBuilder<Item>, Item> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> ITEMS)
+						.connection(dataSource.getConnection())
+						.dataSource(dataSource)
+						.build(),
+				queries, mapper, Item.class);
+		return new SelectBuilder<>(helper, Item.class);
+	}
+
+	@Test
+	public void splitByRange() throws SQLException {
+		List<Item> items;
+		try (Stream<Item> stream = select().parallelStream(4)) {
+			assertTrue(stream.isParallel());
+			items = stream.collect(Collectors.toList());
+		}
+		assertEquals(ROWS, items); // Partitions are in order
+		assertEquals(Set.of("SELECT MIN(id),MAX(id) FROM items",
+				"SELECT id,name FROM items WHERE id<?",
+				"SELECT id,name FROM items WHERE id>=? AND id<?",
+				"SELECT id,name FROM items WHERE id>=?"), executed);
+		assertEquals(1 + 4, opened.get());
+		assertEquals(opened.get(), closed.get());
+	}
+
+	@Test
+	public void splitPoints() throws SQLException {
+		try (Stream<Item> stream = select().parallelStream(List.of(10, 20, 30, 40, 50))) {
+			assertEquals(5050, stream.mapToInt(Item::id).sum());
+		}
+		assertEquals(1 + 6, opened.get());
+		assertEquals(opened.get(), closed.get());
+	}
+
+	@Test
+	public void singlePartition() throws SQLException {
+		try (Stream<Item> stream = select().parallelStream(1)) {
+			assertEquals(100, stream.count());
+		}
+		assertEquals(Set.of("SELECT id,name FROM items"), executed);
+	}
+
+	@Test
+	public void shortCircuit() throws SQLException {
+		try (Stream<Item> stream = select().parallelStream(List.of(25, 50, 75))) {
+			assertEquals(new Item(1, "item1"), stream.findFirst().orElseThrow());
+		}
+		// Partitions that were not fully read are closed with stream
+		assertEquals(opened.get(), closed.get());
+	}
+
+	@Test
+	public void noLimit() throws SQLException {
+		assertThrows(IllegalStateException.class, () -> select().limit(10).parallelStream(4));
+		assertEquals(opened.get(), closed.get());
+	}
+}
@@ -0,0 +1,118 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.Recorder;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class PreloadTest {
+
+	public record Row(int id) {}
+
+	public record Other(int id, String name) {}
+
+	@Mock
+	private DataSource dataSource;
+
+	@Mock
+	private SqlAdapter adapter;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	private static Table table(JavaType type) {
+		Column id = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+		if (type.equals(JavaType.of(Row.class))) {
+			return new Table(type, "row", new Column[] {id}, id);
+		}
+		return new Table(type, "other", new Column[] {id, new Column("name", JavaType.STRING, new Constraint[0])}, id);
+	}
+
+	@Test
+	public void preload() throws SQLException {
+		AtomicInteger resolved = new AtomicInteger();
+		Recorder recorder = Recorder.builder(dataSource, adapter)
+				.tableSource(type -> {
+					resolved.incrementAndGet();
+					return table(type);
+				})
+				.sharedQueryCache(true)
+				.build();
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM row");
+		Mockito.when(adapter.insert(Mockito.any(), Mockito.any(), Mockito.anyInt())).thenReturn("INSERT");
+
+		recorder.preload(Row.class, Other.class);
+		assertEquals(2, resolved.get());
+		Mockito.verify(adapter, Mockito.times(2)).select(Mockito.any(), Mockito.any(), Mockito.any());
+		Mockito.verify(adapter, Mockito.times(2)).insert(Mockito.any(), Mockito.any(), Mockito.eq(1));
+		Mockito.verifyNoInteractions(dataSource); // Nothing is executed
+
+		Mockito.when(dataSource.getConnection()).thenReturn(conn);
+		Mockito.when(conn.prepareStatement("SELECT id FROM row")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1);
+		assertEquals(List.of(new Row(1)), recorder.select(Row.class).all());
+		assertEquals(2, resolved.get());
+		// Query was rendered by preload
+		Mockito.verify(adapter, Mockito.times(2)).select(Mockito.any(), Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	public void threadLocalQueryCaches() throws Exception {
+		Recorder recorder = Recorder.builder(dataSource, adapter)
+				.tableSource(PreloadTest::table)
+				.build();
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM row");
+		recorder.preload(List.of(Row.class), true);
+		Mockito.verify(adapter).select(Mockito.any(), Mockito.any(), Mockito.any());
+
+		// Rendered to caches of this thread
+		Mockito.when(dataSource.getConnection()).thenReturn(conn);
+		Mockito.when(conn.prepareStatement("SELECT id FROM row")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		recorder.select(Row.class).all();
+		Mockito.verify(adapter).select(Mockito.any(), Mockito.any(), Mockito.any());
+
+		// Other threads have their own caches
+		CompletableFuture.runAsync(() -> {
+			try {
+				recorder.select(Row.class).all();
+			} catch (SQLException e) {
+				throw new AssertionError(e);
+			}
+		}).get();
+		Mockito.verify(adapter, Mockito.times(2)).select(Mockito.any(), Mockito.any(), Mockito.any());
+	}
+}
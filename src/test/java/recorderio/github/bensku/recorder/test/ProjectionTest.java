@@ -0,0 +1,122 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.TableSource;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class ProjectionTest {
+
+	public record Customer(int id, String name, String email, long balance) {}
+	
+	public record CustomerName(int id, String name) {}
+	
+	public record CustomerPhone(int id, String phone) {}
+	
+	public record CustomerBalance(int id, String balance) {}
+	
+	private static Column column(String name, Class<?> type) {
+		return new Column(name, JavaType.of(type), new Constraint[0]);
+	}
+	
+	private static final TableSource TABLES = type -> {
+		if (type.equals(JavaType.of(Customer.class))) {
+			return new Table(type, "customers", new Column[] {
+					column("id", int.class), column("name", String.class),
+					column("email", String.class), column("balance", long.class)
+			}, null);
+		} else if (type.equals(JavaType.of(CustomerName.class))) {
+			return new Table(type, "customer_names", new Column[] {
+					column("id", int.class), column("name", String.class)
+			}, null);
+		} else if (type.equals(JavaType.of(CustomerBalance.class))) {
+			return new Table(type, "customer_balances", new Column[] {
+					column("id", int.class), column("balance", String.class)
+			}, null);
+		} else {
+			return new Table(type, "customer_phones", new Column[] {
+					column("id", int.class), column("phone", String.class)
+			}, null);
+		}
+	};
+	
+	@Mock
+	private SqlAdapter adapter;
+	
+	@Mock
+	private Connection conn;
+	
+	@Mock
+	private PreparedStatement statement;
+	
+	@Mock
+	private ResultSet results;
+	
+	private SelectBuilder<Customer> builder;
+	
+	@BeforeEach
+	public void initQuery() throws SQLException {
+		MapperGenerator generator = new MapperGenerator(TABLES);
+		QueryHelper<SelectBuilder<Customer>, Customer> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, TABLES).connection(conn).mappers(generator::create).build(),
+				new LocalQueryCache<>(30, 10), null, Customer.class);
+		builder = new SelectBuilder<>(helper, Customer.class);
+		
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT");
+		Mockito.when(conn.prepareStatement("SELECT")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1);
+		Mockito.when(results.getString(2)).thenReturn("Alice");
+	}
+	
+	@Test
+	public void selectedColumns() throws SQLException {
+		List<CustomerName> names = builder.project(CustomerName.class).all();
+		assertEquals(List.of(new CustomerName(1, "Alice")), names);
+		Mockito.verify(adapter).select(Mockito.eq(new String[] {"id", "name"}),
+				Mockito.eq(new String[] {"customers"}), Mockito.any());
+	}
+	
+	@Test
+	public void unknownColumn() {
+		SelectBuilder<CustomerPhone> query = builder.project(CustomerPhone.class);
+		assertThrows(IllegalArgumentException.class, query::all);
+	}
+	
+	@Test
+	public void wrongType() throws SQLException {
+		SelectBuilder<CustomerBalance> query = builder.project(CustomerBalance.class);
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, query::all);
+		assertEquals("column balance is java.lang.String in projection " + CustomerBalance.class.getName()
+				+ ", but long in " + Customer.class.getName(), e.getMessage());
+		Mockito.verifyNoInteractions(statement); // Nothing was executed
+	}
+}
@@ -0,0 +1,153 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.QueryCache;
+import io.github.bensku.recorder.cache.SharedQueryCache;
+import io.github.bensku.recorder.metrics.RecorderMetrics;
+
+public class QueryCachePolicyTest {
+
+	private static final int NEW_GEN_SIZE = 30;
+	private static final int PROMOTE_THRESHOLD = 3;
+	private static final int OLD_GEN_SIZE = 64;
+
+	private static CachedQuery query(Object key) {
+		return new CachedQuery("SELECT " + key, new int[0]);
+	}
+
+	private static List<QueryCache<String>> caches() {
+		return List.of(new LocalQueryCache<>(NEW_GEN_SIZE, PROMOTE_THRESHOLD, OLD_GEN_SIZE, RecorderMetrics.NONE),
+				new SharedQueryCache<>(NEW_GEN_SIZE, PROMOTE_THRESHOLD, 1, OLD_GEN_SIZE, RecorderMetrics.NONE));
+	}
+
+	private static int size(QueryCache<?> cache) {
+		return cache instanceof LocalQueryCache<?> local ? local.size() : ((SharedQueryCache<?>) cache).size();
+	}
+
+	/**
+	 * Looks up a key like query builders do.
+	 * @param cache Query cache.
+	 * @param key Key.
+	 * @return Whether the key was found.
+	 */
+	private static boolean lookup(QueryCache<String> cache, String key) {
+		CachedQuery cached = cache.get(key);
+		if (cached == null) {
+			cache.put(key, query(key));
+			return false;
+		}
+		assertEquals("SELECT " + key, cached.sql());
+		return true;
+	}
+
+	/**
+	 * Creates a trace of builder keys of a service: a few hundred query
+	 * shapes whose popularity follows Zipf's law, mixed with dynamic
+	 * shapes that are each used a few times in a row (e.g. by a batch job)
+	 * and never again.
+	 * @return Keys in order they are looked up.
+	 */
+	private static List<String> trace() {
+		Random random = new Random(42);
+		int shapes = 400;
+		double[] cumulative = new double[shapes];
+		double sum = 0;
+		for (int i = 0; i < shapes; i++) {
+			sum += 1.0 / (i + 1);
+			cumulative[i] = sum;
+		}
+		List<String> trace = new ArrayList<>();
+		int dynamic = 0;
+		while (trace.size() < 200_000) {
+			if (random.nextInt(10) == 0) {
+				String key = "dynamic" + dynamic++;
+				for (int i = 0; i < PROMOTE_THRESHOLD + 1; i++) { // Enough to be promoted
+					trace.add(key);
+				}
+			} else {
+				double x = random.nextDouble() * sum;
+				int shape = 0;
+				while (cumulative[shape] < x) {
+					shape++;
+				}
+				trace.add("shape" + shape);
+			}
+		}
+		return trace;
+	}
+
+	@Test
+	public void traceHitRate() {
+		List<String> trace = trace();
+		List<Double> hitRates = new ArrayList<>();
+		for (QueryCache<String> cache : caches()) {
+			int hits = 0;
+			for (String key : trace) {
+				if (lookup(cache, key)) {
+					hits++;
+				}
+			}
+			double hitRate = (double) hits / trace.size();
+			assertTrue(hitRate > 0.6, cache.getClass().getSimpleName() + " hit rate " + hitRate);
+			assertTrue(size(cache) <= NEW_GEN_SIZE + OLD_GEN_SIZE, "cache grew to " + size(cache));
+			hitRates.add(hitRate);
+		}
+		// Shared cache buffers lookups before recording them, which should not cost hits
+		assertEquals(hitRates.get(0), hitRates.get(1), 0.01, "local and shared hit rates");
+	}
+
+	@Test
+	public void hotQueriesSurviveBurst() {
+		for (QueryCache<String> cache : caches()) {
+			List<String> hot = new ArrayList<>();
+			for (int i = 0; i < NEW_GEN_SIZE / 2; i++) { // Must fit in new generation to be promoted
+				hot.add("hot" + i);
+			}
+			for (int round = 0; round < 10; round++) {
+				for (String key : hot) {
+					lookup(cache, key);
+				}
+			}
+
+			// Many one-off queries that are used just enough to be promoted
+			for (int i = 0; i < OLD_GEN_SIZE * 10; i++) {
+				for (int j = 0; j < PROMOTE_THRESHOLD + 1; j++) {
+					lookup(cache, "burst" + i);
+				}
+			}
+
+			for (String key : hot) {
+				assertNotNull(cache.get(key), key + " was evicted from " + cache.getClass().getSimpleName());
+			}
+			assertTrue(size(cache) <= NEW_GEN_SIZE + OLD_GEN_SIZE, "cache grew to " + size(cache));
+		}
+	}
+
+	@Test
+	public void promotion() {
+		for (QueryCache<String> cache : caches()) {
+			CachedQuery query = query("a");
+			cache.put("a", query);
+			for (int i = 0; i < PROMOTE_THRESHOLD; i++) {
+				assertSame(query, cache.get("a"));
+			}
+			// Push it out of new generation
+			for (int i = 0; i < NEW_GEN_SIZE; i++) {
+				cache.put("filler" + i, query("filler" + i));
+			}
+			assertSame(query, cache.get("a"));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.cache.ResultCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.query.mapper.MapperGenerator;
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.query.mapper.TableSource;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+
+public class ResultCacheTest {
+
+	public record Setting(String key, String value) {}
+	
+	private static final Object[] NO_PARAMS = new Object[0];
+	
+	@Test
+	public void parametersAndExpiry() {
+		AtomicLong time = new AtomicLong();
+		ResultCache cache = new ResultCache(10, time::get);
+		cache.put("SELECT", new Object[] {1}, List.of("a"), Set.of("t"), 100, cache.invalidations());
+		assertEquals(List.of("a"), cache.get("SELECT", new Object[] {1}));
+		assertNull(cache.get("SELECT", new Object[] {2})); // Different parameter
+		time.set(100);
+		assertNull(cache.get("SELECT", new Object[] {1}));
+	}
+	
+	@Test
+	public void invalidateTable() {
+		ResultCache cache = new ResultCache(10);
+		cache.put("a", NO_PARAMS, List.of(), Set.of("settings"), Long.MAX_VALUE / 2, cache.invalidations());
+		cache.put("b", NO_PARAMS, List.of(), Set.of("users", "groups"), Long.MAX_VALUE / 2, cache.invalidations());
+		cache.invalidate("SETTINGS"); // Table names are not case sensitive
+		assertNull(cache.get("a", NO_PARAMS));
+		assertEquals(List.of(), cache.get("b", NO_PARAMS));
+	}
+	
+	@Test
+	public void staleResults() {
+		ResultCache cache = new ResultCache(10);
+		long before = cache.invalidations();
+		cache.invalidate("settings"); // While query was running
+		cache.put("a", NO_PARAMS, List.of(), Set.of("settings"), Long.MAX_VALUE / 2, before);
+		assertNull(cache.get("a", NO_PARAMS));
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void cachedQuery() throws SQLException {
+		Table table = new Table(JavaType.of(Setting.class), "settings", new Column[] {
+				new Column("key", JavaType.STRING, new Constraint[0]),
+				new Column("value", JavaType.STRING, new Constraint[0])
+		}, null);
+		TableSource tables = type -> table;
+		RecordMapper<Setting> mapper = (RecordMapper<Setting>) new MapperGenerator(tables).create(Setting.class);
+		ResultCache cache = new ResultCache(10);
+		SqlAdapter adapter = Mockito.mock(SqlAdapter.class, Mockito.CALLS_REAL_METHODS);
+		LocalQueryCache<SelectBuilder<Setting>> queries = new LocalQueryCache<>(30, 10);
+		
+		Connection conn = Mockito.mock(Connection.class);
+		PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+		ResultSet results = Mockito.mock(ResultSet.class);
+		Mockito.when(conn.prepareStatement(Mockito.anyString())).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, false, true, false);
+		Mockito.when(results.getString(1)).thenReturn("k");
+		Mockito.when(results.getString(2)).thenReturn("v");
+		
+		for (int i = 0; i < 4; i++) {
+			if (i == 2) {
+				cache.invalidate("settings");
+			}
+			QueryHelper<SelectBuilder<Setting>, Setting> helper = new QueryHelper<>(
+					QueryContext.builder(adapter, tables).connection(conn).resultCache(cache).build(),
+					queries, mapper, Setting.class);
+			List<Setting> settings = new SelectBuilder<>(helper, Setting.class).cached(Duration.ofMinutes(1)).all();
+			assertEquals(List.of(new Setting("k", "v")), settings);
+		}
+		Mockito.verify(statement, Mockito.times(2)).executeQuery(); // Before and after invalidation
+	}
+}
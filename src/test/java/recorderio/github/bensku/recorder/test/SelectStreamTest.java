@@ -0,0 +1,96 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.LocalQueryCache;
+import io.github.bensku.recorder.query.QueryContext;
+import io.github.bensku.recorder.query.QueryHelper;
+import io.github.bensku.recorder.query.SelectBuilder;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import recorderio.github.bensku.recorder.test.TestRows.Row;
+import recorderio.github.bensku.recorder.test.TestRows.RowMapper;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class SelectStreamTest {
+
+	@Mock
+	private SqlAdapter adapter;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	private SelectBuilder<Row> builder;
+
+	@BeforeEach
+	public void initQuery() throws SQLException {
+		QueryHelper<SelectBuilder<Row>, Row> helper = new QueryHelper<>(
+				QueryContext.builder(adapter, type -> TestRows.TABLE).connection(conn).build(),
+				new LocalQueryCache<>(30, 10), new RowMapper(), Row.class);
+		builder = new SelectBuilder<>(helper, Row.class);
+
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM rows");
+		Mockito.when(conn.prepareStatement("SELECT id FROM rows")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+
+		// Three rows: 1, 2, 3
+		Mockito.when(results.next()).thenReturn(true, true, true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1, 2, 3);
+	}
+
+	private void verifyClosed() throws SQLException {
+		Mockito.verify(results).close();
+		Mockito.verify(statement).close();
+		Mockito.verify(conn).close();
+	}
+
+	@Test
+	public void fullyConsumed() throws SQLException {
+		List<Row> rows = builder.fetchSize(100).stream().collect(Collectors.toList());
+		assertEquals(List.of(new Row(1), new Row(2), new Row(3)), rows);
+		Mockito.verify(statement).setFetchSize(100);
+		verifyClosed(); // Without explicit close
+	}
+
+	@Test
+	public void closedEarly() throws SQLException {
+		try (Stream<Row> stream = builder.stream()) {
+			assertEquals(new Row(1), stream.findFirst().orElseThrow());
+			Mockito.verify(conn, Mockito.never()).close();
+		}
+		verifyClosed();
+	}
+
+	@Test
+	public void forEach() throws SQLException {
+		List<Row> rows = new ArrayList<>();
+		builder.forEach(rows::add);
+		assertEquals(List.of(new Row(1), new Row(2), new Row(3)), rows);
+		Mockito.verify(statement).setFetchSize(0); // Driver default
+		verifyClosed();
+	}
+}
@@ -0,0 +1,202 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.Recorder;
+import io.github.bensku.recorder.cache.CacheStats;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+import io.github.bensku.recorder.sql.adapter.SqlAdapter;
+import io.github.bensku.recorder.sql.constraint.Constraint;
+import io.github.bensku.recorder.sql.constraint.SimpleConstraint;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class SessionTest {
+
+	public record Row(int id) {}
+
+	private static final Column ID = new Column("id", JavaType.INT, new Constraint[] {SimpleConstraint.PRIMARY_KEY});
+
+	private static final Table ROWS = new Table(JavaType.of(Row.class), "rows", new Column[] {ID}, ID);
+
+	@Mock
+	private DataSource dataSource;
+
+	@Mock
+	private SqlAdapter adapter;
+
+	@Mock
+	private Connection conn;
+
+	@Mock
+	private PreparedStatement statement;
+
+	@Mock
+	private ResultSet results;
+
+	private Recorder recorder;
+
+	@BeforeEach
+	public void initRecorder() throws SQLException {
+		recorder = Recorder.builder(dataSource, adapter).tableSource(type -> ROWS).build();
+
+		Mockito.when(dataSource.getConnection()).thenReturn(conn);
+		Mockito.when(conn.getAutoCommit()).thenReturn(true);
+		Mockito.when(adapter.select(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn("SELECT id FROM rows");
+		// first() limits to one row, but tests do not care about that
+		Mockito.when(adapter.orderAndLimit(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.anyBoolean()))
+				.thenAnswer(invocation -> invocation.getArgument(0));
+		Mockito.when(conn.prepareStatement("SELECT id FROM rows")).thenReturn(statement);
+		Mockito.when(statement.executeQuery()).thenReturn(results);
+		Mockito.when(results.next()).thenReturn(true, false, true, false);
+		Mockito.when(results.getInt(1)).thenReturn(1, 2);
+	}
+
+	@Test
+	public void sharedConnection() throws SQLException {
+		List<Row> rows = recorder.session(() -> {
+			List<Row> first = recorder.select(Row.class).all();
+			Mockito.verify(conn, Mockito.never()).close(); // Still in session
+			List<Row> second = recorder.session(() -> recorder.select(Row.class).all()); // Nested
+			Mockito.verify(conn, Mockito.never()).close();
+			return List.of(first.get(0), second.get(0));
+		});
+		assertEquals(List.of(new Row(1), new Row(2)), rows);
+		Mockito.verify(dataSource).getConnection();
+		Mockito.verify(conn).prepareStatement("SELECT id FROM rows"); // Reused for second query
+		Mockito.verify(conn).close();
+
+		// Outside of session, every query gets its own connection again
+		recorder.select(Row.class).all();
+		Mockito.verify(dataSource, Mockito.times(2)).getConnection();
+		Mockito.verify(conn, Mockito.times(2)).close();
+	}
+
+	@Test
+	public void commit() throws SQLException {
+		Row row = recorder.inTransaction(() -> recorder.select(Row.class).first().orElseThrow());
+		assertEquals(new Row(1), row);
+		InOrder order = Mockito.inOrder(conn);
+		order.verify(conn).setAutoCommit(false);
+		order.verify(conn).commit();
+		order.verify(conn).setAutoCommit(true);
+		order.verify(conn).close();
+		Mockito.verify(conn, Mockito.never()).rollback();
+	}
+
+	@Test
+	public void rollback() throws SQLException {
+		SQLException failure = new SQLException("boom");
+		SQLException thrown = assertThrows(SQLException.class, () -> recorder.inTransaction(() -> {
+			recorder.select(Row.class).all();
+			throw failure;
+		}));
+		assertSame(failure, thrown);
+		InOrder order = Mockito.inOrder(conn);
+		order.verify(conn).rollback();
+		order.verify(conn).setAutoCommit(true);
+		order.verify(conn).close();
+		Mockito.verify(conn, Mockito.never()).commit();
+	}
+
+	@Test
+	public void nestedTransaction() throws SQLException {
+		recorder.inTransaction(() -> {
+			Mockito.when(conn.getAutoCommit()).thenReturn(false); // Mock does not remember
+			return recorder.inTransaction(() -> recorder.select(Row.class).all());
+		});
+		Mockito.verify(conn).commit(); // Only by outer transaction
+	}
+
+	/**
+	 * Makes {@link #conn} remember its auto-commit mode.
+	 */
+	private void trackAutoCommit() throws SQLException {
+		boolean[] autoCommit = {true};
+		Mockito.doAnswer(invocation -> {
+			autoCommit[0] = invocation.getArgument(0);
+			return null;
+		}).when(conn).setAutoCommit(Mockito.anyBoolean());
+		Mockito.when(conn.getAutoCommit()).thenAnswer(invocation -> autoCommit[0]);
+	}
+
+	@Test
+	public void transactionBypassesCaches() throws SQLException {
+		trackAutoCommit();
+		recorder = Recorder.builder(dataSource, adapter).tableSource(type -> ROWS)
+				.entityCache(10, null).build();
+
+		// Row read in transaction might not be committed, so it is not cached
+		Row uncommitted = recorder.inTransaction(() -> recorder.select(Row.class).where(Row::id).eq(1).first().orElseThrow());
+		assertEquals(new Row(1), uncommitted);
+		assertEquals(new CacheStats(0, 0), recorder.entityCacheStats());
+
+		recorder.select(Row.class).where(Row::id).eq(1).first();
+		Mockito.verify(statement, Mockito.times(2)).executeQuery();
+		assertEquals(new CacheStats(0, 1), recorder.entityCacheStats());
+	}
+
+	@Test
+	public void commitInvalidatesResults() throws SQLException {
+		trackAutoCommit();
+		Mockito.when(adapter.insert("rows", new String[] {"id"}, 1)).thenReturn("INSERT INTO rows (id) VALUES (?)");
+		Mockito.when(conn.prepareStatement("INSERT INTO rows (id) VALUES (?)")).thenReturn(statement);
+		recorder.inTransaction(() -> {
+			recorder.insert(Row.class).insert(new Row(3));
+			// Another thread reads (and caches) what was there before commit
+			Thread reader = new Thread(() -> {
+				try {
+					recorder.select(Row.class).cached(Duration.ofHours(1)).all();
+				} catch (SQLException e) {
+					throw new AssertionError(e);
+				}
+			});
+			reader.start();
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				throw new AssertionError(e);
+			}
+			return null;
+		});
+		recorder.select(Row.class).cached(Duration.ofHours(1)).all();
+		Mockito.verify(statement, Mockito.times(2)).executeQuery(); // Not from cache
+	}
+
+	@Test
+	public void autoCommitFailureIsSuppressed() throws SQLException {
+		SQLException failure = new SQLException("boom");
+		SQLException reset = new SQLException("reset");
+		Mockito.doNothing().when(conn).setAutoCommit(false);
+		Mockito.doThrow(reset).when(conn).setAutoCommit(true);
+		SQLException thrown = assertThrows(SQLException.class, () -> recorder.inTransaction(() -> {
+			throw failure;
+		}));
+		assertSame(failure, thrown);
+		assertSame(reset, thrown.getSuppressed()[0]);
+		Mockito.verify(conn).close();
+	}
+}
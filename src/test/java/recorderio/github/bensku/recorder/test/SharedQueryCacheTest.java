@@ -0,0 +1,70 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.bensku.recorder.cache.CachedQuery;
+import io.github.bensku.recorder.cache.SharedQueryCache;
+
+public class SharedQueryCacheTest {
+
+	private static CachedQuery query(String sql) {
+		return new CachedQuery(sql, new int[0]);
+	}
+
+	@Test
+	public void promotion() {
+		SharedQueryCache<String> cache = new SharedQueryCache<>(2, 3, 1);
+		CachedQuery hot = query("hot");
+		cache.put("hot", hot);
+		for (int i = 0; i < 3; i++) { // Reach promotion threshold
+			assertSame(hot, cache.get("hot"));
+		}
+
+		// Fill new generation, hot query should survive in old generation
+		cache.put("a", query("a"));
+		cache.put("b", query("b"));
+		cache.put("c", query("c"));
+		assertSame(hot, cache.get("hot"));
+		assertNull(cache.get("a")); // Evicted
+	}
+
+	@Test
+	public void concurrentAccess() throws InterruptedException {
+		SharedQueryCache<Integer> cache = new SharedQueryCache<>(64, 10, 4);
+		AtomicInteger misses = new AtomicInteger();
+		AtomicInteger wrong = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			Thread thread = new Thread(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					Integer key = j % 16;
+					CachedQuery query = cache.get(key);
+					if (query == null) {
+						misses.incrementAndGet();
+						cache.put(key, query("SELECT " + key));
+					} else if (!query.sql().equals("SELECT " + key)) {
+						wrong.incrementAndGet();
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, wrong.get());
+		// Once a key is in the cache, it should (almost always) be found
+		assertTrue(misses.get() < 1000, "too many misses: " + misses.get());
+	}
+}
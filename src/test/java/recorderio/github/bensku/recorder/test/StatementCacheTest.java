@@ -0,0 +1,88 @@
+package recorderio.github.bensku.recorder.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import io.github.bensku.recorder.cache.CacheStats;
+import io.github.bensku.recorder.cache.StatementCache;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class StatementCacheTest {
+
+	@Mock
+	private Connection conn;
+
+	private StatementCache cache;
+
+	@BeforeEach
+	public void initCache() throws SQLException {
+		cache = new StatementCache(2);
+		// New statement every time prepareStatement is called
+		Mockito.when(conn.prepareStatement(Mockito.anyString()))
+				.thenAnswer(invocation -> Mockito.mock(PreparedStatement.class));
+	}
+
+	@Test
+	public void reuse() throws SQLException {
+		PreparedStatement first = cache.take(conn, "a");
+		cache.release("a", first);
+		PreparedStatement second = cache.take(conn, "a");
+		assertSame(first, second);
+		Mockito.verify(second).clearParameters();
+		Mockito.verify(second).clearBatch();
+		assertEquals(new CacheStats(1, 1), cache.stats());
+	}
+
+	@Test
+	public void inUse() throws SQLException {
+		// Same SQL, but first statement has not been released yet
+		PreparedStatement first = cache.take(conn, "a");
+		PreparedStatement second = cache.take(conn, "a");
+		assertNotSame(first, second);
+
+		// Only one of them is kept
+		cache.release("a", first);
+		cache.release("a", second);
+		Mockito.verify(second).close();
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws SQLException {
+		PreparedStatement a = cache.take(conn, "a");
+		PreparedStatement b = cache.take(conn, "b");
+		PreparedStatement c = cache.take(conn, "c");
+		cache.release("a", a);
+		cache.release("b", b);
+		cache.release("a", cache.take(conn, "a")); // b is now least recently used
+		cache.release("c", c);
+
+		Mockito.verify(b).close();
+		Mockito.verify(a, Mockito.never()).close();
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void closedByPool() throws SQLException {
+		PreparedStatement first = cache.take(conn, "a");
+		cache.release("a", first);
+		Mockito.when(first.isClosed()).thenReturn(true);
+		assertNotSame(first, cache.take(conn, "a"));
+		assertEquals(new CacheStats(0, 2), cache.stats());
+	}
+}
@@ -0,0 +1,49 @@
+package recorderio.github.bensku.recorder.test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import io.github.bensku.recorder.query.mapper.RecordMapper;
+import io.github.bensku.recorder.sql.Column;
+import io.github.bensku.recorder.sql.JavaType;
+import io.github.bensku.recorder.sql.Table;
+
+/**
+ * A single-column record, its table and a mapper that reads it. Shared by
+ * tests that run queries against mocked JDBC results.
+ */
+public final class TestRows {
+
+	public record Row(int id) {}
+
+	/**
+	 * Table of {@link Row rows}. It has no columns, because tests do not
+	 * render SQL with a real adapter.
+	 */
+	public static final Table TABLE = new Table(JavaType.of(Row.class), "rows", new Column[0], null);
+
+	/**
+	 * Reads {@link Row rows} from first column of results. Writing is not
+	 * supported.
+	 */
+	public static class RowMapper implements RecordMapper<Row> {
+
+		@Override
+		public Row read(ResultSet results) {
+			try {
+				return new Row(results.getInt(1));
+			} catch (SQLException e) {
+				throw new AssertionError(e);
+			}
+		}
+
+		@Override
+		public void write(PreparedStatement statement, Row record, int offset) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+	private TestRows() {}
+}